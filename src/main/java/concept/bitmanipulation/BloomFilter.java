@@ -0,0 +1,192 @@
+package concept.bitmanipulation;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * A set that answers "definitely not in the set" or "probably in the set" from a few bits per element, to skip an expensive lookup
+ * (a database, a remote cache, a file on disk) for keys that aren't there. put() sets k bits of a ConcurrentBitSet chosen by hashing
+ * the element, mightContain() tests them: if one is clear the element was never put, if all are set it was put or its bits were set
+ * by other elements, a false positive.
+ *
+ * create() sizes the filter for the expected number of insertions n and the false positive probability p wanted once they are in:
+ * m = -n ln(p) / ln(2)^2 bits and k = m/n ln(2) hash functions (9.6 bits and 7 hashes per element for 1%, 14.4 and 10 for 0.1%).
+ * Putting more elements than expected raises the probability, expectedFpp() estimates it from the bits set. The k indexes come
+ * from one 128 bit MurmurHash3 of the element by double hashing, index i = (h1 + i h2) mod m, which is as good as k independent
+ * hashes. A Funnel writes the element into the hash, Funnel.strings(), longs() ... cover the common types.
+ *
+ * put() and mightContain() are thread safe and don't lock, the bits are a ConcurrentBitSet. A negative mightContain() usually
+ * stops at the first or second clear bit, so it costs little more than the hash, see BloomFilterBenchmark. merge() adds the
+ * elements of a filter created with the same size, toByteArray() and readFrom() save and load one. Elements can't be removed,
+ * a bit may be shared by several of them, see CountingBloomFilter.
+ *
+ * BloomFilter<CharSequence> seen = BloomFilter.create(Funnel.strings(), 1_000_000, 0.01);
+ * if(seen.mightContain(key)) ...		// only now ask the database
+ */
+public class BloomFilter<T> {
+
+	/**
+	 * Writes the parts of a value that equality depends on into the hash. Equal values must write the same bytes.
+	 */
+	@FunctionalInterface
+	public interface Funnel<T> {
+
+		void funnel(T value, Sink into);
+
+		static Funnel<CharSequence> strings() {
+			return (value, into) -> into.putString(value);
+		}
+
+		static Funnel<Long> longs() {
+			return (value, into) -> into.putLong(value);
+		}
+
+		static Funnel<Integer> integers() {
+			return (value, into) -> into.putInt(value);
+		}
+
+		static Funnel<byte[]> bytes() {
+			return (value, into) -> into.putBytes(value);
+		}
+	}
+
+	/**
+	 * What a Funnel writes into.
+	 */
+	public interface Sink {
+		Sink putByte(byte b);
+		Sink putBytes(byte[] bytes);
+		Sink putChar(char c);
+		Sink putInt(int i);
+		Sink putLong(long l);
+		Sink putString(CharSequence s);
+	}
+
+	private final Funnel<? super T> funnel;
+	private final int hashFunctions;
+	private final ConcurrentBitSet bits;
+
+	private BloomFilter(Funnel<? super T> funnel, int hashFunctions, int bitSize) {
+		this.funnel = funnel;
+		this.hashFunctions = hashFunctions;
+		this.bits = new ConcurrentBitSet(bitSize);
+	}
+
+	/**
+	 * A filter with the false positive probability fpp after expectedInsertions elements are put.
+	 *
+	 * @throws IllegalArgumentException if that takes more than Integer.MAX_VALUE bits
+	 */
+	public static <T> BloomFilter<T> create(Funnel<? super T> funnel, long expectedInsertions, double fpp) {
+		int bitSize = optimalBits(expectedInsertions, fpp);
+		return new BloomFilter<T>(funnel, optimalHashFunctions(expectedInsertions, bitSize), bitSize);
+	}
+
+	/**
+	 * A filter saved by toByteArray(), funnel must be the one it was created with.
+	 */
+	public static <T> BloomFilter<T> readFrom(byte[] bytes, Funnel<? super T> funnel) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		BloomFilter<T> filter = new BloomFilter<T>(funnel, buffer.getInt(), buffer.getInt());
+		long[] words = new long[buffer.remaining() / 8];
+		buffer.asLongBuffer().get(words);
+		filter.bits.or(BitSet.valueOf(words));
+		return filter;
+	}
+
+	/**
+	 * Adds value.
+	 *
+	 * @return true if a bit changed, so value was surely not in the filter before, false if it might have been
+	 */
+	public boolean put(T value) {
+		Murmur3 hash = hash(funnel, value);
+		long combined = hash.h1;
+		boolean changed = false;
+		for(int i=0;i<hashFunctions;i++) {
+			changed |= !bits.getAndSet(index(combined, bits.size()));
+			combined += hash.h2;
+		}
+		return changed;
+	}
+
+	/**
+	 * false if value was never put, true if it probably was.
+	 */
+	public boolean mightContain(T value) {
+		Murmur3 hash = hash(funnel, value);
+		long combined = hash.h1;
+		for(int i=0;i<hashFunctions;i++) {
+			if(!bits.get(index(combined, bits.size())))
+				return false;
+			combined += hash.h2;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the elements of other, which must have the same number of bits and hash functions.
+	 */
+	public void merge(BloomFilter<T> other) {
+		if(other.hashFunctions != hashFunctions || other.bits.size() != bits.size())
+			throw new IllegalArgumentException("filters of different sizes: " + bitSize() + " bits, " + hashFunctions
+					+ " hash functions and " + other.bitSize() + " bits, " + other.hashFunctions + " hash functions");
+		bits.or(other.bits.copy());
+	}
+
+	/**
+	 * Probability that mightContain() of an element never put is true, estimated from the bits set: (bits set / bitSize())^k.
+	 */
+	public double expectedFpp() {
+		return Math.pow((double) bits.cardinality() / bits.size(), hashFunctions);
+	}
+
+	public int bitSize() {
+		return bits.size();
+	}
+
+	public int hashFunctions() {
+		return hashFunctions;
+	}
+
+	/**
+	 * The number of hash functions, the number of bits and the bits as big endian ints and longs.
+	 */
+	public byte[] toByteArray() {
+		long[] words = bits.copy().toLongArray();
+		ByteBuffer buffer = ByteBuffer.allocate(8 + 8 * ((bits.size() + 63) >>> 6));
+		buffer.putInt(hashFunctions).putInt(bits.size());
+		buffer.asLongBuffer().put(words);
+		return buffer.array();
+	}
+
+
+	static <T> Murmur3 hash(Funnel<? super T> funnel, T value) {
+		Murmur3 hash = new Murmur3();
+		funnel.funnel(value, hash);
+		return hash.finish();
+	}
+
+	/**
+	 * Index of one of the k bits or counters of an element, from h1 + i h2.
+	 */
+	static int index(long combined, int size) {
+		return (int) ((combined & Long.MAX_VALUE) % size);
+	}
+
+	static int optimalBits(long expectedInsertions, double fpp) {
+		if(expectedInsertions <= 0)
+			throw new IllegalArgumentException("expectedInsertions <= 0: " + expectedInsertions);
+		if(!(fpp > 0 && fpp < 1))
+			throw new IllegalArgumentException("fpp not between 0 and 1: " + fpp);
+		double bits = Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		if(bits > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(expectedInsertions + " insertions at fpp " + fpp + " need " + (long) bits + " bits");
+		return (int) bits;
+	}
+
+	static int optimalHashFunctions(long expectedInsertions, int bits) {
+		return Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+	}
+
+}
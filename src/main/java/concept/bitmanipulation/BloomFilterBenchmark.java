@@ -0,0 +1,101 @@
+package concept.bitmanipulation;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lookups of e-mail addresses in a set of 1M: mightContain() of a BloomFilter and a CountingBloomFilter at 1% for addresses that are
+ * in it (hit) and that aren't (miss), against HashSet.contains(), which needs the 1M Strings in memory (~100 MB against 1.2 MB).
+ * A String's hashCode() is cached in it, so HashSet doesn't read the chars while the filters hash all of them. longFilterMiss is
+ * a miss in a filter of 1M long ids, where hashing is a few multiplications.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BloomFilterBenchmark {
+
+	private static final int SIZE = 1_000_000;
+
+	private String[] present;
+	private String[] absent;
+	private BloomFilter<CharSequence> filter;
+	private CountingBloomFilter<CharSequence> countingFilter;
+	private Set<String> set;
+	private BloomFilter<Long> longFilter;
+	private int next;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(BloomFilterBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		present = new String[SIZE];
+		absent = new String[SIZE];
+		filter = BloomFilter.create(BloomFilter.Funnel.strings(), SIZE, 0.01);
+		countingFilter = CountingBloomFilter.create(BloomFilter.Funnel.strings(), SIZE, 0.01);
+		set = new HashSet<String>();
+		longFilter = BloomFilter.create(BloomFilter.Funnel.longs(), SIZE, 0.01);
+		for(int i=0;i<SIZE;i++) {
+			present[i] = "user" + i + "@example.com";
+			absent[i] = "user" + (SIZE + i) + "@example.com";
+			filter.put(present[i]);
+			countingFilter.put(present[i]);
+			set.add(present[i]);
+			longFilter.put((long) i);
+		}
+	}
+
+	private int next() {
+		next = next + 1 == SIZE ? 0 : next + 1;
+		return next;
+	}
+
+	@Benchmark
+	public boolean filterMiss() {
+		return filter.mightContain(absent[next()]);
+	}
+
+	@Benchmark
+	public boolean filterHit() {
+		return filter.mightContain(present[next()]);
+	}
+
+	@Benchmark
+	public boolean countingFilterMiss() {
+		return countingFilter.mightContain(absent[next()]);
+	}
+
+	@Benchmark
+	public boolean longFilterMiss() {
+		return longFilter.mightContain((long) SIZE + next());
+	}
+
+	@Benchmark
+	public boolean hashSetMiss() {
+		return set.contains(absent[next()]);
+	}
+
+}
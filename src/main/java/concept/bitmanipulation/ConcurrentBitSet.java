@@ -0,0 +1,249 @@
+package concept.bitmanipulation;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * A fixed number of bits that threads set, clear and test concurrently without a lock. BitSetDemo's BitSet reads a long, changes
+ * a bit and writes the long back, two threads setting bits of the same word lose one of the updates, so a BitSet shared between
+ * threads needs a lock around every call and the threads queue up on it. ConcurrentBitSet keeps the words in an AtomicLongArray:
+ * get() is a volatile read, set(), clear() and flip() change a word with a compare-and-set, retried when another thread changed
+ * the word in between, so threads only wait on each other when they change the same word at the same time.
+ *
+ * getAndSet() tells which thread set a bit first, for "seen" flags and deduplication. setNextClearBit() finds and sets a clear bit
+ * in one step, for handing out slots: a clear bit found by nextClearBit() may be taken by another thread before set() is called.
+ *
+ * The bits can't grow, size() is given at construction, indexes from size() on throw IndexOutOfBoundsException. Operations on
+ * many words (cardinality(), copy(), stream(), and(), or(), ...) read or change each word atomically, but the words one after
+ * the other: with threads writing meanwhile their result can mix words from before and after a write, like the size of a
+ * ConcurrentHashMap, and copy() can hold a combination of bits that was never set at one time. There is no point-in-time snapshot
+ * on purpose: it would need every write to bump a shared version that the reader checks, one cache line all writers contend on,
+ * which is the queue of the lock again. copy() copies the bits once into a BitSet, so that several reads of it agree with each
+ * other. Once the writers are done (after a join() or another happens-before edge) all of these see every write.
+ * ConcurrentBitSetBenchmark compares it with a BitSet behind a lock at 1 to 64 threads.
+ */
+public class ConcurrentBitSet {
+
+	private final AtomicLongArray words;
+	private final int size;
+
+	public ConcurrentBitSet(int size) {
+		if(size < 0)
+			throw new IllegalArgumentException("size < 0: " + size);
+		this.size = size;
+		this.words = new AtomicLongArray((size + 63) >>> 6);
+	}
+
+	/**
+	 * Number of bits, the indexes are 0 to size() - 1.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean get(int index) {
+		Objects.checkIndex(index, size);
+		return (words.get(index >>> 6) & 1L << index) != 0;
+	}
+
+	public void set(int index) {
+		getAndSet(index);
+	}
+
+	public void clear(int index) {
+		getAndClear(index);
+	}
+
+	public void flip(int index) {
+		Objects.checkIndex(index, size);
+		long mask = 1L << index;
+		words.getAndUpdate(index >>> 6, word -> word ^ mask);
+	}
+
+	/**
+	 * Sets the bit and returns its previous value. Of threads calling getAndSet() on a clear bit exactly one gets false.
+	 */
+	public boolean getAndSet(int index) {
+		Objects.checkIndex(index, size);
+		int w = index >>> 6;
+		long mask = 1L << index;
+		long word = words.get(w);
+		while((word & mask) == 0) {
+			long witness = words.compareAndExchange(w, word, word | mask);
+			if(witness == word)
+				return false;
+			word = witness;
+		}
+		return true;		// already set, no write needed
+	}
+
+	/**
+	 * Clears the bit and returns its previous value.
+	 */
+	public boolean getAndClear(int index) {
+		Objects.checkIndex(index, size);
+		int w = index >>> 6;
+		long mask = 1L << index;
+		long word = words.get(w);
+		while((word & mask) != 0) {
+			long witness = words.compareAndExchange(w, word, word & ~mask);
+			if(witness == word)
+				return true;
+			word = witness;
+		}
+		return false;
+	}
+
+	/**
+	 * Index of the first set bit at or after fromIndex, -1 if there is none.
+	 */
+	public int nextSetBit(int fromIndex) {
+		return next(fromIndex, true);
+	}
+
+	/**
+	 * Index of the first clear bit at or after fromIndex, -1 if all bits from there to size() are set.
+	 */
+	public int nextClearBit(int fromIndex) {
+		return next(fromIndex, false);
+	}
+
+	/**
+	 * Sets the first clear bit at or after fromIndex and returns its index, -1 if all bits from there to size() are set. Threads
+	 * calling it concurrently get different bits.
+	 */
+	public int setNextClearBit(int fromIndex) {
+		checkFrom(fromIndex);
+		for(int w=fromIndex >>> 6, n=words.length();w<n;w++) {
+			long from = w == fromIndex >>> 6 ? -1L << fromIndex : -1L;
+			long word = words.get(w);
+			long clear;
+			while((clear = ~word & from) != 0) {
+				int index = w << 6 | Long.numberOfTrailingZeros(clear);
+				if(index >= size)
+					return -1;
+				long witness = words.compareAndExchange(w, word, word | clear & -clear);
+				if(witness == word)
+					return index;
+				word = witness;		// another thread changed the word, look again
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Number of bits set, see the class comment about concurrent writes.
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for(int w=0, n=words.length();w<n;w++)
+			cardinality += Long.bitCount(words.get(w));
+		return cardinality;
+	}
+
+	/**
+	 * Clears all bits.
+	 */
+	public void clear() {
+		for(int w=0, n=words.length();w<n;w++)
+			words.set(w, 0);
+	}
+
+	/**
+	 * Keeps only the bits also set in other.
+	 */
+	public void and(BitSet other) {
+		long[] mask = other.toLongArray();
+		for(int w=0, n=words.length();w<n;w++) {
+			long keep = w < mask.length ? mask[w] : 0;
+			if(keep != -1L)
+				words.getAndUpdate(w, word -> word & keep);
+		}
+	}
+
+	/**
+	 * Sets the bits set in other, which must not have bits from size() on.
+	 */
+	public void or(BitSet other) {
+		checkLength(other);
+		long[] mask = other.toLongArray();
+		for(int w=0;w<mask.length;w++) {
+			long set = mask[w];
+			if(set != 0)
+				words.getAndUpdate(w, word -> word | set);
+		}
+	}
+
+	/**
+	 * Flips the bits set in other, which must not have bits from size() on.
+	 */
+	public void xor(BitSet other) {
+		checkLength(other);
+		long[] mask = other.toLongArray();
+		for(int w=0;w<mask.length;w++) {
+			long flip = mask[w];
+			if(flip != 0)
+				words.getAndUpdate(w, word -> word ^ flip);
+		}
+	}
+
+	/**
+	 * Clears the bits set in other.
+	 */
+	public void andNot(BitSet other) {
+		long[] mask = other.toLongArray();
+		for(int w=0, n=Math.min(mask.length, words.length());w<n;w++) {
+			long clear = mask[w];
+			if(clear != 0)
+				words.getAndUpdate(w, word -> word & ~clear);
+		}
+	}
+
+	/**
+	 * The bits as a BitSet, each word read once. Not a snapshot, see the class comment about concurrent writes.
+	 */
+	public BitSet copy() {
+		long[] copy = new long[words.length()];
+		for(int w=0;w<copy.length;w++)
+			copy[w] = words.get(w);
+		return BitSet.valueOf(copy);
+	}
+
+	/**
+	 * Indexes of the set bits of a copy().
+	 */
+	public IntStream stream() {
+		return copy().stream();
+	}
+
+	@Override
+	public String toString() {
+		return copy().toString();
+	}
+
+
+	private int next(int fromIndex, boolean set) {
+		checkFrom(fromIndex);
+		for(int w=fromIndex >>> 6, n=words.length();w<n;w++) {
+			long word = (set ? words.get(w) : ~words.get(w)) & (w == fromIndex >>> 6 ? -1L << fromIndex : -1L);
+			if(word != 0) {
+				int index = w << 6 | Long.numberOfTrailingZeros(word);
+				return index < size ? index : -1;
+			}
+		}
+		return -1;
+	}
+
+	private void checkFrom(int fromIndex) {
+		if(fromIndex < 0)
+			throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+	}
+
+	private void checkLength(BitSet other) {
+		if(other.length() > size)
+			throw new IndexOutOfBoundsException("bit " + (other.length() - 1) + " out of bounds for size " + size);
+	}
+
+}
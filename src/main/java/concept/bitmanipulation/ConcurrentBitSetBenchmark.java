@@ -0,0 +1,96 @@
+package concept.bitmanipulation;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Threads setting and clearing random bits of 2^20 (set, test and clear, as for a "seen" flag), and taking and giving back slots
+ * (the first clear bit from a random index), with a BitSet behind a lock and with ConcurrentBitSet. main() runs it with 1, 4, 16
+ * and 64 threads, from the command line use -t. The time is per operation of one thread, with more threads than cores it grows
+ * for both, the difference is the time spent waiting for the lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentBitSetBenchmark {
+
+	private static final int SIZE = 1 << 20;
+
+	private final BitSet bitSet = new BitSet(SIZE);
+	private final ConcurrentBitSet concurrentBitSet = new ConcurrentBitSet(SIZE);
+
+	public static void main(String[] args) throws RunnerException {
+		for(int threads: new int[] {1, 4, 16, 64}) {
+			Options options = new OptionsBuilder()
+					.include(ConcurrentBitSetBenchmark.class.getSimpleName())
+					.threads(threads)
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Indexes {
+		private final SplittableRandom random = new SplittableRandom();
+
+		int next() {
+			return random.nextInt(SIZE);
+		}
+	}
+
+	@Benchmark
+	public boolean lockedSetClear(Indexes indexes) {
+		int index = indexes.next();
+		synchronized(bitSet) {
+			boolean seen = bitSet.get(index);
+			bitSet.set(index);
+			bitSet.clear(index);
+			return seen;
+		}
+	}
+
+	@Benchmark
+	public boolean concurrentSetClear(Indexes indexes) {
+		int index = indexes.next();
+		boolean seen = concurrentBitSet.getAndSet(index);
+		concurrentBitSet.clear(index);
+		return seen;
+	}
+
+	@Benchmark
+	public int lockedSlot(Indexes indexes) {
+		int from = indexes.next();
+		synchronized(bitSet) {
+			int slot = bitSet.nextClearBit(from);
+			bitSet.set(slot);
+			bitSet.clear(slot);
+			return slot;
+		}
+	}
+
+	@Benchmark
+	public int concurrentSlot(Indexes indexes) {
+		int slot = concurrentBitSet.setNextClearBit(indexes.next());
+		concurrentBitSet.clear(slot);
+		return slot;
+	}
+
+}
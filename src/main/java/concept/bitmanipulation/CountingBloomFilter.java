@@ -0,0 +1,172 @@
+package concept.bitmanipulation;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A BloomFilter that can remove elements. A bit of a BloomFilter may have been set by several elements, clearing it for one would
+ * lose the others, so CountingBloomFilter keeps a 4 bit counter in place of each bit: put() increments the k counters of the
+ * element, remove() decrements them, mightContain() tests that none is 0. Sizing, hashing and the false positive probability are
+ * those of BloomFilter, for 4 times the memory.
+ *
+ * A counter stops at 15 and is never decremented from there, as it no longer knows how many elements it counts: it stays set,
+ * which can only cause false positives, never false negatives. With the optimal number of hash functions a counter reaches 15
+ * with a probability around 10^-15 per insertion. remove() of an element that was never put decrements the counters of others and
+ * may make them false negatives, so only remove what was put (mightContain() false is checked, true can't tell).
+ *
+ * Thread safe without locks, the counters are packed 16 to a long of an AtomicLongArray and changed with compare-and-set.
+ */
+public class CountingBloomFilter<T> {
+
+	private static final int MAX = 15;
+
+	private final BloomFilter.Funnel<? super T> funnel;
+	private final int hashFunctions;
+	private final int size;
+	private final AtomicLongArray counters;
+
+	private CountingBloomFilter(BloomFilter.Funnel<? super T> funnel, int hashFunctions, int size) {
+		this.funnel = funnel;
+		this.hashFunctions = hashFunctions;
+		this.size = size;
+		this.counters = new AtomicLongArray((size + 15) >>> 4);
+	}
+
+	/**
+	 * A filter with the false positive probability fpp when it holds expectedInsertions elements.
+	 *
+	 * @throws IllegalArgumentException if that takes more than Integer.MAX_VALUE counters
+	 */
+	public static <T> CountingBloomFilter<T> create(BloomFilter.Funnel<? super T> funnel, long expectedInsertions, double fpp) {
+		int size = BloomFilter.optimalBits(expectedInsertions, fpp);
+		return new CountingBloomFilter<T>(funnel, BloomFilter.optimalHashFunctions(expectedInsertions, size), size);
+	}
+
+	/**
+	 * A filter saved by toByteArray(), funnel must be the one it was created with.
+	 */
+	public static <T> CountingBloomFilter<T> readFrom(byte[] bytes, BloomFilter.Funnel<? super T> funnel) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		CountingBloomFilter<T> filter = new CountingBloomFilter<T>(funnel, buffer.getInt(), buffer.getInt());
+		for(int w=0;w<filter.counters.length();w++)
+			filter.counters.set(w, buffer.getLong());
+		return filter;
+	}
+
+	public void put(T value) {
+		Murmur3 hash = BloomFilter.hash(funnel, value);
+		long combined = hash.h1;
+		for(int i=0;i<hashFunctions;i++) {
+			add(BloomFilter.index(combined, size), 1);
+			combined += hash.h2;
+		}
+	}
+
+	/**
+	 * Removes value, which must have been put.
+	 *
+	 * @return false if mightContain(value) is false and nothing was removed
+	 */
+	public boolean remove(T value) {
+		if(!mightContain(value))
+			return false;
+		Murmur3 hash = BloomFilter.hash(funnel, value);
+		long combined = hash.h1;
+		for(int i=0;i<hashFunctions;i++) {
+			add(BloomFilter.index(combined, size), -1);
+			combined += hash.h2;
+		}
+		return true;
+	}
+
+	/**
+	 * false if value isn't in the filter, true if it probably is.
+	 */
+	public boolean mightContain(T value) {
+		Murmur3 hash = BloomFilter.hash(funnel, value);
+		long combined = hash.h1;
+		for(int i=0;i<hashFunctions;i++) {
+			if(counter(BloomFilter.index(combined, size)) == 0)
+				return false;
+			combined += hash.h2;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the elements of other, which must have the same number of counters and hash functions. Sums above 15 stop at 15.
+	 */
+	public void merge(CountingBloomFilter<T> other) {
+		if(other.hashFunctions != hashFunctions || other.size != size)
+			throw new IllegalArgumentException("filters of different sizes: " + size + " counters, " + hashFunctions
+					+ " hash functions and " + other.size + " counters, " + other.hashFunctions + " hash functions");
+		for(int w=0;w<counters.length();w++) {
+			long add = other.counters.get(w);
+			if(add != 0)
+				counters.getAndUpdate(w, word -> saturatingAdd(word, add));
+		}
+	}
+
+	/**
+	 * Probability that mightContain() of an element not in the filter is true, estimated from the counters that are not 0.
+	 */
+	public double expectedFpp() {
+		long nonZero = 0;
+		for(int w=0;w<counters.length();w++) {
+			long word = counters.get(w);
+			long any = (word | word >>> 1 | word >>> 2 | word >>> 3) & 0x1111111111111111L;		// low bit of each counter that isn't 0
+			nonZero += Long.bitCount(any);
+		}
+		return Math.pow((double) nonZero / size, hashFunctions);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int hashFunctions() {
+		return hashFunctions;
+	}
+
+	/**
+	 * The number of hash functions, the number of counters and the counters, 16 to a big endian long.
+	 */
+	public byte[] toByteArray() {
+		ByteBuffer buffer = ByteBuffer.allocate(8 + 8 * counters.length());
+		buffer.putInt(hashFunctions).putInt(size);
+		for(int w=0;w<counters.length();w++)
+			buffer.putLong(counters.get(w));
+		return buffer.array();
+	}
+
+
+	private int counter(int index) {
+		return (int) (counters.get(index >>> 4) >>> ((index & 15) << 2)) & MAX;
+	}
+
+	/**
+	 * Adds delta (1 or -1) to the counter, unless it is at 15 (or at 0 for -1).
+	 */
+	private void add(int index, int delta) {
+		int w = index >>> 4;
+		int shift = (index & 15) << 2;
+		long word = counters.get(w);
+		while(true) {
+			int counter = (int) (word >>> shift) & MAX;
+			if(counter == MAX || (counter == 0 && delta < 0))
+				return;
+			long witness = counters.compareAndExchange(w, word, word + ((long) delta << shift));
+			if(witness == word)
+				return;
+			word = witness;
+		}
+	}
+
+	private static long saturatingAdd(long a, long b) {
+		long sum = 0;
+		for(int shift=0;shift<64;shift+=4)
+			sum |= (long) Math.min(MAX, (int) (a >>> shift & MAX) + (int) (b >>> shift & MAX)) << shift;
+		return sum;
+	}
+
+}
@@ -0,0 +1,235 @@
+package concept.bitmanipulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Bits in a memory mapped file, for sets of bits too large or too long lived for BitSetDemo's BitSet. A BitSet is a long[] on the
+ * heap: at most Integer.MAX_VALUE bits (256 MB), copied by the garbage collector, and gone with the process, so an index of seen
+ * ids has to be rebuilt or read back and deserialized on every start. MappedBitSet maps the file into memory: indexes are longs,
+ * the bits are outside the heap, and open() takes as long for 8 GB as for 8 bytes, the operating system reads the pages of the
+ * file when they are first touched and writes changed pages back on its own. force() writes them back now, for durability.
+ *
+ * A MappedByteBuffer holds at most 2 GB, so the file is mapped in regions of 1 GB (2^33 bits). The file is a 16 byte header (the
+ * magic number and the number of bits) followed by the bits as little endian longs, bit i in word i / 64 like in BitSet, so the
+ * bytes after the header are BitSet.toByteArray()'s layout. cardinality() runs Long.bitCount() over the mapped words, which reads
+ * the file at memory speed once its pages are cached. A new file is sparse on most file systems: pages never written take no disk.
+ *
+ * get() can be called from several threads, set(), clear() and flip() read and write a whole word and need external locking like
+ * BitSet. close() unmaps the regions and closes the file. Java has no public way to unmap a file before the buffer is garbage
+ * collected, and a process opening many files would run out of mappings waiting for the collector, so close() uses
+ * sun.misc.Unsafe.invokeCleaner() (where it isn't available the regions stay mapped until collected). Nothing may use the
+ * MappedBitSet while or after it is closed.
+ *
+ * try(MappedBitSet seen = MappedBitSet.open(Path.of("seen.bits"))) {
+ *     if(!seen.get(id)) ...
+ * }
+ */
+public class MappedBitSet implements Closeable {
+
+	private static final long MAGIC = 0x4D42495453455431L;		// "MBITSET1"
+	private static final int HEADER = 16;
+	private static final int REGION_SHIFT = 27;				// words per region: 2^27 longs, 1 GB
+	private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+	private static final MethodHandle UNMAP = unmapper();
+
+	private final FileChannel channel;
+	private final long size;
+	private final long words;
+	private MappedByteBuffer[] regions;
+
+	private MappedBitSet(FileChannel channel, long size) throws IOException {
+		this.channel = channel;
+		this.size = size;
+		this.words = (size + 63) >>> 6;
+		this.regions = new MappedByteBuffer[(int) ((words + REGION_MASK) >>> REGION_SHIFT)];
+		for(int r=0;r<regions.length;r++) {
+			long first = (long) r << REGION_SHIFT;
+			long length = 8 * Math.min(words - first, 1L << REGION_SHIFT);
+			regions[r] = channel.map(MapMode.READ_WRITE, HEADER + 8 * first, length);
+			regions[r].order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Creates the file, replacing an existing one, with size bits all clear.
+	 */
+	public static MappedBitSet create(Path file, long size) throws IOException {
+		if(size < 0)
+			throw new IllegalArgumentException("size < 0: " + size);
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN).putLong(MAGIC).putLong(size).flip();
+			channel.write(header, 0);
+			return new MappedBitSet(channel, size);		// mapping past the end extends the file with zeros
+		}
+		catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a file written by a MappedBitSet, with the bits as they were left.
+	 */
+	public static MappedBitSet open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0);
+			header.flip();
+			if(header.remaining() < HEADER || header.getLong() != MAGIC)
+				throw new IOException(file + " is not a MappedBitSet file");
+			long size = header.getLong();
+			if(size < 0 || channel.size() < HEADER + 8 * ((size + 63) >>> 6))
+				throw new IOException(file + " is truncated");
+			return new MappedBitSet(channel, size);
+		}
+		catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Number of bits, the indexes are 0 to size() - 1.
+	 */
+	public long size() {
+		return size;
+	}
+
+	public boolean get(long index) {
+		Objects.checkIndex(index, size);
+		return (word(index >>> 6) & 1L << index) != 0;
+	}
+
+	public void set(long index) {
+		Objects.checkIndex(index, size);
+		long w = index >>> 6;
+		setWord(w, word(w) | 1L << index);
+	}
+
+	public void clear(long index) {
+		Objects.checkIndex(index, size);
+		long w = index >>> 6;
+		setWord(w, word(w) & ~(1L << index));
+	}
+
+	public void flip(long index) {
+		Objects.checkIndex(index, size);
+		long w = index >>> 6;
+		setWord(w, word(w) ^ 1L << index);
+	}
+
+	/**
+	 * Number of bits set.
+	 */
+	public long cardinality() {
+		long cardinality = 0;
+		for(MappedByteBuffer region: regions) {
+			for(int i=0, n=region.capacity();i<n;i+=8)
+				cardinality += Long.bitCount(region.getLong(i));
+		}
+		return cardinality;
+	}
+
+	/**
+	 * Index of the first set bit at or after fromIndex, -1 if there is none.
+	 */
+	public long nextSetBit(long fromIndex) {
+		return next(fromIndex, true);
+	}
+
+	/**
+	 * Index of the first clear bit at or after fromIndex, -1 if all bits from there to size() are set.
+	 */
+	public long nextClearBit(long fromIndex) {
+		return next(fromIndex, false);
+	}
+
+	/**
+	 * Writes the changed bits to the file.
+	 */
+	public void force() {
+		for(MappedByteBuffer region: regions)
+			region.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		MappedByteBuffer[] mapped = regions;
+		regions = new MappedByteBuffer[0];
+		try {
+			for(MappedByteBuffer region: mapped)
+				unmap(region);
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+
+	private long word(long w) {
+		return regions[(int) (w >>> REGION_SHIFT)].getLong((int) (w & REGION_MASK) << 3);
+	}
+
+	private void setWord(long w, long word) {
+		regions[(int) (w >>> REGION_SHIFT)].putLong((int) (w & REGION_MASK) << 3, word);
+	}
+
+	private static void unmap(MappedByteBuffer region) {
+		if(UNMAP == null)
+			return;
+		try {
+			UNMAP.invokeExact(region);
+		}
+		catch(Throwable e) {
+			throw new IllegalStateException("unmapping failed", e);
+		}
+	}
+
+	/**
+	 * Unsafe.invokeCleaner(ByteBuffer) bound to the Unsafe instance, null if there is none.
+	 */
+	private static MethodHandle unmapper() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			MethodHandle invokeCleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner",
+					MethodType.methodType(void.class, ByteBuffer.class));
+			return MethodHandles.insertArguments(invokeCleaner, 0, field.get(null))
+					.asType(MethodType.methodType(void.class, MappedByteBuffer.class));
+		}
+		catch(ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private long next(long fromIndex, boolean set) {
+		if(fromIndex < 0)
+			throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+		for(long w=fromIndex >>> 6;w<words;w++) {
+			long word = (set ? word(w) : ~word(w)) & (w == fromIndex >>> 6 ? -1L << fromIndex : -1L);
+			if(word != 0) {
+				long index = w << 6 | Long.numberOfTrailingZeros(word);
+				return index < size ? index : -1;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,108 @@
+package concept.bitmanipulation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 2^30 bits (128 MB) with one in eight set, as a BitSet on the heap and as a MappedBitSet: loading them at start up
+ * (BitSet.valueOf() of the saved bytes against MappedBitSet.open() and a first get()), cardinality() and get() of random bits.
+ * The files are written to the temp directory by setup() and stay in the page cache, so this measures memory, not disk, speed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappedBitSetBenchmark {
+
+	private static final int SIZE = 1 << 30;
+
+	private Path bitSetFile;
+	private Path mappedFile;
+	private BitSet bitSet;
+	private MappedBitSet mapped;
+	private final SplittableRandom random = new SplittableRandom(42);
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(MappedBitSetBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		bitSet = new BitSet(SIZE);
+		bitSetFile = Files.createTempFile("bitset", ".bin");
+		mappedFile = Files.createTempFile("mapped", ".bits");
+		mapped = MappedBitSet.create(mappedFile, SIZE);
+		for(int i=0;i<SIZE / 8;i++) {
+			int index = random.nextInt(SIZE);
+			bitSet.set(index);
+			mapped.set(index);
+		}
+		mapped.force();
+		Files.write(bitSetFile, bitSet.toByteArray());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		mapped.close();
+		Files.delete(bitSetFile);
+		Files.delete(mappedFile);
+	}
+
+	@Benchmark
+	public boolean loadBitSet() throws IOException {
+		return BitSet.valueOf(Files.readAllBytes(bitSetFile)).get(random.nextInt(SIZE));
+	}
+
+	@Benchmark
+	public boolean openMapped() throws IOException {
+		try(MappedBitSet bits = MappedBitSet.open(mappedFile)) {
+			return bits.get(random.nextInt(SIZE));
+		}
+	}
+
+	@Benchmark
+	public long bitSetCardinality() {
+		return bitSet.cardinality();
+	}
+
+	@Benchmark
+	public long mappedCardinality() {
+		return mapped.cardinality();
+	}
+
+	@Benchmark
+	public boolean bitSetGet() {
+		return bitSet.get(random.nextInt(SIZE));
+	}
+
+	@Benchmark
+	public boolean mappedGet() {
+		return mapped.get(random.nextInt(SIZE));
+	}
+
+}
@@ -0,0 +1,124 @@
+package concept.bitmanipulation;
+
+/**
+ * MurmurHash3 x64 128 bit with seed 0, fed byte by byte through BloomFilter.Sink: putInt() and putLong() as little endian bytes,
+ * putString() as the UTF-16 chars, low byte first. h1 and h2 are the two halves of the hash after finish(). A new instance for
+ * every value hashed.
+ */
+final class Murmur3 implements BloomFilter.Sink {
+
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	long h1;
+	long h2;
+	private long k1;
+	private long k2;
+	private int buffered;		// bytes of the current 16 byte block in k1 and k2
+	private long length;
+
+	@Override
+	public Murmur3 putByte(byte b) {
+		long v = b & 0xFFL;
+		if(buffered < 8)
+			k1 |= v << (buffered << 3);
+		else
+			k2 |= v << ((buffered - 8) << 3);
+		length++;
+		if(++buffered == 16) {
+			mix(k1, k2);
+			k1 = 0;
+			k2 = 0;
+			buffered = 0;
+		}
+		return this;
+	}
+
+	@Override
+	public Murmur3 putBytes(byte[] bytes) {
+		for(byte b: bytes)
+			putByte(b);
+		return this;
+	}
+
+	@Override
+	public Murmur3 putChar(char c) {
+		putByte((byte) c);
+		return putByte((byte) (c >>> 8));
+	}
+
+	@Override
+	public Murmur3 putInt(int i) {
+		for(int shift=0;shift<32;shift+=8)
+			putByte((byte) (i >>> shift));
+		return this;
+	}
+
+	@Override
+	public Murmur3 putLong(long l) {
+		if(buffered == 0) {
+			k1 = l;		// a whole half block
+			buffered = 8;
+			length += 8;
+			return this;
+		}
+		if(buffered == 8) {
+			mix(k1, l);
+			k1 = 0;
+			buffered = 0;
+			length += 8;
+			return this;
+		}
+		for(int shift=0;shift<64;shift+=8)
+			putByte((byte) (l >>> shift));
+		return this;
+	}
+
+	@Override
+	public Murmur3 putString(CharSequence s) {
+		int i = 0;
+		int n = s.length();
+		if((buffered & 7) == 0) {		// 4 chars at a time into whole longs
+			for(;i+4<=n;i+=4)
+				putLong(s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+		}
+		for(;i<n;i++)
+			putChar(s.charAt(i));
+		return this;
+	}
+
+	Murmur3 finish() {
+		if(buffered > 0) {
+			h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+			h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+		}
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return this;
+	}
+
+	private void mix(long k1, long k2) {
+		h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+		h1 = Long.rotateLeft(h1, 27) + h2;
+		h1 = h1 * 5 + 0x52dce729;
+		h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+		h2 = Long.rotateLeft(h2, 31) + h1;
+		h2 = h2 * 5 + 0x38495ab5;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+}
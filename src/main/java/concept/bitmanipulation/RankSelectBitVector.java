@@ -0,0 +1,248 @@
+package concept.bitmanipulation;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable bit vector that answers rank(i), the number of set bits before index i, in constant time and select(k), the index
+ * of the k-th set bit, in nearly constant time. They are what compressed indexes (succinct trees, Elias-Fano lists, FM-indexes)
+ * are made of: "how many 1s before position i" turns a position in one array into a position in another. On a BitSet both are a
+ * scan, rank(i) is bits.get(0, i).cardinality() and select(k) k calls of nextSetBit(), which for 10^9 bits is seconds per call.
+ *
+ * rank() uses a directory of popcounts (the rank9 layout of Vigna's "Broadword Implementation of Rank/Select Queries"): for every
+ * block of 8 words (512 bits) one long with the number of set bits before the block, and one long with the 7 counts of the set bits
+ * in the block before its words 1 to 7, 9 bits each. rank(i) adds the two counts of i's block and word and Long.bitCount() of the
+ * bits of the word before i, 25% on top of the bits.
+ * select() keeps the block of every 4096-th set bit, searches the blocks between two samples by their counts (one block for bits
+ * set densely, a few steps of a binary search for sparse ones), then the word in the block by the 7 counts, then the bit in the
+ * word by the popcounts of its bytes and a table of the bits in a byte.
+ *
+ * forEach(), stream() and nextSetBit() go through the set bits a word at a time: Long.numberOfTrailingZeros() finds the next set
+ * bit of a word and word &= word - 1 clears it, words without bits cost one comparison, unlike a loop over get(i).
+ * RankSelectBitVectorBenchmark compares rank() and select() with BitSet.
+ *
+ * The words are not copied, they must not change afterwards. Thread safe.
+ */
+public final class RankSelectBitVector {
+
+	private static final int SELECT_SAMPLE = 4096;		// set bits between two samples of select()
+	private static final byte[] SELECT_IN_BYTE = selectInByteTable();
+
+	private final long[] words;
+	private final long size;
+	private final long[] counts;		// per block: set bits before the block, 7 * 9 bits counts in the block
+	private final int[] samples;		// block of set bit k * SELECT_SAMPLE
+	private final long ones;
+
+	private RankSelectBitVector(long[] words, long size) {
+		this.words = words;
+		this.size = size;
+		int blocks = (words.length + 7) >>> 3;
+		this.counts = new long[2 * blocks + 2];		// and the total after the last block
+		long total = 0;
+		for(int b=0;b<blocks;b++) {
+			counts[2 * b] = total;
+			long relative = 0;
+			int inBlock = 0;
+			for(int j=0;j<8;j++) {
+				if(j > 0)
+					relative |= (long) inBlock << 9 * (j - 1);
+				int w = 8 * b + j;
+				inBlock += w < words.length ? Long.bitCount(words[w]) : 0;
+			}
+			counts[2 * b + 1] = relative;
+			total += inBlock;
+		}
+		counts[2 * blocks] = total;
+		this.ones = total;
+		this.samples = new int[(int) ((total + SELECT_SAMPLE - 1) / SELECT_SAMPLE)];
+		int b = 0;
+		for(int s=0;s<samples.length;s++) {
+			long k = (long) s * SELECT_SAMPLE;
+			while(counts[2 * (b + 1)] <= k)
+				b++;
+			samples[s] = b;
+		}
+	}
+
+	/**
+	 * A bit vector of size bits, bit i in words[i / 64] like in BitSet.toLongArray(). The array is not copied.
+	 *
+	 * @throws IllegalArgumentException if words has bits set from index size on
+	 */
+	public static RankSelectBitVector of(long[] words, long size) {
+		if(size < 0 || size > 64L * words.length)
+			throw new IllegalArgumentException("size " + size + " for " + words.length + " words");
+		int used = (int) ((size + 63) >>> 6);
+		for(int w=Math.max(0, used - 1);w<words.length;w++) {
+			long beyond = w == used - 1 && (size & 63) != 0 ? -1L << size : w < used ? 0 : -1L;
+			if((words[w] & beyond) != 0)
+				throw new IllegalArgumentException("bits set from index " + size + " on");
+		}
+		return new RankSelectBitVector(words, size);
+	}
+
+	/**
+	 * The bits of bits, size() is bits.length().
+	 */
+	public static RankSelectBitVector of(BitSet bits) {
+		return new RankSelectBitVector(bits.toLongArray(), bits.length());
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Number of bits set.
+	 */
+	public long ones() {
+		return ones;
+	}
+
+	public boolean get(long index) {
+		Objects.checkIndex(index, size);
+		return (words[(int) (index >>> 6)] & 1L << index) != 0;
+	}
+
+	/**
+	 * Number of set bits before index, for index from 0 to size().
+	 */
+	public long rank(long index) {
+		Objects.checkIndex(index, size + 1);
+		int w = (int) (index >>> 6);
+		int b = w >>> 3;
+		int j = w & 7;
+		long rank = counts[2 * b];
+		if(j > 0)
+			rank += counts[2 * b + 1] >>> 9 * (j - 1) & 0x1FF;
+		if((index & 63) != 0)
+			rank += Long.bitCount(words[w] & (1L << index) - 1);
+		return rank;
+	}
+
+	/**
+	 * Number of clear bits before index, index - rank(index).
+	 */
+	public long rank0(long index) {
+		return index - rank(index);
+	}
+
+	/**
+	 * Index of the set bit with rank k (the first is select(0)), for k from 0 to ones() - 1.
+	 */
+	public long select(long k) {
+		Objects.checkIndex(k, ones);
+		int s = (int) (k / SELECT_SAMPLE);
+		int low = samples[s];
+		int high = s + 1 < samples.length ? samples[s + 1] : counts.length / 2 - 2;
+		while(low < high) {		// last block with fewer than k + 1 set bits before it
+			int mid = (low + high + 1) >>> 1;
+			if(counts[2 * mid] <= k)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		long remaining = k - counts[2 * low];
+		long relative = counts[2 * low + 1];
+		int j = 0;
+		while(j < 7 && (relative >>> 9 * j & 0x1FF) <= remaining)
+			j++;
+		if(j > 0)
+			remaining -= relative >>> 9 * (j - 1) & 0x1FF;
+		int w = 8 * low + j;
+		return (long) w << 6 | selectInWord(words[w], (int) remaining);
+	}
+
+	/**
+	 * Index of the first set bit at or after fromIndex, -1 if there is none.
+	 */
+	public long nextSetBit(long fromIndex) {
+		if(fromIndex < 0)
+			throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+		if(fromIndex >= size)
+			return -1;
+		int w = (int) (fromIndex >>> 6);
+		long word = words[w] & -1L << fromIndex;
+		while(word == 0) {
+			if(++w == words.length)
+				return -1;
+			word = words[w];
+		}
+		return (long) w << 6 | Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Calls action with the index of every set bit, in increasing order.
+	 */
+	public void forEach(LongConsumer action) {
+		for(int w=0;w<words.length;w++) {
+			for(long word=words[w];word!=0;word&=word - 1)
+				action.accept((long) w << 6 | Long.numberOfTrailingZeros(word));
+		}
+	}
+
+	/**
+	 * Indexes of the set bits in increasing order.
+	 */
+	public LongStream stream() {
+		Spliterator.OfLong spliterator = new Spliterators.AbstractLongSpliterator(ones, Spliterator.ORDERED | Spliterator.DISTINCT
+				| Spliterator.SORTED | Spliterator.NONNULL | Spliterator.SIZED) {
+			private int w = -1;
+			private long word;
+
+			@Override
+			public boolean tryAdvance(LongConsumer action) {
+				while(word == 0) {
+					if(++w >= words.length)
+						return false;
+					word = words[w];
+				}
+				action.accept((long) w << 6 | Long.numberOfTrailingZeros(word));
+				word &= word - 1;
+				return true;
+			}
+
+			@Override
+			public Comparator<? super Long> getComparator() {
+				return null;		// natural order
+			}
+		};
+		return StreamSupport.longStream(spliterator, false);
+	}
+
+
+	/**
+	 * Index in word of its set bit with rank r.
+	 */
+	private static int selectInWord(long word, int r) {
+		long bytes = word - (word >>> 1 & 0x5555555555555555L);
+		bytes = (bytes & 0x3333333333333333L) + (bytes >>> 2 & 0x3333333333333333L);
+		bytes = (bytes + (bytes >>> 4)) & 0x0F0F0F0F0F0F0F0FL;
+		long sums = bytes * 0x0101010101010101L;		// byte i: set bits in bytes 0 to i
+		int b = 0;
+		while((sums >>> 8 * b & 0xFF) <= r)
+			b++;
+		if(b > 0)
+			r -= (int) (sums >>> 8 * (b - 1) & 0xFF);
+		return 8 * b + SELECT_IN_BYTE[(int) (word >>> 8 * b & 0xFF) << 3 | r];
+	}
+
+	private static byte[] selectInByteTable() {
+		byte[] table = new byte[256 * 8];
+		for(int value=0;value<256;value++) {
+			int r = 0;
+			for(int bit=0;bit<8;bit++)
+				if((value & 1 << bit) != 0)
+					table[value << 3 | r++] = (byte) bit;
+		}
+		return table;
+	}
+
+}
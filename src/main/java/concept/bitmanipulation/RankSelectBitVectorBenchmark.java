@@ -0,0 +1,101 @@
+package concept.bitmanipulation;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * rank() and select() of random positions in 2^20 and 2^30 bits with one in three set, with RankSelectBitVector and with BitSet
+ * (get(0, i).cardinality() and a nextSetBit() loop). BitSet's time grows with the position, RankSelectBitVector's stays flat
+ * apart from cache misses, which a larger vector has more of. forEach() against a get(i) loop goes through all set bits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankSelectBitVectorBenchmark {
+
+	@Param({"1048576", "1073741824"})
+	private int size;
+
+	private BitSet bitSet;
+	private RankSelectBitVector vector;
+	private final SplittableRandom random = new SplittableRandom(42);
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(RankSelectBitVectorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		bitSet = new BitSet(size);
+		for(int i=0;i<size;i++)
+			if(random.nextInt(3) == 0)
+				bitSet.set(i);
+		vector = RankSelectBitVector.of(bitSet);
+	}
+
+	@Benchmark
+	public long vectorRank() {
+		return vector.rank(random.nextLong(vector.size()));
+	}
+
+	@Benchmark
+	public long bitSetRank() {
+		return bitSet.get(0, random.nextInt(size)).cardinality();
+	}
+
+	@Benchmark
+	public long vectorSelect() {
+		return vector.select(random.nextLong(vector.ones()));
+	}
+
+	@Benchmark
+	public long bitSetSelect() {
+		long k = random.nextLong(vector.ones());
+		int index = bitSet.nextSetBit(0);
+		for(long i=0;i<k;i++)
+			index = bitSet.nextSetBit(index + 1);
+		return index;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long vectorForEach() {
+		long[] sum = new long[1];
+		vector.forEach(index -> sum[0] += index);
+		return sum[0];
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long bitSetGetLoop() {
+		long sum = 0;
+		for(int i=0;i<size;i++)
+			if(bitSet.get(i))
+				sum += i;
+		return sum;
+	}
+
+}
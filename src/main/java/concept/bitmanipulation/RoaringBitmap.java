@@ -0,0 +1,991 @@
+package concept.bitmanipulation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A compressed set of bits with the methods of BitSet, in the manner of Roaring bitmaps. BitSetDemo shows that a BitSet is one
+ * long[] covering every bit up to the highest set one: set(90) allocates the words below 90 too, and a set holding only
+ * Integer.MAX_VALUE takes 256 MB. RoaringBitmap splits the bit indexes into chunks of 2^16 by their high 16 bits and keeps a
+ * container only for the chunks that have bits set, each container in one of three forms:
+ * 1. array: the sorted low 16 bits of the set bits as chars, 2 bytes per bit. Used up to 4096 bits (8 KB).
+ * 2. bitmap: a long[1024] with one bit per index of the chunk, 8 KB however many bits are set. Used above 4096 bits.
+ * 3. run: start and length of every run of consecutive set bits, 4 bytes per run. Used when that is smaller than the other two,
+ * 		e.g. after flip() of a range or runOptimize() of clustered bits.
+ * The chunks are a sorted char[] of keys with a parallel array of containers, get() and set() are a binary search over the keys
+ * and one in the container.
+ *
+ * and(), or(), xor() and andNot() merge the key arrays and combine the containers of the keys both have: two arrays are merged
+ * like sorted lists, two bitmaps word by word (1024 word operations per 65536 bits, which the JIT unrolls and vectorizes), an
+ * array and a bitmap by looking up the array's bits. Chunks that only one side has are skipped or copied without looking at their
+ * bits, which is where a sparse or clustered RoaringBitmap beats BitSet, whose operations run over every word. Results, and
+ * containers changed by flip(), take whichever of the three forms is the smallest. set() and clear() on a run container turn it
+ * into an array or bitmap, runOptimize() turns containers back into runs where that saves memory.
+ *
+ * Indexes are non negative ints like in BitSet. sizeInBytes() estimates the memory used, RoaringBitmapBenchmark compares size
+ * and speed with BitSet. Not thread safe.
+ */
+public class RoaringBitmap implements Cloneable {
+
+	private static final int CHUNK_BITS = 1 << 16;
+	private static final int MAX_ARRAY = 4096;		// above this many bits an array container is larger than a bitmap
+	private static final int WORDS = CHUNK_BITS / 64;
+
+	private char[] keys = new char[4];
+	private Container[] containers = new Container[4];
+	private int size;
+
+	public RoaringBitmap() {
+	}
+
+	/**
+	 * RoaringBitmap with the bits set in bits.
+	 */
+	public static RoaringBitmap valueOf(BitSet bits) {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		long[] words = bits.toLongArray();
+		for(int chunk=0;chunk * WORDS<words.length;chunk++) {
+			long[] chunkWords = Arrays.copyOfRange(words, chunk * WORDS, (chunk + 1) * WORDS);
+			Container container = Container.best(chunkWords);
+			if(container != null)
+				bitmap.append((char) chunk, container);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * RoaringBitmap with the given bits set.
+	 */
+	public static RoaringBitmap of(int... indexes) {
+		RoaringBitmap bitmap = new RoaringBitmap();
+		for(int index: indexes)
+			bitmap.set(index);
+		return bitmap;
+	}
+
+	public boolean get(int index) {
+		checkIndex(index);
+		int i = find((char) (index >>> 16));
+		return i >= 0 && containers[i].contains((char) index);
+	}
+
+	public void set(int index) {
+		checkIndex(index);
+		char key = (char) (index >>> 16);
+		int i = find(key);
+		if(i >= 0)
+			containers[i] = containers[i].add((char) index);
+		else
+			insert(-i - 1, key, new ArrayContainer().add((char) index));
+	}
+
+	public void clear(int index) {
+		checkIndex(index);
+		int i = find((char) (index >>> 16));
+		if(i < 0)
+			return;
+		Container container = containers[i].remove((char) index);
+		if(container.cardinality() == 0)
+			remove(i);
+		else
+			containers[i] = container;
+	}
+
+	/**
+	 * Flips the bits from fromIndex (inclusive) to toIndex (exclusive), like BitSet.flip(fromIndex, toIndex).
+	 */
+	public void flip(int fromIndex, int toIndex) {
+		checkIndex(fromIndex);
+		if(toIndex < fromIndex)
+			throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+		if(fromIndex == toIndex)
+			return;
+		int firstKey = fromIndex >>> 16;
+		int lastKey = (toIndex - 1) >>> 16;
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		for(;i<size && keys[i] < firstKey;i++)
+			result.append(keys[i], containers[i]);
+		for(int key=firstKey;key<=lastKey;key++) {
+			int from = key == firstKey ? fromIndex & 0xFFFF : 0;
+			int to = key == lastKey ? ((toIndex - 1) & 0xFFFF) + 1 : CHUNK_BITS;
+			Container flipped;
+			if(i < size && keys[i] == key)
+				flipped = containers[i++].flip(from, to);
+			else
+				flipped = RunContainer.range(from, to);
+			if(flipped != null)
+				result.append((char) key, flipped);
+		}
+		for(;i<size;i++)
+			result.append(keys[i], containers[i]);
+		take(result);
+	}
+
+	/**
+	 * Keeps only the bits that are also set in other.
+	 */
+	public void and(RoaringBitmap other) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while(i < size && j < other.size) {
+			if(keys[i] < other.keys[j]) {
+				i++;
+			}
+			else if(keys[i] > other.keys[j]) {
+				j++;
+			}
+			else {
+				Container and = containers[i].and(other.containers[j]);
+				if(and != null)
+					result.append(keys[i], and);
+				i++;
+				j++;
+			}
+		}
+		take(result);
+	}
+
+	/**
+	 * Sets the bits that are set in other.
+	 */
+	public void or(RoaringBitmap other) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while(i < size || j < other.size) {
+			if(j == other.size || (i < size && keys[i] < other.keys[j])) {
+				result.append(keys[i], containers[i]);
+				i++;
+			}
+			else if(i == size || keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j].copy());
+				j++;
+			}
+			else {
+				result.append(keys[i], containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		take(result);
+	}
+
+	/**
+	 * Flips the bits that are set in other.
+	 */
+	public void xor(RoaringBitmap other) {
+		RoaringBitmap result = new RoaringBitmap();
+		int i = 0;
+		int j = 0;
+		while(i < size || j < other.size) {
+			if(j == other.size || (i < size && keys[i] < other.keys[j])) {
+				result.append(keys[i], containers[i]);
+				i++;
+			}
+			else if(i == size || keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j].copy());
+				j++;
+			}
+			else {
+				Container xor = containers[i].xor(other.containers[j]);
+				if(xor != null)
+					result.append(keys[i], xor);
+				i++;
+				j++;
+			}
+		}
+		take(result);
+	}
+
+	/**
+	 * Clears the bits that are set in other.
+	 */
+	public void andNot(RoaringBitmap other) {
+		RoaringBitmap result = new RoaringBitmap();
+		int j = 0;
+		for(int i=0;i<size;i++) {
+			while(j < other.size && other.keys[j] < keys[i])
+				j++;
+			if(j < other.size && other.keys[j] == keys[i]) {
+				Container andNot = containers[i].andNot(other.containers[j]);
+				if(andNot != null)
+					result.append(keys[i], andNot);
+			}
+			else {
+				result.append(keys[i], containers[i]);
+			}
+		}
+		take(result);
+	}
+
+	/**
+	 * Number of bits set.
+	 */
+	public int cardinality() {
+		int cardinality = 0;
+		for(int i=0;i<size;i++)
+			cardinality += containers[i].cardinality();
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Index of the highest set bit plus one, like BitSet.length().
+	 */
+	public int length() {
+		if(size == 0)
+			return 0;
+		return (keys[size - 1] << 16 | containers[size - 1].last()) + 1;
+	}
+
+	/**
+	 * Index of the first set bit at or after fromIndex, -1 if there is none.
+	 */
+	public int nextSetBit(int fromIndex) {
+		checkIndex(fromIndex);
+		int i = find((char) (fromIndex >>> 16));
+		if(i >= 0) {
+			int low = containers[i].nextSetBit(fromIndex & 0xFFFF);
+			if(low >= 0)
+				return keys[i] << 16 | low;
+			i++;
+		}
+		else {
+			i = -i - 1;
+		}
+		return i < size ? keys[i] << 16 | containers[i].nextSetBit(0) : -1;
+	}
+
+	/**
+	 * Indexes of the set bits in increasing order, like BitSet.stream().
+	 */
+	public IntStream stream() {
+		PrimitiveIterator.OfInt iterator = new PrimitiveIterator.OfInt() {
+			private int next = size == 0 ? -1 : nextSetBit(0);
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public int nextInt() {
+				if(next < 0)
+					throw new NoSuchElementException();
+				int current = next;
+				next = current == Integer.MAX_VALUE ? -1 : nextSetBit(current + 1);
+				return current;
+			}
+		};
+		return StreamSupport.intStream(Spliterators.spliterator(iterator, cardinality(), Spliterator.ORDERED | Spliterator.DISTINCT
+				| Spliterator.SORTED | Spliterator.NONNULL | Spliterator.SIZED), false);
+	}
+
+	/**
+	 * Turns every container into a run container where that is smaller, e.g. after set() of long ranges of bits.
+	 */
+	public void runOptimize() {
+		for(int i=0;i<size;i++)
+			containers[i] = containers[i].optimize();
+	}
+
+	/**
+	 * Estimated memory taken by the bitmap in bytes: keys, container references and headers, and the containers' arrays.
+	 */
+	public long sizeInBytes() {
+		long bytes = 16 + (16 + 2L * keys.length) + (16 + 4L * containers.length);		// this, keys, containers
+		for(int i=0;i<size;i++)
+			bytes += 16 + 16 + containers[i].payloadBytes();		// the container and its array
+		return bytes;
+	}
+
+	/**
+	 * Number of containers of each form: array, bitmap and run.
+	 */
+	public int[] containerCounts() {
+		int[] counts = new int[3];
+		for(int i=0;i<size;i++)
+			counts[containers[i] instanceof ArrayContainer ? 0 : containers[i] instanceof BitmapContainer ? 1 : 2]++;
+		return counts;
+	}
+
+	public BitSet toBitSet() {
+		BitSet bits = new BitSet();
+		stream().forEach(bits::set);
+		return bits;
+	}
+
+	@Override
+	public RoaringBitmap clone() {
+		RoaringBitmap clone = new RoaringBitmap();
+		for(int i=0;i<size;i++)
+			clone.append(keys[i], containers[i].copy());
+		return clone;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof RoaringBitmap))
+			return false;
+		RoaringBitmap other = (RoaringBitmap) o;
+		if(size != other.size)
+			return false;
+		for(int i=0;i<size;i++)
+			if(keys[i] != other.keys[i] || !containers[i].contentEquals(other.containers[i]))
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for(int i=0;i<size;i++)
+			hash = 31 * hash + keys[i] * 31 + containers[i].cardinality();
+		return hash;
+	}
+
+	/**
+	 * The indexes of the set bits like BitSet.toString(): {1, 5, 90}.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		stream().forEach(index -> sb.append(sb.length() > 1 ? ", " : "").append(index));
+		return sb.append('}').toString();
+	}
+
+
+	private static void checkIndex(int index) {
+		if(index < 0)
+			throw new IndexOutOfBoundsException("index < 0: " + index);
+	}
+
+	private int find(char key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	private void insert(int i, char key, Container container) {
+		if(size == keys.length) {
+			keys = Arrays.copyOf(keys, 2 * size);
+			containers = Arrays.copyOf(containers, 2 * size);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(containers, i, containers, i + 1, size - i);
+		keys[i] = key;
+		containers[i] = container;
+		size++;
+	}
+
+	private void append(char key, Container container) {
+		insert(size, key, container);
+	}
+
+	private void remove(int i) {
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+		containers[--size] = null;
+	}
+
+	private void take(RoaringBitmap result) {
+		keys = result.keys;
+		containers = result.containers;
+		size = result.size;
+	}
+
+
+	/**
+	 * The set bits of one chunk of 2^16 indexes, as chars. Operations that change the bits return the container holding the result,
+	 * which may be this one, or null when no bit is left.
+	 */
+	private abstract static class Container {
+
+		abstract int cardinality();
+
+		abstract boolean contains(char x);
+
+		abstract Container add(char x);
+
+		abstract Container remove(char x);
+
+		/**
+		 * First set bit at or after from, -1 if none.
+		 */
+		abstract int nextSetBit(int from);
+
+		abstract int last();
+
+		abstract Container copy();
+
+		abstract int payloadBytes();
+
+		/**
+		 * The bits as a new long[1024].
+		 */
+		abstract long[] toWords();
+
+		/**
+		 * Number of runs of consecutive set bits.
+		 */
+		abstract int runs();
+
+		Container flip(int from, int to) {
+			long[] words = toWords();
+			flipRange(words, from, to);
+			return best(words);
+		}
+
+		Container and(Container other) {
+			if(other instanceof ArrayContainer)
+				return ((ArrayContainer) other).filter(this, true);
+			if(this instanceof ArrayContainer)
+				return ((ArrayContainer) this).filter(other, true);
+			long[] words = toWords();
+			other.andInto(words);
+			return best(words);
+		}
+
+		Container or(Container other) {
+			if(this instanceof ArrayContainer && other instanceof ArrayContainer)
+				return ((ArrayContainer) this).merge((ArrayContainer) other, false);
+			long[] words = toWords();
+			other.orInto(words);
+			return best(words);
+		}
+
+		Container xor(Container other) {
+			if(this instanceof ArrayContainer && other instanceof ArrayContainer)
+				return ((ArrayContainer) this).merge((ArrayContainer) other, true);
+			long[] words = toWords();
+			other.xorInto(words);
+			return best(words);
+		}
+
+		Container andNot(Container other) {
+			if(this instanceof ArrayContainer)
+				return ((ArrayContainer) this).filter(other, false);
+			long[] words = toWords();
+			long[] not = other.toWords();
+			for(int w=0;w<WORDS;w++)
+				words[w] &= ~not[w];
+			return best(words);
+		}
+
+		void andInto(long[] words) {
+			long[] mine = toWords();
+			for(int w=0;w<WORDS;w++)
+				words[w] &= mine[w];
+		}
+
+		void orInto(long[] words) {
+			long[] mine = toWords();
+			for(int w=0;w<WORDS;w++)
+				words[w] |= mine[w];
+		}
+
+		void xorInto(long[] words) {
+			long[] mine = toWords();
+			for(int w=0;w<WORDS;w++)
+				words[w] ^= mine[w];
+		}
+
+		/**
+		 * This container in its smallest form.
+		 */
+		Container optimize() {
+			return best(toWords());
+		}
+
+		boolean contentEquals(Container other) {
+			if(cardinality() != other.cardinality())
+				return false;
+			for(int x=nextSetBit(0);x>=0;x=x == CHUNK_BITS - 1 ? -1 : nextSetBit(x + 1))
+				if(!other.contains((char) x))
+					return false;
+			return true;
+		}
+
+		/**
+		 * The smallest container holding the bits of words, null if none is set. Keeps words if it is a bitmap.
+		 */
+		static Container best(long[] words) {
+			int cardinality = 0;
+			int runs = 0;
+			long previous = 0;
+			for(long word: words) {
+				cardinality += Long.bitCount(word);
+				runs += Long.bitCount(word & ~(word << 1 | previous >>> 63));		// bits that start a run
+				previous = word;
+			}
+			if(cardinality == 0)
+				return null;
+			int arrayBytes = cardinality <= MAX_ARRAY ? 2 * cardinality : Integer.MAX_VALUE;
+			int runBytes = 4 * runs;
+			if(runBytes < Math.min(arrayBytes, 8 * WORDS))
+				return RunContainer.fromWords(words, runs);
+			if(arrayBytes < 8 * WORDS)
+				return ArrayContainer.fromWords(words, cardinality);
+			return new BitmapContainer(words, cardinality);
+		}
+
+		static void flipRange(long[] words, int from, int to) {
+			int first = from >>> 6;
+			int last = (to - 1) >>> 6;
+			long firstMask = -1L << from;
+			long lastMask = -1L >>> -to;
+			if(first == last) {
+				words[first] ^= firstMask & lastMask;
+				return;
+			}
+			words[first] ^= firstMask;
+			for(int w=first+1;w<last;w++)
+				words[w] = ~words[w];
+			words[last] ^= lastMask;
+		}
+
+		static void setRange(long[] words, int from, int to) {
+			int first = from >>> 6;
+			int last = (to - 1) >>> 6;
+			long firstMask = -1L << from;
+			long lastMask = -1L >>> -to;
+			if(first == last) {
+				words[first] |= firstMask & lastMask;
+				return;
+			}
+			words[first] |= firstMask;
+			for(int w=first+1;w<last;w++)
+				words[w] = -1L;
+			words[last] |= lastMask;
+		}
+	}
+
+	private static final class ArrayContainer extends Container {
+		private char[] values;
+		private int cardinality;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		static ArrayContainer fromWords(long[] words, int cardinality) {
+			char[] values = new char[cardinality];
+			int n = 0;
+			for(int w=0;w<WORDS;w++) {
+				for(long word=words[w];word!=0;word&=word - 1)
+					values[n++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+			}
+			return new ArrayContainer(values, n);
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		boolean contains(char x) {
+			return Arrays.binarySearch(values, 0, cardinality, x) >= 0;
+		}
+
+		@Override
+		Container add(char x) {
+			int i = Arrays.binarySearch(values, 0, cardinality, x);
+			if(i >= 0)
+				return this;
+			if(cardinality == MAX_ARRAY) {
+				BitmapContainer bitmap = new BitmapContainer(toWords(), cardinality);
+				return bitmap.add(x);
+			}
+			i = -i - 1;
+			if(cardinality == values.length)
+				values = Arrays.copyOf(values, Math.max(4, Math.min(2 * cardinality, MAX_ARRAY)));
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = x;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		Container remove(char x) {
+			int i = Arrays.binarySearch(values, 0, cardinality, x);
+			if(i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		int nextSetBit(int from) {
+			int i = Arrays.binarySearch(values, 0, cardinality, (char) from);
+			if(i < 0)
+				i = -i - 1;
+			return i < cardinality ? values[i] : -1;
+		}
+
+		@Override
+		int last() {
+			return values[cardinality - 1];
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+		}
+
+		@Override
+		int payloadBytes() {
+			return 2 * values.length;
+		}
+
+		@Override
+		long[] toWords() {
+			long[] words = new long[WORDS];
+			for(int i=0;i<cardinality;i++)
+				words[values[i] >>> 6] |= 1L << values[i];
+			return words;
+		}
+
+		@Override
+		int runs() {
+			int runs = 0;
+			for(int i=0;i<cardinality;i++)
+				if(i == 0 || values[i] != values[i - 1] + 1)
+					runs++;
+			return runs;
+		}
+
+		@Override
+		void orInto(long[] words) {
+			for(int i=0;i<cardinality;i++)
+				words[values[i] >>> 6] |= 1L << values[i];
+		}
+
+		@Override
+		void xorInto(long[] words) {
+			for(int i=0;i<cardinality;i++)
+				words[values[i] >>> 6] ^= 1L << values[i];
+		}
+
+		/**
+		 * The values that other contains (keep) or doesn't contain (!keep).
+		 */
+		Container filter(Container other, boolean keep) {
+			char[] result = new char[cardinality];
+			int n = 0;
+			for(int i=0;i<cardinality;i++)
+				if(other.contains(values[i]) == keep)
+					result[n++] = values[i];
+			return n == 0 ? null : new ArrayContainer(result, n).optimizeRuns();
+		}
+
+		/**
+		 * Union, or symmetric difference when xor, of two sorted arrays.
+		 */
+		Container merge(ArrayContainer other, boolean xor) {
+			char[] result = new char[cardinality + other.cardinality];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while(i < cardinality && j < other.cardinality) {
+				char a = values[i];
+				char b = other.values[j];
+				if(a < b) {
+					result[n++] = a;
+					i++;
+				}
+				else if(a > b) {
+					result[n++] = b;
+					j++;
+				}
+				else {
+					if(!xor)
+						result[n++] = a;
+					i++;
+					j++;
+				}
+			}
+			while(i < cardinality)
+				result[n++] = values[i++];
+			while(j < other.cardinality)
+				result[n++] = other.values[j++];
+			if(n == 0)
+				return null;
+			if(n > MAX_ARRAY)
+				return best(new ArrayContainer(result, n).toWords());
+			return new ArrayContainer(result, n).optimizeRuns();
+		}
+
+		/**
+		 * This container, or a run container if that is smaller.
+		 */
+		private Container optimizeRuns() {
+			int runs = runs();
+			return 4 * runs < 2 * cardinality ? RunContainer.fromWords(toWords(), runs) : this;
+		}
+
+		@Override
+		Container optimize() {
+			return optimizeRuns();
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		private final long[] words;
+		private int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		boolean contains(char x) {
+			return (words[x >>> 6] & 1L << x) != 0;
+		}
+
+		@Override
+		Container add(char x) {
+			long word = words[x >>> 6];
+			words[x >>> 6] = word | 1L << x;
+			cardinality += (int) ((word >>> x & 1) ^ 1);
+			return this;
+		}
+
+		@Override
+		Container remove(char x) {
+			long word = words[x >>> 6];
+			words[x >>> 6] = word & ~(1L << x);
+			cardinality -= (int) (word >>> x & 1);
+			if(cardinality <= MAX_ARRAY / 2)		// not at MAX_ARRAY, so that add() and remove() at the limit don't convert every time
+				return ArrayContainer.fromWords(words, cardinality);
+			return this;
+		}
+
+		@Override
+		int nextSetBit(int from) {
+			int w = from >>> 6;
+			long word = words[w] & -1L << from;
+			while(word == 0) {
+				if(++w == WORDS)
+					return -1;
+				word = words[w];
+			}
+			return w << 6 | Long.numberOfTrailingZeros(word);
+		}
+
+		@Override
+		int last() {
+			int w = WORDS - 1;
+			while(words[w] == 0)
+				w--;
+			return w << 6 | 63 - Long.numberOfLeadingZeros(words[w]);
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		@Override
+		int payloadBytes() {
+			return 8 * WORDS;
+		}
+
+		@Override
+		long[] toWords() {
+			return words.clone();
+		}
+
+		@Override
+		int runs() {
+			int runs = 0;
+			long previous = 0;
+			for(long word: words) {
+				runs += Long.bitCount(word & ~(word << 1 | previous >>> 63));
+				previous = word;
+			}
+			return runs;
+		}
+
+		@Override
+		void andInto(long[] into) {
+			for(int w=0;w<WORDS;w++)
+				into[w] &= words[w];
+		}
+
+		@Override
+		void orInto(long[] into) {
+			for(int w=0;w<WORDS;w++)
+				into[w] |= words[w];
+		}
+
+		@Override
+		void xorInto(long[] into) {
+			for(int w=0;w<WORDS;w++)
+				into[w] ^= words[w];
+		}
+	}
+
+	private static final class RunContainer extends Container {
+		private final char[] runs;		// start and length - 1 of every run, by start
+		private final int count;
+
+		RunContainer(char[] runs, int count) {
+			this.runs = runs;
+			this.count = count;
+		}
+
+		static RunContainer range(int from, int to) {
+			return new RunContainer(new char[] {(char) from, (char) (to - from - 1)}, 1);
+		}
+
+		static RunContainer fromWords(long[] words, int count) {
+			char[] runs = new char[2 * count];
+			int n = 0;
+			int start = nextBit(words, 0, true);
+			while(start >= 0) {
+				int end = nextBit(words, start, false);		// first clear bit after the run, or CHUNK_BITS
+				runs[2 * n] = (char) start;
+				runs[2 * n + 1] = (char) (end - start - 1);
+				n++;
+				start = end == CHUNK_BITS ? -1 : nextBit(words, end, true);
+			}
+			return new RunContainer(runs, n);
+		}
+
+		// first index at or after from whose bit is set (or clear), -1 (or CHUNK_BITS) if none
+		private static int nextBit(long[] words, int from, boolean set) {
+			int w = from >>> 6;
+			long word = (set ? words[w] : ~words[w]) & -1L << from;
+			while(word == 0) {
+				if(++w == WORDS)
+					return set ? -1 : CHUNK_BITS;
+				word = set ? words[w] : ~words[w];
+			}
+			return w << 6 | Long.numberOfTrailingZeros(word);
+		}
+
+		private int start(int run) {
+			return runs[2 * run];
+		}
+
+		private int end(int run) {		// exclusive
+			return runs[2 * run] + runs[2 * run + 1] + 1;
+		}
+
+		/**
+		 * Index of the last run starting at or before x, -1 if none.
+		 */
+		private int runAtOrBefore(int x) {
+			int low = 0;
+			int high = count - 1;
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				if(start(mid) <= x)
+					low = mid + 1;
+				else
+					high = mid - 1;
+			}
+			return high;
+		}
+
+		@Override
+		int cardinality() {
+			int cardinality = 0;
+			for(int r=0;r<count;r++)
+				cardinality += runs[2 * r + 1] + 1;
+			return cardinality;
+		}
+
+		@Override
+		boolean contains(char x) {
+			int r = runAtOrBefore(x);
+			return r >= 0 && x < end(r);
+		}
+
+		@Override
+		Container add(char x) {
+			return contains(x) ? this : toArrayOrBitmap().add(x);
+		}
+
+		@Override
+		Container remove(char x) {
+			return contains(x) ? toArrayOrBitmap().remove(x) : this;
+		}
+
+		private Container toArrayOrBitmap() {
+			long[] words = toWords();
+			int cardinality = cardinality();
+			return cardinality <= MAX_ARRAY ? ArrayContainer.fromWords(words, cardinality) : new BitmapContainer(words, cardinality);
+		}
+
+		@Override
+		int nextSetBit(int from) {
+			int r = runAtOrBefore(from);
+			if(r >= 0 && from < end(r))
+				return from;
+			return r + 1 < count ? start(r + 1) : -1;
+		}
+
+		@Override
+		int last() {
+			return end(count - 1) - 1;
+		}
+
+		@Override
+		Container copy() {
+			return new RunContainer(Arrays.copyOf(runs, 2 * count), count);
+		}
+
+		@Override
+		int payloadBytes() {
+			return 2 * runs.length;
+		}
+
+		@Override
+		long[] toWords() {
+			long[] words = new long[WORDS];
+			for(int r=0;r<count;r++)
+				setRange(words, start(r), end(r));
+			return words;
+		}
+
+		@Override
+		int runs() {
+			return count;
+		}
+
+		@Override
+		void orInto(long[] words) {
+			for(int r=0;r<count;r++)
+				setRange(words, start(r), end(r));
+		}
+
+		@Override
+		Container optimize() {
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package concept.bitmanipulation;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * and() and or() of two sets of bits below 2^28 (a 32 MB BitSet) as BitSet and as RoaringBitmap, for three layouts:
+ * sparse: 100k random bits each.
+ * clustered: 200 runs of 1..5000 bits each, like ids handed out in batches. runOptimize() is called after set().
+ * dense: every bit set with probability 1/2 in the first 2^24.
+ * The operations change the left operand, so both sides clone it first. setup() prints the memory each layout takes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoaringBitmapBenchmark {
+
+	private static final int RANGE = 1 << 28;
+
+	@Param({"sparse", "clustered", "dense"})
+	private String layout;
+
+	private BitSet bitSetA;
+	private BitSet bitSetB;
+	private RoaringBitmap roaringA;
+	private RoaringBitmap roaringB;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(RoaringBitmapBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		bitSetA = bits(random);
+		bitSetB = bits(random);
+		roaringA = RoaringBitmap.valueOf(bitSetA);
+		roaringB = RoaringBitmap.valueOf(bitSetB);
+		roaringA.runOptimize();
+		roaringB.runOptimize();
+		System.out.printf("%n%s: BitSet %d bytes, RoaringBitmap %d bytes%n", layout, bitSetA.size() / 8, roaringA.sizeInBytes());
+	}
+
+	private BitSet bits(Random random) {
+		BitSet bits = new BitSet();
+		switch(layout) {
+		case "sparse":
+			for(int i=0;i<100_000;i++)
+				bits.set(random.nextInt(RANGE));
+			break;
+		case "clustered":
+			for(int i=0;i<200;i++) {
+				int start = random.nextInt(RANGE - 5000);
+				bits.set(start, start + 1 + random.nextInt(5000));
+			}
+			break;
+		default:
+			for(int i=0;i<1 << 24;i++)
+				if(random.nextBoolean())
+					bits.set(i);
+		}
+		bits.set(RANGE - 1);		// the same length for every layout
+		return bits;
+	}
+
+	@Benchmark
+	public BitSet bitSetAnd() {
+		BitSet bits = (BitSet) bitSetA.clone();
+		bits.and(bitSetB);
+		return bits;
+	}
+
+	@Benchmark
+	public RoaringBitmap roaringAnd() {
+		RoaringBitmap bits = roaringA.clone();
+		bits.and(roaringB);
+		return bits;
+	}
+
+	@Benchmark
+	public BitSet bitSetOr() {
+		BitSet bits = (BitSet) bitSetA.clone();
+		bits.or(bitSetB);
+		return bits;
+	}
+
+	@Benchmark
+	public RoaringBitmap roaringOr() {
+		RoaringBitmap bits = roaringA.clone();
+		bits.or(roaringB);
+		return bits;
+	}
+
+}
@@ -1,5 +1,7 @@
 package concept.regex;
 
+import java.time.Duration;
+import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -72,6 +74,12 @@ public class AboutPatternMatcher {
 		// Handling overlapping matches
 		Example5();
 		
+		// Bounding the time a match can take
+		Example6();
+		
+		// Scanning a large input on all cores
+		Example7();
+		
 		
 		/* Few more interesting and possibly useful methods to explore:
 		 * 1. requireEnd()
@@ -233,6 +241,7 @@ public class AboutPatternMatcher {
 	 * By default the overlapping matches are not recognized.
 	 * The fundamental technique to recognize overlapping matches is to start the next match search from the second index
 	 * of the previous successful match start.
+	 * OverlappingMatches gives the same matches as a lazy stream without restarting the search for every match.
 	 * Refer:  https://stackoverflow.com/questions/14008897/why-doesnt-usetransparentbounds-search-outside-matchers-region
 	 */
 	private static void Example5() {
@@ -257,6 +266,44 @@ public class AboutPatternMatcher {
 			i = matcher.start() + 1;// update i to start the next search from the second index to the start of last matched.
 		}
 		System.out.println(count);
+		
+		// find(i) resets the matcher every time. OverlappingMatches does the same in one pass (here Aho-Corasick as 'cosco' is literal)
+		System.out.println(OverlappingMatches.findAllOverlapping(pattern, "coscoscosco").count());	// 3, find() alone gives 2
+	}
+	
+	/**
+	 * A matcher runs until it is done, there is no timeout and it ignores Thread.interrupt(). With a pattern that backtracks badly
+	 * (see concept.regex.linear.PatternAnalyzer) a short input can keep find() busy for minutes.
+	 * BudgetedPattern feeds the input through a BudgetedCharSequence which aborts the match with a BudgetExceededException once the
+	 * deadline passes or too many chars were inspected.
+	 */
+	private static void Example6() {
+		BudgetedPattern pattern = BudgetedPattern.compile("(.*a){12}", Duration.ofMillis(20), Long.MAX_VALUE);
+		
+		System.out.println(pattern.find("banana"));			// false, fast
+		try {
+			pattern.matches("a".repeat(40) + "!");			// would take seconds, every 'a' can end any of the 12 iterations
+		}
+		catch(BudgetExceededException e) {
+			System.out.println(e.getMessage());
+		}
+		System.out.println(pattern);						// calls, aborts and p99 duration
+	}
+	
+	/**
+	 * A find() loop runs on one core. ParallelScanner splits a large input at line ends, runs find() on every part at once
+	 * (each part with its own matcher limited to the part by region()) and merges the matches in order, so the count, the list of
+	 * matches and the Nth match are the same as with the loop in Example4.
+	 */
+	private static void Example7() {
+		StringBuilder log = new StringBuilder();
+		for(int i=0;i<100_000;i++)
+			log.append(i % 7 == 0 ? "lion#cat#tiger\n" : "giraffe#bat#dog\n");
+		
+		ParallelScanner scanner = ParallelScanner.byLines(Pattern.compile("[bc]at#(\\w+)"));
+		System.out.println(scanner.count(log));				// 100000, one per line
+		MatchResult tenth = scanner.findNth(log, 10).get();
+		System.out.println(tenth.group(1) + " at: " + tenth.start());	// the 10th match, as the 10th find() would find it
 	}
 	
 }
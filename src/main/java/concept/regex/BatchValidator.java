@@ -0,0 +1,350 @@
+package concept.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * RegexLookArounds.LookAhead checks phone numbers and NegativeLookBehind file names one string at a time in a for loop, with a single
+ * matcher on a single thread. BatchValidator checks a whole list or stream of records against a set of named validators:
+ * 1. Records are cut into batches of batchSize (1024 by default) and every batch is one task on an executor, the common
+ * 		ForkJoinPool unless another one is given. A bounded pool keeps the number of threads at the number of cores however many
+ * 		records there are.
+ * 2. A task creates one Matcher per validator and resets it for every record of its batch. Matchers never cross threads, and
+ * 		their cost is spread over the batch, which also holds for an executor with a thread per task.
+ * 3. The result is a bitmap with one bit per record and validator, packed without gaps: records * validators bits in a long[],
+ * 		bit record * validators + validator is set when the record passes that validator. Batches start at a multiple of 64
+ * 		records, so no two tasks ever write the same long.
+ * 4. For a stream, at most maxInFlight batches are submitted ahead of the one the caller waits for, and the results are handed
+ * 		to the sink in stream order. Memory stays at a few batches for any number of rows, which makes it a pipeline stage.
+ *
+ * A record passes a validator when find() succeeds, so validators that check the whole record are anchored with ^ and $ (see
+ * PHONE, EMAIL and FILE_NAME). batchLatencies() records for every batch the nanos from submitting it until it was done, so it
+ * includes the time it waited in the queue, and recordsPerSecond() the rate at which its task checked the records.
+ *
+ * BatchValidator validator = BatchValidator.of(Map.of("phone", Pattern.compile(BatchValidator.PHONE)));
+ * BatchValidator.Results results = validator.validate(numbers);
+ * results.passed(0, 0);		// first record, first validator
+ *
+ * Instances are thread safe, the histograms are shared by all calls.
+ */
+public class BatchValidator {
+
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	/** Country code of 1 to 3 digits followed by 10 digits (RegexLookArounds.LookAhead), anchored at both ends. */
+	public static final String PHONE = "^\\d{1,3}(?=\\d{10}$)";
+
+	/** E-mail address as in StringMethodsRegex, anchored at both ends. */
+	public static final String EMAIL = "^[a-zA-Z][a-zA-Z0-9_]*@[a-zA-Z0-9]+\\.[a-zA-Z]+$";
+
+	/** File name with no non word char before its extension of 3 or 4 letters or digits (RegexLookArounds.NegativeLookBehind). */
+	public static final String FILE_NAME = "(?<!\\W.{0,100})\\.[a-z0-9]{3,4}$";
+
+	private final String[] names;
+	private final Pattern[] patterns;
+	private final ExecutorService executor;
+	private final int batchSize;
+	private final int maxInFlight;
+	private final Histogram batchLatencies = new Histogram();
+	private final Histogram recordsPerSecond = new Histogram();
+	private final LongAdder checked = new LongAdder();
+
+	private BatchValidator(String[] names, Pattern[] patterns, ExecutorService executor, int batchSize, int maxInFlight) {
+		if(names.length == 0 || names.length > 64)
+			throw new IllegalArgumentException("need 1 to 64 validators: " + names.length);
+		if(batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		if(maxInFlight < 1)
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		this.names = names;
+		this.patterns = patterns;
+		this.executor = executor;
+		this.batchSize = (batchSize + 63) & ~63;		// whole longs of the bitmap per batch, see the class notes
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Validator with the given validators by name, in the map's iteration order (use a LinkedHashMap to fix the order).
+	 */
+	public static BatchValidator of(Map<String, Pattern> validators) {
+		String[] names = validators.keySet().toArray(new String[0]);
+		Pattern[] patterns = validators.values().toArray(new Pattern[0]);
+		return new BatchValidator(names, patterns, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE,
+				2 * ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * Validator for phone, email and fileName with the regexes PHONE, EMAIL and FILE_NAME, compiled through the shared PatternCache.
+	 */
+	public static BatchValidator common() {
+		Map<String, Pattern> validators = new LinkedHashMap<String, Pattern>();
+		validators.put("phone", PatternCache.shared().compile(PHONE));
+		validators.put("email", PatternCache.shared().compile(EMAIL));
+		validators.put("fileName", PatternCache.shared().compile(FILE_NAME));
+		return of(validators);
+	}
+
+	/**
+	 * Same validators running on the given executor, which the caller keeps and shuts down.
+	 */
+	public BatchValidator executor(ExecutorService executor) {
+		return new BatchValidator(names, patterns, executor, batchSize, maxInFlight);
+	}
+
+	/**
+	 * Same validators with batches of batchSize records, rounded up to a multiple of 64.
+	 */
+	public BatchValidator batchSize(int batchSize) {
+		return new BatchValidator(names, patterns, executor, batchSize, maxInFlight);
+	}
+
+	/**
+	 * Same validators keeping at most maxInFlight batches of a stream submitted at a time.
+	 */
+	public BatchValidator maxInFlight(int maxInFlight) {
+		return new BatchValidator(names, patterns, executor, batchSize, maxInFlight);
+	}
+
+	public List<String> names() {
+		return Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	public int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Validates all records, the batches run in parallel and the call returns when all are done.
+	 */
+	public Results validate(List<? extends CharSequence> records) {
+		Results results = new Results(names, records, 0);
+		List<Future<?>> batches = new ArrayList<Future<?>>();
+		try {
+			for(int from=0;from<records.size();from+=batchSize) {
+				int start = from;
+				int end = Math.min(from + batchSize, records.size());
+				long submitted = System.nanoTime();
+				batches.add(executor.submit(() -> check(records, start, end, results, start, submitted)));
+			}
+			for(Future<?> batch: batches)
+				await(batch);
+		}
+		finally {
+			for(Future<?> batch: batches)
+				batch.cancel(false);		// no-op for the finished ones
+		}
+		return results;
+	}
+
+	/**
+	 * Validates a stream batch by batch and passes the Results of every batch to sink on the calling thread, in stream order.
+	 * Results.offset() is the index of the batch's first record in the stream.
+	 */
+	public void validate(Stream<? extends CharSequence> records, Consumer<Results> sink) {
+		Iterator<? extends CharSequence> iterator = records.iterator();
+		Queue<Future<Results>> inFlight = new ArrayDeque<Future<Results>>();
+		long offset = 0;
+		try {
+			while(iterator.hasNext() || !inFlight.isEmpty()) {
+				while(iterator.hasNext() && inFlight.size() < maxInFlight) {
+					List<CharSequence> batch = new ArrayList<CharSequence>(batchSize);
+					while(iterator.hasNext() && batch.size() < batchSize)
+						batch.add(iterator.next());
+					Results results = new Results(names, batch, offset);
+					long submitted = System.nanoTime();
+					inFlight.add(executor.submit(() -> check(batch, 0, batch.size(), results, 0, submitted), results));
+					offset += batch.size();
+				}
+				sink.accept(await(inFlight.remove()));
+			}
+		}
+		finally {
+			for(Future<Results> batch: inFlight)
+				batch.cancel(false);
+		}
+	}
+
+	// checks records [from, to) and stores them in results from index at on
+	private void check(List<? extends CharSequence> records, int from, int to, Results results, int at, long submitted) {
+		long started = System.nanoTime();
+		Matcher[] matchers = new Matcher[patterns.length];
+		for(int v=0;v<patterns.length;v++)
+			matchers[v] = patterns[v].matcher("");
+		for(int r=from;r<to;r++) {
+			CharSequence record = records.get(r);
+			long mask = 0;
+			for(int v=0;v<matchers.length;v++)
+				if(matchers[v].reset(record).find())
+					mask |= 1L << v;
+			results.set(at + r - from, mask);
+		}
+		long done = System.nanoTime();
+		batchLatencies.record(done - submitted);
+		recordsPerSecond.record((long) ((to - from) * 1e9 / Math.max(1, done - started)));
+		checked.add(to - from);
+	}
+
+	private static <T> T await(Future<T> batch) {
+		try {
+			return batch.get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("interrupted while validating");
+		}
+		catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Nanos from submitting a batch until it was checked, per batch.
+	 */
+	public Histogram batchLatencies() {
+		return batchLatencies;
+	}
+
+	/**
+	 * Records checked per second by a task, per batch.
+	 */
+	public Histogram recordsPerSecond() {
+		return recordsPerSecond;
+	}
+
+	/**
+	 * Records checked so far by all calls.
+	 */
+	public long recordCount() {
+		return checked.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "BatchValidator[" + String.join(", ", names) + "] records=" + recordCount() + ", batch latency ns: " + batchLatencies
+				+ ", records/s: " + recordsPerSecond;
+	}
+
+
+	/**
+	 * Which validators every record of a batch (or of the whole list) passed, one bit per record and validator.
+	 */
+	public static final class Results {
+		private final String[] names;
+		private final List<? extends CharSequence> records;
+		private final long offset;
+		private final long[] bits;
+
+		Results(String[] names, List<? extends CharSequence> records, long offset) {
+			this.names = names;
+			this.records = records;
+			this.offset = offset;
+			this.bits = new long[(int) (((long) records.size() * names.length + 63) >>> 6)];
+		}
+
+		// stores the validators record passed, bit v of mask for validator v
+		void set(int record, long mask) {
+			long bit = (long) record * names.length;
+			int word = (int) (bit >>> 6);
+			int shift = (int) (bit & 63);
+			bits[word] |= mask << shift;
+			if(shift + names.length > 64)
+				bits[word + 1] |= mask >>> (64 - shift);
+		}
+
+		/**
+		 * Number of records.
+		 */
+		public int size() {
+			return records.size();
+		}
+
+		/**
+		 * Index of the first record in the stream, 0 for a list.
+		 */
+		public long offset() {
+			return offset;
+		}
+
+		public CharSequence record(int record) {
+			return records.get(record);
+		}
+
+		public List<String> names() {
+			return Collections.unmodifiableList(Arrays.asList(names));
+		}
+
+		/**
+		 * Bit v is set if the record passed validator v.
+		 */
+		public long mask(int record) {
+			long bit = (long) Objects.checkIndex(record, records.size()) * names.length;
+			int word = (int) (bit >>> 6);
+			int shift = (int) (bit & 63);
+			long mask = bits[word] >>> shift;
+			if(shift + names.length > 64)
+				mask |= bits[word + 1] << (64 - shift);
+			return names.length == 64 ? mask : mask & ((1L << names.length) - 1);
+		}
+
+		public boolean passed(int record, int validator) {
+			Objects.checkIndex(validator, names.length);
+			return (mask(record) >>> validator & 1) != 0;
+		}
+
+		public boolean passed(int record, String validator) {
+			int v = Arrays.asList(names).indexOf(validator);
+			if(v < 0)
+				throw new IllegalArgumentException("no validator " + validator);
+			return passed(record, v);
+		}
+
+		/**
+		 * True if the record passed every validator.
+		 */
+		public boolean passedAll(int record) {
+			return mask(record) == (names.length == 64 ? -1L : (1L << names.length) - 1);
+		}
+
+		/**
+		 * Number of records that passed the given validator.
+		 */
+		public int passCount(int validator) {
+			Objects.checkIndex(validator, names.length);
+			int count = 0;
+			for(int r=0;r<records.size();r++)
+				count += (int) (mask(r) >>> validator & 1);
+			return count;
+		}
+
+		/**
+		 * The bitmap itself, bit record * validators + validator. A copy.
+		 */
+		public long[] toLongArray() {
+			return bits.clone();
+		}
+	}
+
+}
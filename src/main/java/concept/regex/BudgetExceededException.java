@@ -0,0 +1,43 @@
+package concept.regex;
+
+/**
+ * Thrown from within Matcher methods when the BudgetedCharSequence being matched runs out of time or steps. The match is abandoned,
+ * the matcher has to be reset before it is used again.
+ */
+public class BudgetExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Reason {
+		/** the deadline passed */
+		TIMEOUT,
+		/** more chars were inspected than allowed */
+		STEPS,
+		/** the matching thread was interrupted, its interrupt flag is left set */
+		INTERRUPTED
+	}
+
+	private final Reason reason;
+	private final long charsInspected;
+	private final long elapsedNanos;
+
+	public BudgetExceededException(Reason reason, long charsInspected, long elapsedNanos) {
+		super("Regex match aborted (" + reason + ") after " + charsInspected + " chars inspected in " + elapsedNanos / 1000 + "us");
+		this.reason = reason;
+		this.charsInspected = charsInspected;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public Reason reason() {
+		return reason;
+	}
+
+	public long charsInspected() {
+		return charsInspected;
+	}
+
+	public long elapsedNanos() {
+		return elapsedNanos;
+	}
+
+}
@@ -0,0 +1,104 @@
+package concept.regex;
+
+/**
+ * java.util.regex has no timeout: matcher.find() runs until it is done, and with catastrophic backtracking (see
+ * concept.regex.linear.PatternAnalyzer) that can be minutes on a short input. Thread.interrupt() doesn't help either as the engine
+ * never checks the flag. The one thing the engine does all the time is read the input through CharSequence.charAt(), once or more
+ * for every step it takes, so an input that counts those reads can stop it.
+ *
+ * BudgetedCharSequence wraps the input and throws BudgetExceededException from charAt() once
+ * 1. more than maxSteps chars were read (a deterministic budget, same result on every machine), or
+ * 2. the deadline passed (checked every CHECK_INTERVAL reads so that System.nanoTime() doesn't dominate), or
+ * 3. the thread was interrupted (checked along with the deadline), which makes matching cancellable with Future.cancel(true).
+ * The exception unwinds out of the Matcher method that was running.
+ *
+ * charsInspected() is the number of charAt() calls, a machine independent measure of how much work a match took. A linear time
+ * match reads each char about once, a backtracking one reads them over and over.
+ *
+ * subSequence() and toString() are not counted, the matcher uses them to extract groups after the match.
+ * Not thread safe. start() re-arms the same instance for another input so that it can be re-used, see BudgetedPattern.
+ */
+public final class BudgetedCharSequence implements CharSequence {
+
+	public static final int CHECK_INTERVAL = 1024;
+
+	private CharSequence input;
+	private long maxSteps;
+	private long deadline;
+	private boolean hasDeadline;
+	private long startNanos;
+	private long steps;
+	private long checkpoint;	// steps at which the budget is checked next
+
+	/**
+	 * @param timeoutNanos time allowed from now on, Long.MAX_VALUE for no timeout
+	 * @param maxSteps chars that may be inspected, Long.MAX_VALUE for no limit
+	 */
+	public BudgetedCharSequence(CharSequence input, long timeoutNanos, long maxSteps) {
+		start(input, timeoutNanos, maxSteps);
+	}
+
+	/**
+	 * Wraps a new input and starts a new budget, the step count starts over at 0.
+	 */
+	public BudgetedCharSequence start(CharSequence input, long timeoutNanos, long maxSteps) {
+		if(timeoutNanos <= 0 || maxSteps <= 0)
+			throw new IllegalArgumentException("timeout and steps must be positive: " + timeoutNanos + ", " + maxSteps);
+		this.input = input;
+		this.maxSteps = maxSteps;
+		this.startNanos = System.nanoTime();
+		this.hasDeadline = timeoutNanos != Long.MAX_VALUE;
+		this.deadline = startNanos + timeoutNanos;
+		this.steps = 0;
+		this.checkpoint = Math.min(maxSteps, CHECK_INTERVAL);
+		return this;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(++steps > checkpoint)
+			checkBudget();
+		return input.charAt(index);
+	}
+
+	private void checkBudget() {
+		if(steps > maxSteps)
+			throw exceeded(BudgetExceededException.Reason.STEPS);
+		if(hasDeadline && System.nanoTime() - deadline > 0)
+			throw exceeded(BudgetExceededException.Reason.TIMEOUT);
+		if(Thread.currentThread().isInterrupted())
+			throw exceeded(BudgetExceededException.Reason.INTERRUPTED);
+		checkpoint = Math.min(maxSteps, steps + CHECK_INTERVAL);
+	}
+
+	private BudgetExceededException exceeded(BudgetExceededException.Reason reason) {
+		return new BudgetExceededException(reason, steps, elapsedNanos());
+	}
+
+	/**
+	 * Number of charAt() calls since start().
+	 */
+	public long charsInspected() {
+		return steps;
+	}
+
+	public long elapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	@Override
+	public int length() {
+		return input.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return input.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return input.toString();
+	}
+
+}
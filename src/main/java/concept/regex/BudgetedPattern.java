@@ -0,0 +1,168 @@
+package concept.regex;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Pattern whose every match runs under a budget (a timeout and/or a number of chars inspected, see BudgetedCharSequence), with
+ * the metrics needed to put a latency SLO on it: how many matches were aborted and why, the distribution of match durations (p99)
+ * and of chars inspected per match.
+ *
+ * Like MatcherPool it keeps one Matcher per thread, and one BudgetedCharSequence to wrap the input, so a budgeted match doesn't
+ * allocate anything beyond what the Matcher itself does. matches() and find() cover the usual checks, apply() runs any code
+ * against the matcher (a find() loop reading groups, replaceAll, ...) under the same budget. Thread safe.
+ *
+ * BudgetedPattern pattern = BudgetedPattern.compile("(\\w+\\s?)+$", Duration.ofMillis(50), 1_000_000);
+ * try {
+ * 		pattern.matches(userInput);
+ * }
+ * catch(BudgetExceededException e) {
+ * 		// reject the input
+ * }
+ *
+ * The budget makes a bad pattern fail fast instead of pinning a core but the time spent up to the limit is still wasted, so the
+ * right fix for a pattern that keeps hitting its budget is to rewrite it or to run it on concept.regex.linear.LinearPattern.
+ */
+public class BudgetedPattern {
+
+	private final Pattern pattern;
+	private final long timeoutNanos;
+	private final long maxSteps;
+	private final ThreadLocal<PerThread> perThread;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder[] aborts = new LongAdder[BudgetExceededException.Reason.values().length];
+	private final Histogram durations = new Histogram();
+	private final Histogram charsInspected = new Histogram();
+
+	/**
+	 * @param timeout time allowed for each match, null for no timeout
+	 * @param maxSteps chars each match may inspect, Long.MAX_VALUE for no limit
+	 */
+	public BudgetedPattern(Pattern pattern, Duration timeout, long maxSteps) {
+		if(maxSteps <= 0)
+			throw new IllegalArgumentException("maxSteps must be positive: " + maxSteps);
+		this.pattern = pattern;
+		this.timeoutNanos = timeout == null ? Long.MAX_VALUE : toNanos(timeout);
+		this.maxSteps = maxSteps;
+		this.perThread = ThreadLocal.withInitial(() -> new PerThread(pattern));
+		for(int i=0;i<aborts.length;i++)
+			aborts[i] = new LongAdder();
+	}
+
+	/**
+	 * Budgeted pattern for the given regex, compiled through the shared PatternCache.
+	 */
+	public static BudgetedPattern compile(String regex, Duration timeout, long maxSteps) {
+		return new BudgetedPattern(PatternCache.shared().compile(regex), timeout, maxSteps);
+	}
+
+	private static long toNanos(Duration timeout) {
+		if(timeout.isNegative() || timeout.isZero())
+			throw new IllegalArgumentException("timeout must be positive: " + timeout);
+		try {
+			return timeout.toNanos();
+		}
+		catch(ArithmeticException e) {
+			return Long.MAX_VALUE;	// more than 292 years, same as no timeout
+		}
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).matches() within the budget.
+	 *
+	 * @throws BudgetExceededException if the budget ran out
+	 */
+	public boolean matches(CharSequence input) {
+		return apply(input, Matcher::matches);
+	}
+
+	/**
+	 * Same as pattern.matcher(input).find() within the budget.
+	 *
+	 * @throws BudgetExceededException if the budget ran out
+	 */
+	public boolean find(CharSequence input) {
+		return apply(input, Matcher::find);
+	}
+
+	/**
+	 * Runs action on the calling thread's matcher reset to input, all within one budget. The matcher must not escape the action.
+	 *
+	 * @throws BudgetExceededException if the budget ran out
+	 */
+	public <T> T apply(CharSequence input, Function<Matcher, T> action) {
+		PerThread state = perThread.get();
+		BudgetedCharSequence budgeted = state.input.start(input, timeoutNanos, maxSteps);
+		calls.increment();
+		try {
+			return action.apply(state.matcher.reset(budgeted));
+		}
+		catch(BudgetExceededException e) {
+			aborts[e.reason().ordinal()].increment();
+			throw e;
+		}
+		finally {
+			durations.record(budgeted.elapsedNanos());
+			charsInspected.record(budgeted.charsInspected());
+			state.matcher.reset("");		// don't keep the input reachable
+			budgeted.start("", Long.MAX_VALUE, Long.MAX_VALUE);
+		}
+	}
+
+
+	// metrics
+
+	public long callCount() {
+		return calls.sum();
+	}
+
+	public long abortCount() {
+		long sum = 0;
+		for(LongAdder abort: aborts)
+			sum += abort.sum();
+		return sum;
+	}
+
+	public long abortCount(BudgetExceededException.Reason reason) {
+		return aborts[reason.ordinal()].sum();
+	}
+
+	/**
+	 * Duration of every match in nanos, aborted ones included.
+	 */
+	public Histogram durations() {
+		return durations;
+	}
+
+	/**
+	 * Chars inspected by every match, aborted ones included.
+	 */
+	public Histogram charsInspected() {
+		return charsInspected;
+	}
+
+	@Override
+	public String toString() {
+		return "BudgetedPattern[" + pattern + ", calls=" + callCount() + ", aborts=" + abortCount() + ", p99=" + durations.percentile(99)
+				+ "ns, chars p99=" + charsInspected.percentile(99) + "]";
+	}
+
+
+	private static final class PerThread {
+		final Matcher matcher;
+		final BudgetedCharSequence input = new BudgetedCharSequence("", Long.MAX_VALUE, Long.MAX_VALUE);
+
+		PerThread(Pattern pattern) {
+			matcher = pattern.matcher("");
+		}
+	}
+
+}
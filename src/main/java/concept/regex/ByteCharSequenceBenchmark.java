@@ -0,0 +1,103 @@
+package concept.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Counts the matches of a log line pattern in 16 MB of log bytes: decoded to a String first, and read in place through
+ * Latin1CharSequence (over the byte[] and over a direct ByteBuffer) and Utf8CharSequence. With ascii=false one line in ten has a
+ * non ASCII user name, which only Utf8CharSequence and the String read correctly. Run with the gc profiler (main() does) to see
+ * the 16 to 32 MB a decode allocates per op against next to nothing for the views.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ByteCharSequenceBenchmark {
+
+	private static final Pattern ERROR = Pattern.compile("ERROR \\[(\\w+)\\] .*timeout");
+
+	@Param({"true", "false"})
+	public boolean ascii;
+
+	private byte[] bytes;
+	private ByteBuffer direct;
+	private Matcher matcher;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ByteCharSequenceBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		String[] levels = {"INFO", "INFO", "INFO", "WARN", "ERROR"};
+		String[] services = {"auth", "billing", "search", "gateway"};
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;sb.length() < 16 * 1024 * 1024;i++) {
+			sb.append(levels[random.nextInt(levels.length)]).append(" [").append(services[random.nextInt(services.length)])
+					.append("] request ").append(i).append(" by ").append(!ascii && random.nextInt(10) == 0 ? "Jürgen" : "john")
+					.append(random.nextInt(10) == 0 ? " failed with timeout" : " done").append('\n');
+		}
+		bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+		matcher = ERROR.matcher("");
+	}
+
+	@Benchmark
+	public int decodedString() {
+		return count(new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public int latin1Array() {
+		return count(Latin1CharSequence.of(bytes));
+	}
+
+	@Benchmark
+	public int latin1Direct() {
+		return count(Latin1CharSequence.of(direct));
+	}
+
+	@Benchmark
+	public int utf8Array() {
+		return count(Utf8CharSequence.of(bytes));
+	}
+
+	private int count(CharSequence input) {
+		matcher.reset(input);
+		int count = 0;
+		while(matcher.find())
+			count++;
+		matcher.reset("");
+		return count;
+	}
+
+}
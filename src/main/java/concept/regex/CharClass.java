@@ -0,0 +1,197 @@
+package concept.regex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * A set of characters, like the regex character class [aeiou], that counts and finds its members without a regex and without
+ * boxing (VowelsCount.vowCount puts every char in a HashSet<Character>, vowCountRgx runs two replaceAll passes and a third to
+ * count).
+ *
+ * 1. ASCII members live in a 128 bit bitmap (two longs), testing a char is a shift and a mask: (c < 64 ? low : high) >>> c & 1,
+ * 		Java only uses the low 6 bits of the shift distance. Other members are kept sorted and binary searched.
+ * 2. For text as Latin-1 bytes (what a String holds internally for such text, or a file read as ISO_8859_1) classes of up to 3
+ * 		members are tested 8 bytes at a time (SWAR, SIMD within a register). XOR-ing the word with a member repeated in every byte
+ * 		turns the bytes equal to that member into zero bytes, and the zero bytes are found for all 8 at once with
+ * 		~(((x & 0x7F..7F) + 0x7F..7F) | x | 0x7F..7F), which sets the high bit of exactly the zero bytes. Members are ORed together
+ * 		and Long.bitCount() counts the matches. Every member costs 5 operations per word, so larger classes are faster with a 256
+ * 		entry table of 0 and 1 that is added up without a branch, one lookup per byte.
+ *
+ * jdk.incubator.vector could test 16 to 64 bytes per instruction but is an incubator module in Java 17 and would need
+ * --add-modules on every build and run of this project. VowelsCountBenchmark compares all three ways of counting vowels.
+ *
+ * Reference: https://graphics.stanford.edu/~seander/bithacks.html#ZeroInWord
+ */
+public final class CharClass {
+
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long EVERY_BYTE = 0x0101010101010101L;
+	private static final int SWAR_MAX_MEMBERS = 3;
+
+	private final long low;				// bitmap of members 0-63
+	private final long high;			// bitmap of members 64-127
+	private final char[] others;		// sorted members >= 128
+	private final byte[] latin1 = new byte[256];		// 1 for members, added up without a branch
+	private final long[] swar;			// every Latin-1 member repeated in all 8 bytes, null if there are too many
+
+	private CharClass(CharSequence members) {
+		long low = 0;
+		long high = 0;
+		BitSet others = new BitSet();
+		for(int i=0;i<members.length();i++) {
+			char c = members.charAt(i);
+			if(c < 64)
+				low |= 1L << c;
+			else if(c < 128)
+				high |= 1L << c;
+			else
+				others.set(c);
+			if(c < 256)
+				latin1[c] = 1;
+		}
+		this.low = low;
+		this.high = high;
+		this.others = new char[others.cardinality()];
+		for(int c=others.nextSetBit(0), i=0;c>=0;c=others.nextSetBit(c + 1))
+			this.others[i++] = (char) c;
+
+		int latin1Members = 0;
+		for(byte member: latin1)
+			latin1Members += member;
+		if(latin1Members <= SWAR_MAX_MEMBERS) {
+			swar = new long[latin1Members];
+			for(int c=0, i=0;c<256;c++)
+				if(latin1[c] != 0)
+					swar[i++] = c * EVERY_BYTE;
+		}
+		else {
+			swar = null;
+		}
+	}
+
+	/**
+	 * Class of the given chars, CharClass.of("aeiou") is [aeiou].
+	 */
+	public static CharClass of(CharSequence members) {
+		return new CharClass(members);
+	}
+
+	/**
+	 * Class of the chars from first to last, both included, CharClass.range('0', '9') is [0-9].
+	 */
+	public static CharClass range(char first, char last) {
+		StringBuilder members = new StringBuilder();
+		for(char c=first;c<=last && c>=first;c++)
+			members.append(c);
+		return new CharClass(members);
+	}
+
+	public boolean contains(char c) {
+		if(c < 128)
+			return ((c < 64 ? low : high) >>> c & 1) != 0;
+		return others.length > 0 && Arrays.binarySearch(others, c) >= 0;
+	}
+
+	/**
+	 * Number of chars of s in this class.
+	 */
+	public int count(CharSequence s) {
+		int count = 0;
+		if(others.length == 0) {		// the common ASCII only class, no call per char
+			for(int i=0;i<s.length();i++) {
+				char c = s.charAt(i);
+				if(c < 128 && ((c < 64 ? low : high) >>> c & 1) != 0)
+					count++;
+			}
+			return count;
+		}
+		for(int i=0;i<s.length();i++)
+			if(contains(s.charAt(i)))
+				count++;
+		return count;
+	}
+
+	/**
+	 * Number of bytes of Latin-1 text in this class.
+	 */
+	public int count(byte[] latin1Text) {
+		return count(latin1Text, 0, latin1Text.length);
+	}
+
+	/**
+	 * Number of bytes of Latin-1 text in [from, to) in this class.
+	 */
+	public int count(byte[] latin1Text, int from, int to) {
+		Objects.checkFromToIndex(from, to, latin1Text.length);
+		int count = 0;
+		int i = from;
+		if(swar != null) {
+			for(;i+8<=to;i+=8)
+				count += Long.bitCount(matches((long) LONGS.get(latin1Text, i)));
+		}
+		for(;i<to;i++)
+			count += latin1[latin1Text[i] & 0xFF];
+		return count;
+	}
+
+	/**
+	 * Index of the first char of s in this class, -1 if there is none.
+	 */
+	public int indexOfAny(CharSequence s) {
+		return indexOfAny(s, 0);
+	}
+
+	/**
+	 * Index of the first char of s at or after fromIndex in this class, -1 if there is none.
+	 */
+	public int indexOfAny(CharSequence s, int fromIndex) {
+		for(int i=Math.max(fromIndex, 0);i<s.length();i++)
+			if(contains(s.charAt(i)))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Index of the first byte of Latin-1 text in [from, to) in this class, -1 if there is none.
+	 */
+	public int indexOfAny(byte[] latin1Text, int from, int to) {
+		Objects.checkFromToIndex(from, to, latin1Text.length);
+		int i = from;
+		if(swar != null) {
+			for(;i+8<=to;i+=8) {
+				long matches = matches((long) LONGS.get(latin1Text, i));
+				if(matches != 0)
+					return i + (Long.numberOfTrailingZeros(matches) >>> 3);	// little endian, the lowest byte comes first
+			}
+		}
+		for(;i<to;i++)
+			if(latin1[latin1Text[i] & 0xFF] != 0)
+				return i;
+		return -1;
+	}
+
+	// high bit set in every byte of word that is a member
+	private long matches(long word) {
+		long matches = 0;
+		for(long member: swar) {
+			long x = word ^ member;
+			matches |= ~(((x & LOW_7_BITS) + LOW_7_BITS) | x | LOW_7_BITS);
+		}
+		return matches;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for(char c=0;c<128;c++)
+			if(contains(c))
+				sb.append(c);
+		return sb.append(others).append(']').toString();
+	}
+
+}
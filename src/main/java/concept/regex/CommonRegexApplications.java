@@ -1,11 +1,14 @@
 package concept.regex;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class CommonRegexApplications {
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		
 		// validate
 		/*
@@ -15,6 +18,9 @@ public class CommonRegexApplications {
 		// find and replace
 		csvToTsv();
 		
+		// find and replace on input that doesn't fit in memory
+		csvToTsvStreaming();
+		
 		// find and modify
 		capitalizeRomans();
 
@@ -62,6 +68,19 @@ public class CommonRegexApplications {
 		System.out.println("using String: " + tsv + "\n");
 	}
 	
+	/**
+	 * Given csv text too large to load as a String (think a multi GB file) convert to tsv.
+	 */
+	private static void csvToTsvStreaming() throws IOException {
+		String csv = "Luka,Marcelo,Sergio,Cristiano,Karim,Toni\nToni,Karim,Cristiano,Sergio,Marcelo,Luka";
+		
+		// for a file: StreamingRegex.reader(fileChannel.map(READ_ONLY, 0, fileChannel.size()), UTF_8) and a BufferedWriter over it
+		StringWriter tsv = new StringWriter();
+		StreamingRegex streaming = new StreamingRegex(Pattern.compile(","), 1, 16);	// a match is one char, read 16 chars at a time
+		long count = streaming.replaceAll(new StringReader(csv), tsv, "\t");	// only a 16 + 2 char window is ever in memory
+		System.out.println("using StreamingRegex (" + count + " replaced):\n" + tsv + "\n");
+	}
+	
 	/**
 	 * Given a text capitalize all the roman numerals that it contains.
 	 */
@@ -82,6 +82,12 @@ public class ExtremeRegexFormulae {
 		// Example for replacing Nth match and replacing everything except Nth match
 		nthMatched();
 		
+		// Example for pulling all the fields out at once into columns
+		columnarExtraction();
+		
+		// Quantifiers after emojis and other characters outside the BMP
+		supplementaryCharacters();
+		
 	}
 
 	
@@ -266,6 +272,12 @@ public class ExtremeRegexFormulae {
 		// Since we are using the replaceAll method so no need to create matcher object and can be used with string object itself
 		String xml = jsonStr.replaceAll(toXML, "<varName>$1</varName><value>$2</value>");
 		System.out.println("\nxml: " + xml);
+		// replaceAll parses the template again on every match, a Replacement parses it once and can be kept for every record
+		Replacement toXmlTemplate = Replacement.compile("<varName>$1</varName><value>$2</value>", Pattern.compile(toXML));
+		System.out.println("\nxml (Replacement): " + toXmlTemplate.replaceAll(jsonStr));
+		// the regex only works for flat objects, JsonToXml parses the JSON and also handles nested objects and arrays, streaming from a
+		// Reader to a Writer for documents too large for a String
+		System.out.println("\nxml (JsonToXml): " + JsonToXml.plain().convert("{id:12,name:\"Marcelo\",clubs:[\"Fluminense\",\"Real Madrid\"]}"));
 	}
 	
 	/**
@@ -387,4 +399,40 @@ public class ExtremeRegexFormulae {
 		matcher.appendTail(sb);						// and finally after the last group match the remaining main string is appended here
 		System.out.println("Except Nth:\t\t" + sb);
 	}
+	
+	/**
+	 * The examples above take the string apart one replaceAll() at a time. To work on the fields rather than on the string, extract
+	 * them all in one pass: each named group becomes a column and each match a row.
+	 */
+	private static void columnarExtraction() {
+		String sampleStr = "Marcelo-12 Modric-10 Ronaldo-07 Ramos-04 Kroos-08 Casemiro-14 Benz-09 Dani-02 Zidane-00 Varane-05 Madrid";
+		
+		RecordExtractor players = RecordExtractor.compile("(?<name>[A-Z][a-z]+)-(?<number>\\d+)")
+				.stringColumn("name")
+				.intColumn("number");
+		players.extract(sampleStr, batch -> {		// called once per batch of rows, here once
+			RecordExtractor.IntColumn numbers = batch.ints("number");
+			RecordExtractor.StringColumn names = batch.strings("name");
+			int highest = 0;
+			for(int row=1;row<batch.size();row++)
+				if(numbers.getInt(row) > numbers.getInt(highest))
+					highest = row;
+			System.out.println("\nRows: " + batch.size() + ", sum of numbers: " + numbers.sum() + ", highest: " + names.get(highest)
+					+ "-" + numbers.getInt(highest));	// Rows: 10, sum of numbers: 71, highest: Casemiro-14
+		});
+	}
+	
+	/**
+	 * A character outside the Basic Multilingual Plane, like an emoji, is two chars in a Java String (a surrogate pair), yet a
+	 * quantifier after it repeats the whole character, not just its second char. A search that skips ahead to a literal every match
+	 * must contain has to see it the same way: "x" is required by "x😀?", "x\uD83D" is not.
+	 */
+	private static void supplementaryCharacters() {
+		System.out.println("\n----Quantified emoji----");
+		for(String[] regexAndInput: new String[][] {{"x😀?", "x"}, {"😀*y", "y"}}) {
+			Pattern pattern = Pattern.compile(regexAndInput[0]);
+			System.out.println(regexAndInput[0] + " in \"" + regexAndInput[1] + "\": " + pattern.matcher(regexAndInput[1]).find()
+					+ ", prefiltered: " + PrefilteredPattern.compile(pattern).find(regexAndInput[1]));	// true, prefiltered: true
+		}
+	}
 }
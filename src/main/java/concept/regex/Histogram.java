@@ -0,0 +1,109 @@
+package concept.regex;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of non negative long values (durations in nanos, chars per match, ...) for reporting percentiles like p99.
+ *
+ * Keeping every value to sort them later is too expensive on a hot path, so values are counted in buckets the way HdrHistogram
+ * does it: every power of two range [2^k, 2^(k+1)) is split into 32 equal sub buckets. A value is then known within 1/32 (~3%) of
+ * its magnitude whether it is 100ns or 10s, with a fixed 15KB of counters and an O(1) record() that touches one AtomicLongArray
+ * slot. percentile() reports the upper end of the bucket so it never underestimates.
+ *
+ * Reference: http://hdrhistogram.org/
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @throws IllegalArgumentException if value is negative
+	 */
+	public void record(long value) {
+		if(value < 0)
+			throw new IllegalArgumentException("negative value: " + value);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	// values below 32 get a bucket each, above that 32 buckets per power of two
+	private static int index(long value) {
+		if(value < SUB_COUNT)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	// largest value that falls into the bucket
+	private static long highestValue(int index) {
+		if(index < SUB_COUNT)
+			return index;
+		int exponent = index / SUB_COUNT + SUB_BITS - 1;
+		long sub = index % SUB_COUNT;
+		long next = (SUB_COUNT + sub + 1) << (exponent - SUB_BITS);
+		return next < 0 ? Long.MAX_VALUE : next - 1;	// the last bucket ends at Long.MAX_VALUE
+	}
+
+	public long count() {
+		return count.sum();
+	}
+
+	public long max() {
+		return max.get();
+	}
+
+	public double mean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Value at the given percentile (0 to 100), e.g. percentile(99) for p99. 0 if nothing was recorded.
+	 * Approximate while other threads are recording.
+	 */
+	public long percentile(double percentile) {
+		if(percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("percentile must be within 0 and 100: " + percentile);
+		long n = count.sum();
+		if(n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for(int i=0;i<BUCKETS;i++) {
+			seen += counts.get(i);
+			if(seen >= rank)
+				return Math.min(highestValue(i), max());
+		}
+		return max();
+	}
+
+	/**
+	 * Not atomic with respect to concurrent record() calls.
+	 */
+	public void reset() {
+		for(int i=0;i<BUCKETS;i++)
+			counts.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count() + ", mean=" + Math.round(mean()) + ", p50=" + percentile(50) + ", p99=" + percentile(99)
+				+ ", max=" + max();
+	}
+
+}
@@ -0,0 +1,415 @@
+package concept.regex;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The matches of a pattern in a document that is edited, kept up to date after every edit the way regex101 (see
+ * RegexEvalSpeedCompare) shows them while typing. Running the find() loop over the whole document on every keystroke costs time
+ * proportional to the document, edit() re-runs it only over the part of the document the edit can change.
+ *
+ * What part that is depends on how far the pattern looks, which for most patterns (\w+, .*, look-arounds) can't be bounded
+ * statically. So every find() of the loop is run on a text that records the lowest and highest index the matcher reads, including
+ * the reads of failed attempts and look-arounds, and Matcher.hitEnd() tells when it looked at the end of the text. For an edit
+ * replacing the chars between offset and offset + deleted:
+ * 1. The finds that read nothing at or beyond offset return the same match in the new text and are kept.
+ * 2. The loop resumes where the last kept match ended, on the new text.
+ * 3. It stops as soon as it finds a match at the (shifted) position of an old match and the finds after that one read nothing
+ * 		before the end of the edit: from there on the old loop sees the same text from the same position, so the old matches after
+ * 		that one are the new ones.
+ * The window is exactly as wide as the pattern reaches around the edit, the cost of an edit is the matching over that window and
+ * doesn't grow with the document.
+ *
+ * Both the text and the matches are gap buffers: the text has a gap at the last edit, the matches after the last edit are stored
+ * relative to the end of the text so that an edit before them doesn't move them. Edits close to each other (typing) move little
+ * of either, an edit far from the last one copies the text and matches in between once. In IncrementalMatcherBenchmark a keystroke
+ * takes about 10us in a 64 KB, 1 MB and 8 MB document alike, re-running the whole loop takes 4ms to 550ms.
+ *
+ * A pattern with \G restarts from the beginning of the text after every edit, as the matcher position \G refers to is reset
+ * when the loop resumes. A pattern with ^, \A, \b or \B in a lookbehind re-runs the whole loop after every edit: the lookbehind
+ * tries the positions up to its maximum length back but no further than the start of the text, and these test whether a position
+ * is the start of the text without reading a char, so which of its finds an edit before them changes isn't recorded anywhere.
+ * Not thread safe.
+ *
+ * IncrementalMatcher emails = new IncrementalMatcher(Pattern.compile("\\w+@\\w+\\.com"), document);
+ * emails.edit(120, 0, "x");		// a char typed at offset 120
+ * emails.matches();				// the matches of the edited document
+ */
+public class IncrementalMatcher {
+
+	private static final int NONE = Integer.MIN_VALUE;		// offset of a group that didn't match
+
+	private final Pattern pattern;
+	private final boolean restartOnEdit;
+	private final boolean rescanOnEdit;
+	private final GapText text;
+	private final Matcher matcher;
+	private final ArrayList<Find> before = new ArrayList<Find>();	// finds in order, offsets in the text
+	private final ArrayList<Find> after = new ArrayList<Find>();	// finds in reverse order, offsets relative to the end of the text
+	private int rescanned;
+
+	public IncrementalMatcher(Pattern pattern, CharSequence text) {
+		this.pattern = pattern;
+		this.restartOnEdit = pattern.pattern().contains("\\G");
+		this.rescanOnEdit = anchoredLookbehind(pattern.pattern());
+		this.text = new GapText(text);
+		this.matcher = pattern.matcher(this.text);
+		rescan(0);
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * The current text. Changes with every edit.
+	 */
+	public CharSequence text() {
+		return text;
+	}
+
+	/**
+	 * Replaces the deleted chars at offset with inserted and updates the matches.
+	 *
+	 * @return matches(), the matches of the new text
+	 */
+	public List<MatchResult> edit(int offset, int deleted, CharSequence inserted) {
+		int length = text.length();
+		Objects.checkFromIndexSize(offset, deleted, length);
+		if(rescanOnEdit) {
+			before.clear();
+			after.clear();
+			text.replace(offset, deleted, inserted);
+			rescan(0);
+			return matches();
+		}
+		if(restartOnEdit) {
+			while(!before.isEmpty())
+				toAfter(length);
+		}
+		else {
+			while(!before.isEmpty() && last(before).reach >= offset)
+				toAfter(length);
+			while(!after.isEmpty() && Math.max(last(after).hi + length, before.isEmpty() ? NONE : last(before).reach) < offset)
+				toBefore(length);
+		}
+		text.replace(offset, deleted, inserted);
+		if(!before.isEmpty() && last(before).offsets == null) {
+			rescanned = 0;		// nothing read where the text changed
+			return matches();
+		}
+		Find resume = before.isEmpty() ? null : last(before);
+		rescan(resume == null ? 0 : resume.next(), offset + inserted.length());
+		return matches();
+	}
+
+	/**
+	 * Inserts text at offset, same as edit(offset, 0, inserted).
+	 */
+	public List<MatchResult> insert(int offset, CharSequence inserted) {
+		return edit(offset, 0, inserted);
+	}
+
+	/**
+	 * Deletes length chars at offset, same as edit(offset, length, "").
+	 */
+	public List<MatchResult> delete(int offset, int length) {
+		return edit(offset, length, "");
+	}
+
+	/**
+	 * The matches of the current text, the same as pattern.matcher(text()).results(), as a view that is valid until the next edit.
+	 * Groups are read from the text.
+	 */
+	public List<MatchResult> matches() {
+		return new Matches();
+	}
+
+	/**
+	 * Chars between where the last edit resumed the find() loop and where it stopped, the size of the window it re-matched.
+	 */
+	public int rescannedChars() {
+		return rescanned;
+	}
+
+
+	/**
+	 * Whether a lookbehind of regex contains ^, \A, \b or \B. Char classes and \Q..\E are skipped, a ^ in a comment counts too.
+	 */
+	private static boolean anchoredLookbehind(String regex) {
+		ArrayList<Boolean> groups = new ArrayList<Boolean>();		// per open group, whether it is a lookbehind
+		int lookbehinds = 0;
+		int i = 0;
+		while(i < regex.length()) {
+			char c = regex.charAt(i++);
+			if(c == '\\' && i < regex.length()) {
+				char escaped = regex.charAt(i++);
+				if((escaped == 'A' || escaped == 'b' || escaped == 'B') && lookbehinds > 0)
+					return true;
+				if(escaped == 'Q') {
+					int end = regex.indexOf("\\E", i);
+					i = end < 0 ? regex.length() : end + 2;
+				}
+			}
+			else if(c == '[') {
+				i = classEnd(regex, i);
+			}
+			else if(c == '(') {
+				boolean lookbehind = regex.startsWith("?<=", i) || regex.startsWith("?<!", i);
+				groups.add(lookbehind);
+				if(lookbehind)
+					lookbehinds++;
+			}
+			else if(c == ')' && !groups.isEmpty()) {
+				if(groups.remove(groups.size() - 1))
+					lookbehinds--;
+			}
+			else if(c == '^' && lookbehinds > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Index after the ] that closes the char class whose content starts at i, with nested classes like [a-z&&[^x]].
+	 */
+	private static int classEnd(String regex, int i) {
+		if(i < regex.length() && regex.charAt(i) == '^')
+			i++;
+		if(i < regex.length() && regex.charAt(i) == ']')
+			i++;		// a ] right after [ or [^ is a member
+		while(i < regex.length()) {
+			char c = regex.charAt(i++);
+			if(c == '\\')
+				i++;
+			else if(c == '[')
+				i = classEnd(regex, i);
+			else if(c == ']')
+				return i;
+		}
+		return i;
+	}
+
+	/**
+	 * Runs the find() loop from the given position to the end of the text.
+	 */
+	private void rescan(int from) {
+		rescan(from, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Runs the find() loop from the given position until it is back in step with the old matches, which are read by the loop
+	 * from after. editEnd is the end of the inserted text, old finds that read nothing before it are still valid.
+	 */
+	private void rescan(int from, int editEnd) {
+		int length = text.length();
+		int start = from;
+		boolean first = true;
+		Find find;
+		do {
+			find = find(from, first);
+			first = false;
+			before.add(find);
+			find.reach = before.size() == 1 ? find.hi : Math.max(find.hi, before.get(before.size() - 2).reach);
+			if(find.offsets == null) {
+				after.clear();
+				break;
+			}
+			from = find.next();
+			while(!after.isEmpty() && last(after).offsets != null && last(after).offsets[0] + length < find.offsets[0])
+				after.remove(after.size() - 1);		// old matches the new loop went past
+			if(!after.isEmpty() && last(after).offsets != null && last(after).offsets[0] + length == find.offsets[0]
+					&& last(after).offsets[1] + length == find.offsets[1]) {
+				after.remove(after.size() - 1);
+				if(last(after).reach + length >= editEnd)
+					break;		// in step with the old loop, the rest of after is valid
+			}
+		} while(true);
+		rescanned = Math.max(0, (find.offsets == null ? length : find.offsets[1]) - start);
+	}
+
+	/**
+	 * One find() of the loop, from the given position, recording what it read.
+	 */
+	private Find find(int from, boolean first) {
+		int length = text.length();
+		if(from > length)
+			return new Find(null, from, from);
+		text.track();
+		boolean found = first ? matcher.find(from) : matcher.find();
+		int lo = Math.min(text.minRead, from);
+		int hi = matcher.hitEnd() ? length : text.maxRead;
+		if(!found)
+			return new Find(null, lo, hi);
+		int[] offsets = new int[2 * (matcher.groupCount() + 1)];
+		for(int g=0;g<=matcher.groupCount();g++) {
+			int start = matcher.start(g);
+			offsets[2 * g] = start < 0 ? NONE : start;
+			offsets[2 * g + 1] = start < 0 ? NONE : matcher.end(g);
+		}
+		return new Find(offsets, lo, Math.max(hi, matcher.end() - 1));
+	}
+
+	private void toAfter(int length) {
+		Find find = before.remove(before.size() - 1);
+		find.shift(-length);
+		find.reach = after.isEmpty() ? find.lo : Math.min(find.lo, last(after).reach);
+		after.add(find);
+	}
+
+	private void toBefore(int length) {
+		Find find = after.remove(after.size() - 1);
+		find.shift(length);
+		find.reach = before.isEmpty() ? find.hi : Math.max(find.hi, last(before).reach);
+		before.add(find);
+	}
+
+	private static Find last(List<Find> finds) {
+		return finds.get(finds.size() - 1);
+	}
+
+
+	/**
+	 * One call of find(), the match it returned (null offsets for the last call, which returned false) and the range it read.
+	 */
+	private static final class Find {
+		final int[] offsets;
+		int lo;			// lowest index read, at most the position the search started at
+		int hi;			// highest index read, the length of the text if it hit the end
+		int reach;		// in before: the highest hi of this and the earlier finds, in after: the lowest lo of this and the later ones
+
+		Find(int[] offsets, int lo, int hi) {
+			this.offsets = offsets;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		/**
+		 * Where the next find() starts, one char further after an empty match like in Matcher.
+		 */
+		int next() {
+			return offsets[1] == offsets[0] ? offsets[1] + 1 : offsets[1];
+		}
+
+		void shift(int delta) {
+			for(int i=0;offsets != null && i<offsets.length;i++)
+				if(offsets[i] != NONE)
+					offsets[i] += delta;
+			lo += delta;
+			hi += delta;
+		}
+	}
+
+	/**
+	 * matches() as a list, offsets of after are turned back into offsets in the text on access.
+	 */
+	private final class Matches extends AbstractList<MatchResult> implements RandomAccess {
+		private final int length = text.length();
+		private final int size = before.size() + after.size() - 1;		// without the last find, which didn't match
+
+		@Override
+		public MatchResult get(int index) {
+			Objects.checkIndex(index, size);
+			Find find = index < before.size() ? before.get(index) : after.get(after.size() - 1 - (index - before.size()));
+			int delta = index < before.size() ? 0 : length;
+			int[] offsets = new int[find.offsets.length];
+			for(int i=0;i<offsets.length;i++)
+				offsets[i] = find.offsets[i] == NONE ? -1 : find.offsets[i] + delta;
+			return new OffsetMatch(text, offsets);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * The text in a char array with a gap at the last edit, so that edits close to each other copy little. Records the lowest and
+	 * highest index read by charAt() since the last track().
+	 */
+	private static final class GapText implements CharSequence {
+		private char[] chars;
+		private int gapStart;
+		private int gapEnd;
+		int minRead;
+		int maxRead;
+
+		GapText(CharSequence text) {
+			chars = new char[text.length() + 64];
+			for(int i=0;i<text.length();i++)
+				chars[i] = text.charAt(i);
+			gapStart = text.length();
+			gapEnd = chars.length;
+		}
+
+		void track() {
+			minRead = Integer.MAX_VALUE;
+			maxRead = NONE;
+		}
+
+		void replace(int offset, int deleted, CharSequence inserted) {
+			moveGap(offset);
+			gapEnd += deleted;
+			if(gapEnd - gapStart < inserted.length()) {
+				int tail = chars.length - gapEnd;
+				char[] grown = new char[Math.max(2 * chars.length, length() + inserted.length() + 64)];
+				System.arraycopy(chars, 0, grown, 0, gapStart);
+				System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+				gapEnd = grown.length - tail;
+				chars = grown;
+			}
+			for(int i=0;i<inserted.length();i++)
+				chars[gapStart++] = inserted.charAt(i);
+		}
+
+		private void moveGap(int offset) {
+			if(offset < gapStart)
+				System.arraycopy(chars, offset, chars, gapEnd - (gapStart - offset), gapStart - offset);
+			else
+				System.arraycopy(chars, gapEnd, chars, gapStart, offset - gapStart);
+			gapEnd += offset - gapStart;
+			gapStart = offset;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if(index < minRead)
+				minRead = index;
+			if(index > maxRead)
+				maxRead = index;
+			return chars[index < gapStart ? index : index + gapEnd - gapStart];
+		}
+
+		@Override
+		public int length() {
+			return chars.length - (gapEnd - gapStart);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			Objects.checkFromToIndex(start, end, length());
+			StringBuilder sb = new StringBuilder(end - start);
+			if(start < gapStart)
+				sb.append(chars, start, Math.min(end, gapStart) - start);
+			if(end > gapStart) {
+				int from = Math.max(start, gapStart);
+				sb.append(chars, from + gapEnd - gapStart, end - from);
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length()).toString();
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package concept.regex;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * One keystroke in a document of 64 KB, 1 MB and 8 MB: a char typed around the middle and deleted again, with the matches of an
+ * email pattern updated after each of the two edits. The cursor moves by up to 64 chars between keystrokes. fullRescan runs the find() loop over the whole document like a naive live
+ * evaluation does, its time grows with the document. incremental should stay the same for every size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementalMatcherBenchmark {
+
+	private static final Pattern EMAIL = Pattern.compile("\\w+@\\w+\\.com");
+
+	@Param({"65536", "1048576", "8388608"})
+	public int size;
+
+	private StringBuilder document;
+	private Matcher matcher;
+	private IncrementalMatcher incremental;
+	private int[] offsets;
+	private int next;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(IncrementalMatcherBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		String[] words = {"lorem", "ipsum", "dolor", "sit", "amet", "alice@example.com", "consectetur", "adipiscing", "elit"};
+		Random random = new Random(42);
+		document = new StringBuilder();
+		while(document.length() < size)
+			document.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+		matcher = EMAIL.matcher(document);
+		incremental = new IncrementalMatcher(EMAIL, document);
+		offsets = new int[1024];
+		offsets[0] = size / 2;
+		for(int i=1;i<offsets.length;i++)
+			offsets[i] = offsets[i - 1] + random.nextInt(129) - 64;		// the cursor moves a little between keystrokes
+	}
+
+	@Benchmark
+	public int fullRescan() {
+		int offset = offsets[next++ & (offsets.length - 1)];
+		document.insert(offset, 'x');
+		int count = count();
+		document.deleteCharAt(offset);
+		return count + count();
+	}
+
+	@Benchmark
+	public int incremental() {
+		int offset = offsets[next++ & (offsets.length - 1)];
+		List<MatchResult> typed = incremental.insert(offset, "x");
+		return typed.size() + incremental.delete(offset, 1).size();
+	}
+
+	private int count() {
+		matcher.reset();
+		int count = 0;
+		while(matcher.find())
+			count++;
+		return count;
+	}
+
+}
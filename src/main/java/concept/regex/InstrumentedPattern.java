@@ -0,0 +1,179 @@
+package concept.regex;
+
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Pattern that records where the regex time goes into RegexMetrics: compiles, calls and hits of every call, duration and chars
+ * read of a sample of the calls. Used in place of Pattern.compile(regex).matcher(input).find() it answers which of the patterns of
+ * an application are the expensive ones (RegexMetrics.dump(), or the JFR events).
+ *
+ * Every call increments two LongAdders. Every sampleInterval-th call of a thread (256 by default) is also timed with
+ * System.nanoTime() and runs on the input wrapped in a CharSequence that counts charAt() calls, the same measure of work as
+ * BudgetedCharSequence.charsInspected(): a linear match reads each char about once, a backtracking one reads them over and over.
+ * A sampled call is several times slower than a plain one. In RegexBenchmark.instrumentedPattern vs matcherPool, sampling every
+ * 16th call cost about 25% of the throughput, every 256th call was within the noise of the measurement.
+ *
+ * Like MatcherPool it keeps one Matcher per thread, so a call doesn't allocate anything beyond what the Matcher itself does.
+ * Thread safe.
+ *
+ * InstrumentedPattern email = InstrumentedPattern.compile("^[a-zA-Z][a-zA-Z0-9_]*@[a-zA-Z0-9]+\\.[a-zA-Z]+$");
+ * email.matches(input);
+ * System.out.println(RegexMetrics.shared().dump());
+ */
+public class InstrumentedPattern {
+
+	public static final int DEFAULT_SAMPLE_INTERVAL = 256;
+
+	private final Pattern pattern;
+	private final RegexMetrics.Stats stats;
+	private final int sampleMask;
+	private final ThreadLocal<PerThread> perThread;
+
+	/**
+	 * @param sampleInterval every how many calls of a thread one is timed, a power of two, 1 to time every call
+	 */
+	public InstrumentedPattern(Pattern pattern, RegexMetrics metrics, int sampleInterval) {
+		if(sampleInterval < 1 || Integer.bitCount(sampleInterval) != 1)
+			throw new IllegalArgumentException("sampleInterval must be a power of two: " + sampleInterval);
+		this.pattern = pattern;
+		this.stats = metrics.stats(pattern.pattern(), pattern.flags());
+		this.sampleMask = sampleInterval - 1;
+		this.perThread = ThreadLocal.withInitial(() -> new PerThread(pattern));
+		stats.compiled();
+	}
+
+	/**
+	 * Instrumented pattern for the given regex, compiled through the shared PatternCache and recorded in RegexMetrics.shared().
+	 * Every call counts as a compile in the metrics, keep the result instead of calling this per input.
+	 */
+	public static InstrumentedPattern compile(String regex) {
+		return compile(regex, 0);
+	}
+
+	public static InstrumentedPattern compile(String regex, int flags) {
+		return new InstrumentedPattern(PatternCache.shared().compile(regex, flags), RegexMetrics.shared(), DEFAULT_SAMPLE_INTERVAL);
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).matches().
+	 */
+	public boolean matches(CharSequence input) {
+		boolean hit = run(input, Matcher::matches, "matches");
+		stats.tested(hit);
+		return hit;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).find().
+	 */
+	public boolean find(CharSequence input) {
+		boolean hit = run(input, Matcher::find, "find");
+		stats.tested(hit);
+		return hit;
+	}
+
+	/**
+	 * Runs action on the calling thread's matcher reset to input and records it as one call. The matcher must not escape the action.
+	 */
+	public <T> T apply(CharSequence input, Function<Matcher, T> action) {
+		return run(input, action, "apply");
+	}
+
+	private <T> T run(CharSequence input, Function<Matcher, T> action, String operation) {
+		PerThread state = perThread.get();
+		stats.called();
+		if((++state.calls & sampleMask) != 0) {
+			try {
+				return action.apply(state.matcher.reset(input));
+			}
+			finally {
+				state.matcher.reset("");		// don't keep the input reachable
+			}
+		}
+		CountingCharSequence counted = state.input.wrap(input);
+		RegexMetrics.MatchEvent event = new RegexMetrics.MatchEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			return action.apply(state.matcher.reset(counted));
+		}
+		finally {
+			long nanos = System.nanoTime() - start;
+			event.end();
+			stats.sampled(nanos, counted.reads);
+			if(event.shouldCommit()) {
+				event.regex = pattern.pattern();
+				event.operation = operation;
+				event.chars = counted.reads;
+				event.commit();
+			}
+			state.matcher.reset("");
+			counted.wrap("");
+		}
+	}
+
+	/**
+	 * Live counters of this pattern, shared with every InstrumentedPattern of the same regex and flags.
+	 */
+	public RegexMetrics.Stats stats() {
+		return stats;
+	}
+
+	@Override
+	public String toString() {
+		return "InstrumentedPattern[" + stats.snapshot() + "]";
+	}
+
+
+	private static final class PerThread {
+		final Matcher matcher;
+		final CountingCharSequence input = new CountingCharSequence();
+		long calls;
+
+		PerThread(Pattern pattern) {
+			matcher = pattern.matcher("");
+		}
+	}
+
+	/**
+	 * Counts charAt() calls. subSequence() and toString(), which the matcher uses for groups, are not counted.
+	 */
+	private static final class CountingCharSequence implements CharSequence {
+		private CharSequence input = "";
+		long reads;
+
+		CountingCharSequence wrap(CharSequence input) {
+			this.input = input;
+			this.reads = 0;
+			return this;
+		}
+
+		@Override
+		public char charAt(int index) {
+			reads++;
+			return input.charAt(index);
+		}
+
+		@Override
+		public int length() {
+			return input.length();
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return input.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return input.toString();
+		}
+	}
+
+}
@@ -0,0 +1,454 @@
+package concept.regex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ExtremeRegexFormulae.capturedReferences turns {id:12,name:"Marcelo"} into <varName>id</varName><value>12</value>... with one
+ * replaceAll(). That only works for flat objects (a nested object or an array comes out garbled), needs the whole document in memory
+ * as a String and builds the whole result as another one.
+ *
+ * JsonToXml reads the JSON from a Reader char by char through its own buffer and writes the XML to a Writer as it goes, so memory is
+ * two 8K char buffers plus one byte per level of nesting, whatever the size of the document. There is no recursion, nesting is kept
+ * on an explicit stack, so deeply nested documents don't overflow the thread's stack either. The output keeps the format of
+ * capturedReferences and extends it to nested values:
+ * 1. an object member	: <varName>key</varName><value>value</value>, the key may be unquoted as in capturedReferences
+ * 2. an array element	: <item>value</item>
+ * 3. a string			: its text, JSON escapes decoded and &, < and > escaped for XML. Unlike the regex there are no quotes around it.
+ * 4. numbers, true, false and null are written as they are
+ * The document may be a sequence of top level values (newline delimited JSON), they are written one after another, all inside the
+ * root element if one is given. Chars that XML 1.0 doesn't allow (control chars other than tab, newline and carriage return, which
+ * a JSON string can hold escaped) are written as U+FFFD.
+ *
+ * Malformed JSON throws an IOException telling the position where it was found, whatever was converted before has been written.
+ *
+ * try(Reader json = Files.newBufferedReader(in); Writer xml = Files.newBufferedWriter(out)) {
+ * 		JsonToXml.withRoot("players").convert(json, xml);
+ * }
+ *
+ * Instances are immutable and thread safe, every convert() call has its own buffers.
+ */
+public final class JsonToXml {
+
+	private static final JsonToXml PLAIN = new JsonToXml(null);
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_LITERAL_LENGTH = 1024;
+	private static final byte OBJECT = 1;
+	private static final byte ARRAY = 2;
+
+	private final String root;
+
+	private JsonToXml(String root) {
+		this.root = root;
+	}
+
+	/**
+	 * Converter that writes the values as they are, without a root element.
+	 */
+	public static JsonToXml plain() {
+		return PLAIN;
+	}
+
+	/**
+	 * Converter that writes everything inside <root>...</root>.
+	 *
+	 * @throws IllegalArgumentException if root is not a simple XML name
+	 */
+	public static JsonToXml withRoot(String root) {
+		if(!root.matches("[A-Za-z_][A-Za-z0-9_.-]*"))
+			throw new IllegalArgumentException("not an XML element name: " + root);
+		return new JsonToXml(root);
+	}
+
+	/**
+	 * Converts the JSON read from json and writes the XML to xml. Neither is closed, xml is flushed.
+	 */
+	public void convert(Reader json, Writer xml) throws IOException {
+		new Conversion(json, xml, BUFFER_SIZE).run();
+		xml.flush();
+	}
+
+	/**
+	 * Converts UTF-8 JSON to UTF-8 XML. Neither stream is closed.
+	 */
+	public void convert(InputStream json, OutputStream xml) throws IOException {
+		convert(new InputStreamReader(json, StandardCharsets.UTF_8), new OutputStreamWriter(xml, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Converts a JSON string, for documents that are in memory anyway.
+	 *
+	 * @throws IllegalArgumentException if json is malformed
+	 */
+	public String convert(CharSequence json) {
+		StringWriter xml = new StringWriter(json.length() * 2);
+		try {		// small documents get small buffers, allocating 32K per call would cost more than converting
+			new Conversion(new StringReader(json.toString()), xml, Math.min(BUFFER_SIZE, json.length() + 16)).run();
+		}
+		catch(IOException e) {		// StringReader and StringWriter don't throw, so it is malformed JSON
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		return xml.toString();
+	}
+
+
+	/**
+	 * State of one convert() call.
+	 */
+	private final class Conversion {
+		private final Reader in;
+		private final Writer out;
+		private final char[] input;
+		private final char[] output;
+		private final StringBuilder literal = new StringBuilder();
+		private int position;		// next char in input
+		private int limit;			// end of the chars read into input
+		private long consumed;		// chars of input before input[0], for error messages
+		private int written;		// chars in output
+		private byte[] stack = new byte[32];
+		private int depth;
+
+		Conversion(Reader in, Writer out, int bufferSize) {
+			this.in = in;
+			this.out = out;
+			this.input = new char[bufferSize];
+			this.output = new char[bufferSize];
+		}
+
+		void run() throws IOException {
+			if(root != null)
+				write('<').write(root).write('>');
+			while(skipWhitespace() >= 0) {		// one top level value per round
+				value();
+				while(depth > 0) {				// after a value, close containers until one has more values
+					int c = skipWhitespace();
+					next();
+					if(stack[depth - 1] == OBJECT) {
+						write("</value>");
+						if(c == ',') {
+							member();
+							value();
+						}
+						else if(c == '}') {
+							depth--;
+						}
+						else {
+							throw malformed(c, "',' or '}'");
+						}
+					}
+					else {
+						write("</item>");
+						if(c == ',') {
+							write("<item>");
+							value();
+						}
+						else if(c == ']') {
+							depth--;
+						}
+						else {
+							throw malformed(c, "',' or ']'");
+						}
+					}
+				}
+			}
+			if(root != null)
+				write("</").write(root).write('>');
+			out.write(output, 0, written);
+			written = 0;
+		}
+
+		/**
+		 * Writes the value starting at the next non whitespace char. An object or an array is only opened, with its first member or
+		 * element started, run() writes the rest as the stack unwinds.
+		 */
+		private void value() throws IOException {
+			while(true) {
+				int c = skipWhitespace();
+				next();
+				if(c == '{') {
+					c = skipWhitespace();
+					if(c == '}') {
+						next();
+						return;
+					}
+					push(OBJECT);
+					member();
+				}
+				else if(c == '[') {
+					c = skipWhitespace();
+					if(c == ']') {
+						next();
+						return;
+					}
+					push(ARRAY);
+					write("<item>");
+				}
+				else if(c == '"') {
+					string();
+					return;
+				}
+				else if(c == '-' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z')) {
+					literal((char) c);
+					return;
+				}
+				else {
+					throw malformed(c, "a value");
+				}
+			}
+		}
+
+		// writes key and the opening of its value, up to and including the ':'
+		private void member() throws IOException {
+			int c = skipWhitespace();
+			next();
+			write("<varName>");
+			if(c == '"') {
+				string();
+			}
+			else if(isKeyChar(c)) {		// an unquoted key, as in capturedReferences
+				write((char) c);
+				while(isKeyChar(peek()))
+					write((char) next());
+			}
+			else {
+				throw malformed(c, "a key");
+			}
+			write("</varName>");
+			c = skipWhitespace();
+			next();
+			if(c != ':')
+				throw malformed(c, "':'");
+			write("<value>");
+		}
+
+		private boolean isKeyChar(int c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+		}
+
+		// the rest of a string after its opening quote, decoded and escaped for XML
+		private void string() throws IOException {
+			while(true) {
+				int run = position;		// copy chars that need no decoding or escaping in one go, most strings are just that
+				while(position < limit && isPlain(input[position]))
+					position++;
+				write(input, run, position - run);
+				int c = next();
+				if(c == '"')
+					return;
+				if(c == '\\')
+					c = escape();
+				else if(c < 0x20)
+					throw malformed(c, "a char, control chars in strings must be escaped");
+				text((char) c);
+			}
+		}
+
+		private boolean isPlain(char c) {
+			return c >= 0x20 && c != '"' && c != '\\' && c != '&' && c != '<' && c != '>' && c < '\uFFFE';
+		}
+
+		private int escape() throws IOException {
+			int c = next();
+			switch(c) {
+			case '"': case '\\': case '/':
+				return c;
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int code = 0;
+				for(int i=0;i<4;i++) {
+					int digit = Character.digit(next(), 16);
+					if(digit < 0)
+						throw malformed(peekBack(), "a hex digit");
+					code = code * 16 + digit;
+				}
+				return code;
+			default:
+				throw malformed(c, "an escape char");
+			}
+		}
+
+		// a number, true, false or null, checked and written as it is
+		private void literal(char first) throws IOException {
+			literal.setLength(0);
+			literal.append(first);
+			while(true) {
+				int c = peek();
+				if(c != '-' && c != '+' && c != '.' && !(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'z') && c != 'E')
+					break;
+				if(literal.length() == MAX_LITERAL_LENGTH)
+					throw malformed(c, "the end of a literal, literals are limited to " + MAX_LITERAL_LENGTH + " chars");
+				literal.append((char) next());
+			}
+			boolean word = first >= 'a' && first <= 'z';
+			if(word ? !"true".contentEquals(literal) && !"false".contentEquals(literal) && !"null".contentEquals(literal) : !isNumber(literal))
+				throw malformed("invalid literal " + literal);
+			if(written + literal.length() > output.length) {
+				out.write(output, 0, written);
+				written = 0;
+			}
+			literal.getChars(0, literal.length(), output, written);		// fits, literals are shorter than any buffer
+			written += literal.length();
+		}
+
+		// -?(0|[1-9]\d*)(\.\d+)?([eE][+-]?\d+)? without a regex
+		private boolean isNumber(CharSequence s) {
+			int i = 0;
+			int n = s.length();
+			if(i < n && s.charAt(i) == '-')
+				i++;
+			if(i < n && s.charAt(i) == '0')
+				i++;
+			else if(i < n && s.charAt(i) >= '1' && s.charAt(i) <= '9')
+				while(i < n && Character.isDigit(s.charAt(i))) i++;
+			else
+				return false;
+			if(i < n && s.charAt(i) == '.') {
+				int digits = ++i;
+				while(i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9') i++;
+				if(i == digits)
+					return false;
+			}
+			if(i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+				i++;
+				if(i < n && (s.charAt(i) == '+' || s.charAt(i) == '-'))
+					i++;
+				int digits = i;
+				while(i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9') i++;
+				if(i == digits)
+					return false;
+			}
+			return i == n;
+		}
+
+		private void push(byte container) {
+			if(depth == stack.length)
+				stack = Arrays.copyOf(stack, depth * 2);
+			stack[depth++] = container;
+		}
+
+
+		// input
+
+		private int peek() throws IOException {
+			if(position == limit && !fill())
+				return -1;
+			return input[position];
+		}
+
+		private int next() throws IOException {
+			if(position == limit && !fill())
+				throw malformed(-1, "more input");
+			return input[position++];
+		}
+
+		// the char next() returned last, for error messages
+		private int peekBack() {
+			return position > 0 ? input[position - 1] : -1;
+		}
+
+		private int skipWhitespace() throws IOException {
+			while(true) {
+				int c = peek();
+				if(c != ' ' && c != '\n' && c != '\r' && c != '\t')
+					return c;
+				position++;
+			}
+		}
+
+		private boolean fill() throws IOException {
+			consumed += limit;
+			position = 0;
+			limit = 0;
+			int read;
+			do {
+				read = in.read(input, 0, input.length);
+			}
+			while(read == 0);
+			if(read < 0)
+				return false;
+			limit = read;
+			return true;
+		}
+
+		private IOException malformed(int found, String expected) {
+			return malformed("expected " + expected + " but found " + (found < 0 ? "the end" : "'" + (char) found + "'"));
+		}
+
+		// at the char read last
+		private IOException malformed(String problem) {
+			return new IOException("malformed JSON at char " + Math.max(consumed + position - 1, 0) + ": " + problem);
+		}
+
+
+		// output
+
+		// one char of text, escaped for XML
+		private void text(char c) throws IOException {
+			if(c == '&')
+				write("&amp;");
+			else if(c == '<')
+				write("&lt;");
+			else if(c == '>')
+				write("&gt;");
+			else if((c < 0x20 && c != '\t' && c != '\n' && c != '\r') || c == '\uFFFE' || c == '\uFFFF')
+				write('\uFFFD');
+			else
+				write(c);
+		}
+
+		private Conversion write(char c) throws IOException {
+			if(written == output.length) {
+				out.write(output, 0, written);
+				written = 0;
+			}
+			output[written++] = c;
+			return this;
+		}
+
+		private void write(char[] chars, int from, int length) throws IOException {
+			if(written + length > output.length) {
+				out.write(output, 0, written);
+				written = 0;
+				if(length > output.length) {
+					out.write(chars, from, length);
+					return;
+				}
+			}
+			System.arraycopy(chars, from, output, written, length);
+			written += length;
+		}
+
+		private Conversion write(String s) throws IOException {
+			if(written + s.length() > output.length) {
+				out.write(output, 0, written);
+				written = 0;
+				if(s.length() > output.length) {
+					out.write(s);
+					return this;
+				}
+			}
+			s.getChars(0, s.length(), output, written);
+			written += s.length();
+			return this;
+		}
+	}
+
+}
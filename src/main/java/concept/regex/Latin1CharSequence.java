@@ -0,0 +1,75 @@
+package concept.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Bytes read as ASCII or Latin-1 chars, one char per byte, without decoding them to a String. Pattern.matcher() accepts it like any
+ * CharSequence, so a regex runs directly on a byte[] or on a heap, direct or memory mapped ByteBuffer, e.g. a log file read from
+ * disk: new String(bytes, UTF_8) would make a second copy of the file in memory (twice its size for non Latin-1 text) and a full
+ * decoding pass before the first match. For UTF-8 input that isn't pure ASCII see Utf8CharSequence.
+ *
+ * Index i is the byte at offset + i of the array, or at position + i of the buffer when the view was made. The bytes are not copied,
+ * changes to them show through. subSequence() is a view of the same bytes, only toString() (and so Matcher.group()) copies.
+ *
+ * Latin1CharSequence log = Latin1CharSequence.of(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+ * Matcher matcher = pattern.matcher(log);
+ */
+public final class Latin1CharSequence implements CharSequence {
+
+	private final byte[] array;		// null for a buffer
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+
+	private Latin1CharSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+		this.array = array;
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public static Latin1CharSequence of(byte[] bytes) {
+		return new Latin1CharSequence(bytes, null, 0, bytes.length);
+	}
+
+	public static Latin1CharSequence of(byte[] bytes, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		return new Latin1CharSequence(bytes, null, offset, length);
+	}
+
+	/**
+	 * The bytes between position and limit of buffer. The buffer's position and limit are not used afterwards.
+	 */
+	public static Latin1CharSequence of(ByteBuffer buffer) {
+		return new Latin1CharSequence(null, buffer, buffer.position(), buffer.remaining());
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		Objects.checkIndex(index, length);
+		return (char) ((array != null ? array[offset + index] : buffer.get(offset + index)) & 0xFF);
+	}
+
+	@Override
+	public Latin1CharSequence subSequence(int start, int end) {
+		Objects.checkFromToIndex(start, end, length);
+		return new Latin1CharSequence(array, buffer, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		if(array != null)
+			return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+		byte[] bytes = new byte[length];
+		buffer.get(offset, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+}
@@ -0,0 +1,74 @@
+package concept.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * As mentioned in AboutPatternMatcher, a Pattern is thread safe but a Matcher is not. The garbage free way to match one pattern
+ * against many strings is to create one Matcher and reset(input) it for every string, but that works only as long as a single thread
+ * uses the matcher (like RegexEvalSpeedCompare.efficientWay). When many threads match the same pattern they usually fall back to
+ * pattern.matcher(input) which creates a new Matcher (plus its group and local arrays) for every input.
+ *
+ * MatcherPool keeps one Matcher per thread in a ThreadLocal. Each thread resets its own matcher, so after the first call on a
+ * thread matches() and find() don't allocate anything.
+ *
+ * Note:
+ * 1. The Matcher returned by matcher(input) belongs to the calling thread and is handed out again on the next call from the same
+ * 		thread. So don't keep it beyond the current match, don't pass it to another thread and don't call matcher(input) again on the
+ * 		same pool while still reading groups of the previous match.
+ * 2. matches(input) and find(input) reset the matcher to an empty string before returning so that the pool doesn't keep the last
+ * 		input reachable.
+ * 3. With virtual threads, a ThreadLocal is per virtual thread and not per carrier thread. A pool used from short lived virtual
+ * 		threads still works but allocates one Matcher per virtual thread, which is no better than pattern.matcher(input).
+ *
+ * RegexBenchmark.matcherNew vs RegexBenchmark.matcherPool compares the allocation per op of both approaches.
+ */
+public class MatcherPool {
+
+	private final Pattern pattern;
+	private final ThreadLocal<Matcher> matchers;
+
+	public MatcherPool(Pattern pattern) {
+		this.pattern = pattern;
+		this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+	}
+
+	/**
+	 * Pool for the given regex, compiled through the shared PatternCache.
+	 */
+	public static MatcherPool compile(String regex) {
+		return new MatcherPool(PatternCache.shared().compile(regex));
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns the calling thread's matcher reset to the given input. See the class notes for how long it can be used.
+	 */
+	public Matcher matcher(CharSequence input) {
+		return matchers.get().reset(input);
+	}
+
+	/**
+	 * Same as pattern.matcher(input).matches() without creating a new Matcher.
+	 */
+	public boolean matches(CharSequence input) {
+		Matcher matcher = matchers.get().reset(input);
+		boolean matches = matcher.matches();
+		matcher.reset("");
+		return matches;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).find() without creating a new Matcher.
+	 */
+	public boolean find(CharSequence input) {
+		Matcher matcher = matchers.get().reset(input);
+		boolean found = matcher.find();
+		matcher.reset("");
+		return found;
+	}
+
+}
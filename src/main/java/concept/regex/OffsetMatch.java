@@ -0,0 +1,72 @@
+package concept.regex;
+
+import java.util.regex.MatchResult;
+
+/**
+ * A MatchResult that keeps only the start and end of every group and reads the groups from the input when asked.
+ * Matcher.toMatchResult() copies the whole input (toString()) for every match, which is too much when there are many matches in
+ * a large input. The input must not change while the result is used.
+ */
+final class OffsetMatch implements MatchResult {
+
+	private final CharSequence input;
+	private final int[] offsets;
+
+	/**
+	 * @param offsets start and end of group 0, then of group 1 and so on, -1 for a group that didn't match
+	 */
+	OffsetMatch(CharSequence input, int[] offsets) {
+		this.input = input;
+		this.offsets = offsets;
+	}
+
+	@Override
+	public int start() {
+		return start(0);
+	}
+
+	@Override
+	public int start(int group) {
+		checkGroup(group);
+		return offsets[2 * group];
+	}
+
+	@Override
+	public int end() {
+		return end(0);
+	}
+
+	@Override
+	public int end(int group) {
+		checkGroup(group);
+		return offsets[2 * group + 1];
+	}
+
+	@Override
+	public String group() {
+		return group(0);
+	}
+
+	@Override
+	public String group(int group) {
+		checkGroup(group);
+		int start = offsets[2 * group];
+		return start < 0 ? null : input.subSequence(start, offsets[2 * group + 1]).toString();
+	}
+
+	@Override
+	public int groupCount() {
+		return offsets.length / 2 - 1;
+	}
+
+	private void checkGroup(int group) {
+		if(group < 0 || group > groupCount())
+			throw new IndexOutOfBoundsException("No group " + group);
+	}
+
+	@Override
+	public String toString() {
+		return "OffsetMatch[" + start() + ", " + end() + ": " + group() + "]";
+	}
+
+}
@@ -0,0 +1,258 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A find() loop never reports overlapping matches, every search starts where the last match ended. AboutPatternMatcher.Example5
+ * gets them with find(start() + 1), which resets the matcher on every call. OverlappingMatches reports the same matches (one per
+ * position where the pattern matches, the one find() would report there) in one left to right pass:
+ * 1. A literal or an alternation of literals ("cosco", "jpg|jpeg") runs on PatternSet's Aho-Corasick automaton, one table lookup
+ * 		per char no matter how the occurrences overlap. For a single literal that automaton is the KMP automaton, the failure links
+ * 		are KMP's prefix function. At a position where several alternatives occur, the first one in the pattern wins like in
+ * 		java.util.regex.
+ * 2. Any other pattern is rewritten to (?=(regex)). The look-ahead matches the empty string at every position where regex matches
+ * 		and captures the match in group 1, so a plain find() loop visits every start position once and the matcher is never reset.
+ * 		Groups of the pattern are shifted by one in the rewritten pattern and shifted back in the results.
+ * 3. A numbered back-reference (\1) would point at the wrong group after the rewrite, so such patterns use (?=regex) to find the
+ * 		start positions and run lookingAt() of the pattern itself from each of them.
+ *
+ * Results are a lazy Stream of MatchResults, nothing is searched before the stream is consumed and findFirst() or limit() stop the
+ * scan early. The MatchResults read their groups from input, which must not change while they are used. Like all look-arounds
+ * in this package \G is not supported. Instances are immutable and thread safe.
+ *
+ * OverlappingMatches.findAllOverlapping(Pattern.compile("cosco"), "coscoscosco").count();	// 3, find() gives 2
+ */
+public class OverlappingMatches {
+
+	private final Pattern pattern;
+	private final PatternSet.AhoCorasick automaton;	// for literal patterns, else null
+	private final int[] lengths;					// literal lengths by alternative
+	private final int maxLength;
+	private final Pattern rewritten;				// (?=(regex)) or null
+	private final Pattern probe;					// (?=regex) for patterns with back-references, else null
+
+	private OverlappingMatches(Pattern pattern) {
+		this.pattern = pattern;
+		int flags = pattern.flags();
+		String regex = pattern.pattern();
+		List<String> literals = null;
+		if(flags == Pattern.LITERAL) {
+			literals = regex.isEmpty() ? null : List.of(regex);
+		}
+		else if(flags == 0) {
+			literals = PatternSet.literalAlternatives(regex);
+		}
+		if((flags & Pattern.LITERAL) != 0) {		// LITERAL with other flags, quote it so that it can be wrapped
+			regex = Pattern.quote(regex);
+			flags &= ~Pattern.LITERAL;
+		}
+		String end = (flags & Pattern.COMMENTS) != 0 ? "\n" : "";	// a trailing # comment must not swallow the closing parens
+
+		if(literals != null) {
+			List<Integer> ids = new ArrayList<Integer>();
+			lengths = new int[literals.size()];
+			int max = 0;
+			for(int i=0;i<literals.size();i++) {
+				ids.add(i);
+				lengths[i] = literals.get(i).length();
+				max = Math.max(max, lengths[i]);
+			}
+			automaton = new PatternSet.AhoCorasick(literals, ids);
+			maxLength = max;
+			rewritten = null;
+			probe = null;
+		}
+		else {
+			automaton = null;
+			lengths = null;
+			maxLength = 0;
+			if(hasNumberedBackReference(regex)) {
+				rewritten = null;
+				probe = Pattern.compile("(?=" + regex + end + ")", flags);
+			}
+			else {
+				rewritten = Pattern.compile("(?=(" + regex + end + "))", flags);
+				probe = null;
+			}
+		}
+	}
+
+	public static OverlappingMatches compile(Pattern pattern) {
+		return new OverlappingMatches(pattern);
+	}
+
+	/**
+	 * Overlapping matches for the given regex, compiled through the shared PatternCache.
+	 */
+	public static OverlappingMatches compile(String regex) {
+		return new OverlappingMatches(PatternCache.shared().compile(regex));
+	}
+
+	/**
+	 * Shorthand for compile(pattern).findAll(input). Keep the OverlappingMatches instead when the pattern is used again.
+	 */
+	public static Stream<MatchResult> findAllOverlapping(Pattern pattern, CharSequence input) {
+		return compile(pattern).findAll(input);
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * Lazy stream of the matches starting at every position where the pattern matches, in order of their start.
+	 */
+	public Stream<MatchResult> findAll(CharSequence input) {
+		Spliterator<MatchResult> matches;
+		if(automaton != null)
+			matches = new LiteralMatches(input);
+		else if(rewritten != null)
+			matches = new RewrittenMatches(input);
+		else
+			matches = new ProbedMatches(input);
+		return StreamSupport.stream(matches, false);
+	}
+
+	public long count(CharSequence input) {
+		return findAll(input).count();
+	}
+
+	/**
+	 * True if regex has a back-reference by number (\1 to \9...) outside of a \Q...\E quote. \0 starts an octal escape.
+	 */
+	static boolean hasNumberedBackReference(String regex) {
+		for(int i=0;i<regex.length()-1;i++) {
+			if(regex.charAt(i) != '\\')
+				continue;
+			char next = regex.charAt(i + 1);
+			if(next == 'Q') {
+				int end = regex.indexOf("\\E", i + 2);
+				if(end < 0)
+					return false;
+				i = end + 1;
+			}
+			else if(next >= '1' && next <= '9') {
+				return true;
+			}
+			else {
+				i++;			// skip the escaped char, "\\\\1" is a backslash and a 1
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Runs the automaton and reports, for every start position, the first alternative that occurs there. A start is final once
+	 * the automaton has read maxLength chars from it, pending starts are kept in a ring of maxLength slots.
+	 */
+	private final class LiteralMatches extends Spliterators.AbstractSpliterator<MatchResult> {
+		private final CharSequence input;
+		private final int[] best = new int[maxLength];	// best[start % maxLength] = first alternative starting there, -1 if none
+		private int state;
+		private int read;		// chars fed to the automaton
+		private int next;		// next start to report
+
+		LiteralMatches(CharSequence input) {
+			super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+			this.input = input;
+			Arrays.fill(best, -1);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super MatchResult> action) {
+			int length = input.length();
+			while(true) {
+				while(next + maxLength <= read || (read == length && next < length)) {	// every literal starting at next has ended
+					int slot = next % maxLength;
+					int alternative = best[slot];
+					best[slot] = -1;
+					int start = next++;
+					if(alternative >= 0) {
+						action.accept(new OffsetMatch(input, new int[] {start, start + lengths[alternative]}));
+						return true;
+					}
+				}
+				if(read == length)
+					return false;
+				state = automaton.next(state, input.charAt(read++));
+				for(int s=state;s>=0;s=automaton.dictLink(s)) {
+					for(int alternative: automaton.output(s)) {
+						int slot = (read - lengths[alternative]) % maxLength;
+						if(best[slot] < 0 || alternative < best[slot])
+							best[slot] = alternative;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A find() loop over (?=(regex)), group g of the result is group g + 1 of the matcher.
+	 */
+	private final class RewrittenMatches extends Spliterators.AbstractSpliterator<MatchResult> {
+		private final CharSequence input;
+		private final Matcher matcher;
+
+		RewrittenMatches(CharSequence input) {
+			super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+			this.input = input;
+			this.matcher = rewritten.matcher(input);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super MatchResult> action) {
+			if(!matcher.find())
+				return false;
+			int[] offsets = new int[2 * matcher.groupCount()];
+			for(int g=1;g<=matcher.groupCount();g++) {
+				offsets[2 * g - 2] = matcher.start(g);
+				offsets[2 * g - 1] = matcher.end(g);
+			}
+			action.accept(new OffsetMatch(input, offsets));
+			return true;
+		}
+	}
+
+	/**
+	 * A find() loop over (?=regex) for the start positions and lookingAt() of the pattern from each of them.
+	 */
+	private final class ProbedMatches extends Spliterators.AbstractSpliterator<MatchResult> {
+		private final CharSequence input;
+		private final Matcher starts;
+		private final Matcher matcher;
+
+		ProbedMatches(CharSequence input) {
+			super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+			this.input = input;
+			this.starts = probe.matcher(input);
+			this.matcher = pattern.matcher(input).useTransparentBounds(true).useAnchoringBounds(false);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super MatchResult> action) {
+			if(!starts.find())
+				return false;
+			matcher.region(starts.start(), input.length());
+			matcher.lookingAt();		// true, (?=regex) just matched here
+			int[] offsets = new int[2 * (matcher.groupCount() + 1)];
+			for(int g=0;g<=matcher.groupCount();g++) {
+				offsets[2 * g] = matcher.start(g);
+				offsets[2 * g + 1] = matcher.end(g);
+			}
+			action.accept(new OffsetMatch(input, offsets));
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,302 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A find() loop (AboutPatternMatcher.Example4, ExtremeRegexFormulae.nthMatched) uses one core no matter how large the input is.
+ * ParallelScanner splits the input into chunks, scans every chunk with its own Matcher limited by region() on a ForkJoinPool and
+ * merges the matches in order, so that count(), findAll() and findNth() give exactly what the sequential loop gives.
+ *
+ * The input is only read, never copied, so it has to be safe to read from many threads (a String is). Chunk boundaries are chosen
+ * in one of two ways:
+ * 1. byLines()/byDelimiter(): a chunk ends right after a delimiter. Right for logs and records where no match runs across a line
+ * 		or record delimiter.
+ * 2. withOverlap(maxMatchLength): a chunk ends anywhere and its matcher may run maxMatchLength chars into the next chunk. Right as
+ * 		long as no match is longer than maxMatchLength.
+ * Look-arounds, \b, ^ and $ see the whole input (transparent and non anchoring bounds), \G is not supported.
+ *
+ * A chunk owns the matches that start inside it. Merging them in order is not enough though: a match near the end of one chunk
+ * can run into the next, and the sequential loop then goes on from its end while the next chunk's matcher started at the chunk
+ * start. So for each match the merge keeps the position its chunk's matcher searched from. As long as the merged position (where
+ * the sequential loop would search next) is not before that, the match is the one the sequential loop finds too. Otherwise the
+ * merge thread runs the matcher itself from the merged position until both agree again, which happens at the first match that
+ * doesn't overlap the straddling one. That re-scan is short and only needed after a straddling match, so the work stays spread
+ * over the cores and throughput scales with them as long as chunks outnumber the cores (see ParallelScannerBenchmark).
+ *
+ * ParallelScanner scanner = ParallelScanner.byLines(Pattern.compile("ERROR \\w+"));
+ * long errors = scanner.count(log);
+ * Optional<MatchResult> tenth = scanner.findNth(log, 10);
+ *
+ * Instances are immutable and thread safe.
+ */
+public class ParallelScanner {
+
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	private final Pattern pattern;
+	private final boolean delimited;
+	private final char delimiter;
+	private final int overlap;
+	private final int chunkSize;
+	private final ForkJoinPool pool;
+
+	private ParallelScanner(Pattern pattern, boolean delimited, char delimiter, int overlap, int chunkSize, ForkJoinPool pool) {
+		if(chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		this.pattern = pattern;
+		this.delimited = delimited;
+		this.delimiter = delimiter;
+		this.overlap = overlap;
+		this.chunkSize = chunkSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Chunks end after a '\n'. No match may contain a '\n' followed by more text.
+	 */
+	public static ParallelScanner byLines(Pattern pattern) {
+		return byDelimiter(pattern, '\n');
+	}
+
+	/**
+	 * Chunks end after the given delimiter. No match may contain the delimiter followed by more text.
+	 */
+	public static ParallelScanner byDelimiter(Pattern pattern, char delimiter) {
+		return new ParallelScanner(pattern, true, delimiter, 0, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Chunks end anywhere and are scanned maxMatchLength chars into the next one. No match may be longer than maxMatchLength.
+	 */
+	public static ParallelScanner withOverlap(Pattern pattern, int maxMatchLength) {
+		if(maxMatchLength < 1)
+			throw new IllegalArgumentException("maxMatchLength must be positive: " + maxMatchLength);
+		return new ParallelScanner(pattern, false, '\0', maxMatchLength, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Same scanner with chunks of about chunkSize chars.
+	 */
+	public ParallelScanner chunkSize(int chunkSize) {
+		return new ParallelScanner(pattern, delimited, delimiter, overlap, chunkSize, pool);
+	}
+
+	/**
+	 * Same scanner running on the given pool instead of the common pool.
+	 */
+	public ParallelScanner pool(ForkJoinPool pool) {
+		return new ParallelScanner(pattern, delimited, delimiter, overlap, chunkSize, pool);
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * Number of matches, the same as counting matcher.find() calls.
+	 */
+	public long count(CharSequence input) {
+		long[] count = new long[1];
+		scan(input, 2, (offsets, from) -> {
+			count[0]++;
+			return true;
+		});
+		return count[0];
+	}
+
+	/**
+	 * All matches in order. Groups are read from input, which must not change while the results are used.
+	 */
+	public List<MatchResult> findAll(CharSequence input) {
+		List<MatchResult> matches = new ArrayList<MatchResult>();
+		int slots = groupSlots();
+		scan(input, slots, (offsets, from) -> matches.add(new OffsetMatch(input, Arrays.copyOfRange(offsets, from, from + slots))));
+		return matches;
+	}
+
+	/**
+	 * The nth match (1 for the first) or empty if there are fewer. Chunks after the one holding it are cancelled.
+	 */
+	public Optional<MatchResult> findNth(CharSequence input, long n) {
+		if(n < 1)
+			throw new IllegalArgumentException("n must be positive: " + n);
+		long[] count = new long[1];
+		MatchResult[] nth = new MatchResult[1];
+		int slots = groupSlots();
+		scan(input, slots, (offsets, from) -> {
+			if(++count[0] < n)
+				return true;
+			nth[0] = new OffsetMatch(input, Arrays.copyOfRange(offsets, from, from + slots));
+			return false;
+		});
+		return Optional.ofNullable(nth[0]);
+	}
+
+	// start and end of every group, group 0 included
+	private int groupSlots() {
+		return 2 * (pattern.matcher("").groupCount() + 1);
+	}
+
+
+	/**
+	 * Receives the merged matches in order. A match is offsets[from, from + slots), start and end of every group. Returns false to
+	 * stop the scan.
+	 */
+	@FunctionalInterface
+	private interface Sink {
+		boolean accept(int[] offsets, int from);
+	}
+
+	/**
+	 * Scans the chunks in parallel and merges them into sink, keeping the first slots offsets (2 for just start and end) per match.
+	 */
+	private void scan(CharSequence input, int slots, Sink sink) {
+		List<ForkJoinTask<Chunk>> tasks = new ArrayList<ForkJoinTask<Chunk>>();
+		for(Chunk chunk: split(input))
+			tasks.add(pool.submit(() -> chunk.scan(newMatcher(input), slots)));
+		try {
+			merge(input, tasks, slots, sink);
+		}
+		finally {
+			for(ForkJoinTask<Chunk> task: tasks)
+				task.cancel(false);		// no-op for the finished ones
+		}
+	}
+
+	private List<Chunk> split(CharSequence input) {
+		int length = input.length();
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		int start = 0;
+		do {
+			int end = (int) Math.min((long) start + chunkSize, length);
+			if(delimited) {
+				while(end < length && end > start && input.charAt(end - 1) != delimiter)
+					end++;
+			}
+			boolean last = end >= length;
+			int regionEnd = last ? length : (int) Math.min((long) end + overlap, length);
+			chunks.add(new Chunk(start, last ? length + 1 : end, regionEnd));	// the last chunk also owns an empty match at length
+			start = end;
+		}
+		while(start < length);
+		return chunks;
+	}
+
+	private Matcher newMatcher(CharSequence input) {
+		return pattern.matcher(input).useTransparentBounds(true).useAnchoringBounds(false);
+	}
+
+	/**
+	 * Replays the chunks' matches in order, see the class notes. cursor is where the sequential loop would search next, every
+	 * match before it has been passed to the sink.
+	 */
+	private void merge(CharSequence input, List<ForkJoinTask<Chunk>> tasks, int slots, Sink sink) {
+		Matcher rescan = null;
+		int[] scratch = new int[slots];
+		int cursor = 0;
+		for(ForkJoinTask<Chunk> task: tasks) {
+			Chunk chunk = task.join();
+			int i = 0;
+			while(cursor < chunk.end) {
+				boolean past = i >= chunk.count;		// past the chunk's last match, its matcher searched on up to the chunk end
+				int searchedFrom = past ? chunk.searchedFrom : chunk.searchedFrom(i);
+				if(cursor >= searchedFrom) {
+					if(past)
+						break;
+					int start = chunk.start(i);
+					if(start >= cursor) {			// no match in [cursor, start) and start is leftmost, same as the sequential loop
+						if(!sink.accept(chunk.offsets, chunk.offset(i)))
+							return;
+						cursor = next(start, chunk.end(i));
+					}
+					i++;							// else it lies inside the last match, the sequential loop never sees it
+					continue;
+				}
+				// a match that ran into this chunk left the sequential loop somewhere the chunk's matcher didn't search from
+				if(rescan == null)
+					rescan = newMatcher(input);
+				rescan.region(cursor, chunk.regionEnd);
+				if(!rescan.find() || rescan.start() >= chunk.end)
+					break;
+				for(int g=0;g<slots/2;g++) {
+					scratch[2 * g] = rescan.start(g);
+					scratch[2 * g + 1] = rescan.end(g);
+				}
+				if(!sink.accept(scratch, 0))
+					return;
+				cursor = next(rescan.start(), rescan.end());
+			}
+		}
+	}
+
+	// where Matcher.find() searches next after a match, one further after an empty match
+	private static int next(int start, int end) {
+		return start == end ? end + 1 : end;
+	}
+
+
+	/**
+	 * One chunk: owns the matches starting in [start, end), its matcher searches [start, regionEnd). After scan() offsets holds
+	 * for every match the position the matcher searched from followed by the group offsets.
+	 */
+	private static final class Chunk {
+		final int start;
+		final int end;
+		final int regionEnd;
+		int[] offsets = new int[0];
+		int stride;
+		int count;
+		int searchedFrom;		// where the matcher searched from after the last match
+
+		Chunk(int start, int end, int regionEnd) {
+			this.start = start;
+			this.end = end;
+			this.regionEnd = regionEnd;
+		}
+
+		Chunk scan(Matcher matcher, int slots) {
+			stride = 1 + slots;
+			offsets = new int[16 * stride];
+			matcher.region(start, regionEnd);
+			searchedFrom = start;
+			while(matcher.find() && matcher.start() < end) {
+				if((count + 1) * stride > offsets.length)
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				int at = count * stride;
+				offsets[at] = searchedFrom;
+				for(int g=0;g<slots/2;g++) {
+					offsets[at + 1 + 2 * g] = matcher.start(g);
+					offsets[at + 2 + 2 * g] = matcher.end(g);
+				}
+				count++;
+				searchedFrom = next(matcher.start(), matcher.end());
+			}
+			return this;
+		}
+
+		int searchedFrom(int i) {
+			return offsets[i * stride];
+		}
+
+		int offset(int i) {
+			return i * stride + 1;
+		}
+
+		int start(int i) {
+			return offsets[i * stride + 1];
+		}
+
+		int end(int i) {
+			return offsets[i * stride + 2];
+		}
+	}
+
+}
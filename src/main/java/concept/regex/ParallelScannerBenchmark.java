@@ -0,0 +1,92 @@
+package concept.regex;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Counts the matches of a log line pattern in a 64 MB log with one Matcher and with ParallelScanner on a pool of 1, 2, 4 and 8
+ * threads. parallel with 1 thread should be close to sequential (the merge costs next to nothing) and the others close to
+ * sequential times the thread count, up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelScannerBenchmark {
+
+	private static final String REGEX = "ERROR \\[(\\w+)\\] .*timeout";
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private String log;
+	private Matcher matcher;
+	private ForkJoinPool pool;
+	private ParallelScanner scanner;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ParallelScannerBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		String[] levels = {"INFO", "INFO", "INFO", "WARN", "ERROR"};
+		String[] services = {"auth", "billing", "search", "gateway"};
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;sb.length() < 64 * 1024 * 1024;i++) {
+			sb.append(levels[random.nextInt(levels.length)]).append(" [").append(services[random.nextInt(services.length)])
+					.append("] request ").append(i).append(random.nextInt(10) == 0 ? " failed with timeout" : " done").append('\n');
+		}
+		log = sb.toString();
+		Pattern pattern = Pattern.compile(REGEX);
+		matcher = pattern.matcher("");
+		pool = new ForkJoinPool(threads);
+		scanner = ParallelScanner.byLines(pattern).pool(pool);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public long sequential() {
+		matcher.reset(log);
+		long count = 0;
+		while(matcher.find())
+			count++;
+		return count;
+	}
+
+	@Benchmark
+	public long parallel() {
+		return scanner.count(log);
+	}
+
+}
@@ -0,0 +1,319 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import concept.regex.linear.PatternAnalyzer;
+
+/**
+ * As explained in RegexEvalSpeedCompare every call to str.matches(regex), str.replaceAll(regex, replacement) and str.split(regex)
+ * compiles the pattern again. Compiling the pattern once and re-using it is easy when the regex is known upfront but not when the
+ * regex arrives at runtime (rules loaded from config, patterns typed by users, etc). In such cases the patterns are dynamic but tend
+ * to repeat, so a cache of compiled patterns gives most of the benefit of compiling once.
+ *
+ * PatternCache is a bounded cache of compiled patterns keyed by (regex, flags):
+ * 1. Pattern objects are immutable and thread safe so a cached pattern can be shared by any number of threads.
+ * 2. The cache is split into stripes (segments) where each stripe is a small access ordered LinkedHashMap guarded by its own lock.
+ * 		A lookup only locks the stripe its key hashes to, so threads looking up different patterns rarely wait on each other.
+ * 3. Each stripe evicts its least recently used pattern once it holds more than its share of maxSize. Eviction is LRU per stripe
+ * 		and so approximately LRU for the whole cache.
+ * 4. Compiling happens outside the lock. Two threads missing on the same regex at the same time may both compile it but only the
+ * 		first one gets cached, which is harmless as both patterns are equivalent.
+ *
+ * Hit, miss and eviction counters are kept in LongAdders which are cheap to update under contention.
+ *
+ * A cache of patterns that come from outside is also the place to stop patterns that can hang a thread (see PatternAnalyzer). With
+ * Admission.FLAG or REJECT every pattern is analyzed once, when it is admitted on a miss, so the cost of the analysis is paid like
+ * the cost of compiling. FLAG caches the pattern anyway and keeps the report for flagged(), REJECT throws UnsafePatternException.
+ *
+ * The static helpers matches(), replaceAll() and split() are drop-in replacements for the respective String methods and use the
+ * shared cache. Its size is read from the system property "concept.regex.PatternCache.maxSize" (default 1024) and its admission
+ * from "concept.regex.PatternCache.admission" (default ALLOW).
+ */
+public class PatternCache {
+
+	private static final int DEFAULT_MAX_SIZE = Integer.getInteger("concept.regex.PatternCache.maxSize", 1024);
+	private static final int MAX_STRIPES = 16;
+	private static final int MAX_FLAGGED = 64;
+
+	private static final PatternCache SHARED = new PatternCache(DEFAULT_MAX_SIZE,
+			Admission.valueOf(System.getProperty("concept.regex.PatternCache.admission", Admission.ALLOW.name())));
+
+	/**
+	 * What compile() does with a new pattern that PatternAnalyzer reports unsafe.
+	 */
+	public enum Admission {
+		/** no analysis */
+		ALLOW,
+		/** cache it and keep its report, see flagged() */
+		FLAG,
+		/** throw UnsafePatternException */
+		REJECT
+	}
+
+	private final int maxSize;
+	private final Admission admission;
+	private final Stripe[] stripes;
+	private final int stripeMask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder unsafe = new LongAdder();
+	private final LinkedHashMap<String, PatternAnalyzer.Report> flagged = new LinkedHashMap<String, PatternAnalyzer.Report>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PatternAnalyzer.Report> eldest) {
+			return size() > MAX_FLAGGED;
+		}
+	};
+
+	/**
+	 * @param maxSize maximum number of compiled patterns to keep, must be at least 1
+	 */
+	public PatternCache(int maxSize) {
+		this(maxSize, Admission.ALLOW);
+	}
+
+	/**
+	 * @param maxSize maximum number of compiled patterns to keep, must be at least 1
+	 * @param admission whether new patterns are analyzed for catastrophic backtracking and what to do with unsafe ones
+	 */
+	public PatternCache(int maxSize, Admission admission) {
+		if(maxSize < 1)
+			throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+		if(admission == null)
+			throw new NullPointerException("admission");
+		this.maxSize = maxSize;
+		this.admission = admission;
+
+		int count = 1;	// number of stripes is a power of two so that stripe index is hash & mask
+		while(count < MAX_STRIPES && count * 2 <= maxSize)
+			count *= 2;
+
+		stripes = new Stripe[count];
+		for(int i=0;i<count;i++)		// the remainder of maxSize/count one each to the first stripes, so that they add up to maxSize
+			stripes[i] = new Stripe(maxSize / count + (i < maxSize % count ? 1 : 0));
+		stripeMask = count - 1;
+	}
+
+	/**
+	 * The cache used by the static helpers.
+	 */
+	public static PatternCache shared() {
+		return SHARED;
+	}
+
+
+	// drop-in replacements for the String methods
+
+	/**
+	 * Same as input.matches(regex) but compiles regex only on a cache miss.
+	 */
+	public static boolean matches(String regex, CharSequence input) {
+		return SHARED.compile(regex).matcher(input).matches();
+	}
+
+	/**
+	 * Same as input.replaceAll(regex, replacement) but compiles regex only on a cache miss.
+	 */
+	public static String replaceAll(CharSequence input, String regex, String replacement) {
+		return SHARED.compile(regex).matcher(input).replaceAll(replacement);
+	}
+
+	/**
+	 * Same as input.split(regex) but compiles regex only on a cache miss.
+	 */
+	public static String[] split(CharSequence input, String regex) {
+		return SHARED.compile(regex).split(input);
+	}
+
+
+	public Pattern compile(String regex) {
+		return compile(regex, 0);
+	}
+
+	/**
+	 * Returns the cached pattern for (regex, flags), compiling and caching it on a miss.
+	 *
+	 * @throws java.util.regex.PatternSyntaxException if regex is not a valid pattern, invalid patterns are not cached
+	 * @throws UnsafePatternException if admission is REJECT and the pattern is unsafe, it is not cached either
+	 */
+	public Pattern compile(String regex, int flags) {
+		Key key = new Key(regex, flags);
+		Stripe stripe = stripes[spread(key.hashCode()) & stripeMask];
+
+		Pattern pattern = stripe.get(key);
+		if(pattern != null) {
+			hits.increment();
+			return pattern;
+		}
+
+		misses.increment();
+		pattern = Pattern.compile(regex, flags);	// compile outside the lock
+		if(admission != Admission.ALLOW)
+			admit(regex, flags);
+		return stripe.putIfAbsent(key, pattern);
+	}
+
+	private void admit(String regex, int flags) {
+		if((flags & (Pattern.LITERAL | Pattern.COMMENTS)) != 0)
+			return;		// nothing to backtrack / a syntax the analyzer doesn't read
+		PatternAnalyzer.Report report;
+		try {
+			report = PatternAnalyzer.analyze(regex);
+		}
+		catch(PatternSyntaxException e) {
+			return;		// valid for java.util.regex but beyond what the analyzer parses, let it through
+		}
+		if(report.isSafe())
+			return;
+		unsafe.increment();
+		if(admission == Admission.REJECT)
+			throw new UnsafePatternException(report);
+		synchronized(flagged) {
+			flagged.put(regex, report);
+		}
+	}
+
+	/**
+	 * Number of compiled patterns currently held. Approximate while other threads are using the cache.
+	 */
+	public int size() {
+		int size = 0;
+		for(Stripe stripe: stripes)
+			size += stripe.size();
+		return size;
+	}
+
+	public int maxSize() {
+		return maxSize;
+	}
+
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	public long missCount() {
+		return misses.sum();
+	}
+
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	public Admission admission() {
+		return admission;
+	}
+
+	/**
+	 * Number of new patterns PatternAnalyzer found unsafe, flagged or rejected.
+	 */
+	public long unsafeCount() {
+		return unsafe.sum();
+	}
+
+	/**
+	 * Reports of the most recently flagged patterns (at most 64), oldest first. Always empty unless admission is FLAG.
+	 */
+	public List<PatternAnalyzer.Report> flagged() {
+		synchronized(flagged) {
+			return new ArrayList<PatternAnalyzer.Report>(flagged.values());
+		}
+	}
+
+	/**
+	 * Removes all cached patterns. Counters are not reset.
+	 */
+	public void clear() {
+		for(Stripe stripe: stripes)
+			stripe.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "PatternCache[size=" + size() + ", maxSize=" + maxSize + ", hits=" + hitCount() + ", misses=" + missCount()
+				+ ", evictions=" + evictionCount() + ", admission=" + admission + ", unsafe=" + unsafeCount() + "]";
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);	// same as HashMap, so that high bits also take part in picking the stripe
+	}
+
+
+	private static final class Key {
+		private final String regex;
+		private final int flags;
+		private final int hash;
+
+		Key(String regex, int flags) {
+			if(regex == null)
+				throw new NullPointerException("regex");
+			this.regex = regex;
+			this.flags = flags;
+			this.hash = 31 * regex.hashCode() + flags;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o)
+				return true;
+			if(!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return flags == other.flags && regex.equals(other.regex);
+		}
+	}
+
+	/**
+	 * One stripe of the cache. LinkedHashMap with accessOrder=true moves an entry to the end on every get() so the eldest entry
+	 * is always the least recently used one.
+	 */
+	private final class Stripe {
+		private final LinkedHashMap<Key, Pattern> map;
+
+		Stripe(int capacity) {
+			map = new LinkedHashMap<Key, Pattern>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Pattern> eldest) {
+					if(size() > capacity) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized Pattern get(Key key) {
+			return map.get(key);
+		}
+
+		synchronized Pattern putIfAbsent(Key key, Pattern pattern) {
+			Pattern existing = map.putIfAbsent(key, pattern);
+			return existing != null ? existing : pattern;
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+
+		synchronized void clear() {
+			map.clear();
+		}
+	}
+
+}
@@ -0,0 +1,325 @@
+package concept.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Validation and search rules are often a set of hundreds or thousands of patterns that every input is checked against. Doing that
+ * with one Matcher after another scans the input once per pattern, so the cost of a check grows linearly with the number of rules.
+ *
+ * Most rules in such sets are plain words or a few words separated by '|' ("cosco", "gmail\\.", "jpg|jpeg"). PatternSet compiles all
+ * such literal rules together into a single Aho-Corasick automaton and reports every rule that occurs in the input in one left to
+ * right scan, one table lookup per character, no matter how many literal rules there are. Rules that use any other regex construct
+ * (character classes, quantifiers, anchors, back-references, flags, ...) fall back to java.util.regex and are run one by one with a
+ * per thread Matcher (MatcherPool).
+ *
+ * Matching is find() semantics: a rule matches when it occurs anywhere in the input.
+ *
+ * Aho-Corasick in short:
+ * 1. Build a trie of all literals. Every trie node is a state and the nodes at the end of a literal remember the ids of its rules.
+ * 2. Breadth first, give every node a failure link to the longest proper suffix of its path that is also a path in the trie. When no
+ * 		trie edge exists for the next character, the automaton continues from the failure link instead of starting over.
+ * 3. Since we resolve every missing edge through the failure links while building, the result is a DFA: next = delta[state][char].
+ * 4. A state outputs its own rules plus the rules of the states on its failure chain ("dictionary suffix links").
+ * Characters are first mapped to a small alphabet of the characters that appear in literals (every other character is class 0 and
+ * always leads back to the root), which keeps the transition table at states * alphabet ints.
+ *
+ * Reference: https://en.wikipedia.org/wiki/Aho%E2%80%93Corasick_algorithm
+ * Reference: https://cp-algorithms.com/string/aho_corasick.html
+ */
+public class PatternSet {
+
+	private final String[] regexes;
+	private final AhoCorasick automaton;	// null when there are no literal rules
+	private final int[] fallbackIds;
+	private final MatcherPool[] fallbacks;
+
+	private PatternSet(String[] regexes) {
+		this.regexes = regexes;
+
+		List<String> literals = new ArrayList<String>();
+		List<Integer> literalIds = new ArrayList<Integer>();
+		List<Integer> fallbackIds = new ArrayList<Integer>();
+		for(int id=0;id<regexes.length;id++) {
+			List<String> alternatives = literalAlternatives(regexes[id]);
+			if(alternatives == null) {
+				fallbackIds.add(id);
+				continue;
+			}
+			for(String literal: alternatives) {
+				literals.add(literal);
+				literalIds.add(id);
+			}
+		}
+
+		this.automaton = literals.isEmpty() ? null : new AhoCorasick(literals, literalIds);
+		this.fallbackIds = new int[fallbackIds.size()];
+		this.fallbacks = new MatcherPool[fallbackIds.size()];
+		for(int i=0;i<this.fallbackIds.length;i++) {
+			this.fallbackIds[i] = fallbackIds.get(i);
+			this.fallbacks[i] = new MatcherPool(PatternCache.shared().compile(regexes[this.fallbackIds[i]]));
+		}
+	}
+
+	/**
+	 * Compiles the given rules. The id of a rule is its index in the argument list.
+	 *
+	 * @throws java.util.regex.PatternSyntaxException if a rule that needs java.util.regex is not a valid pattern
+	 */
+	public static PatternSet compile(String... regexes) {
+		return new PatternSet(regexes.clone());
+	}
+
+	public static PatternSet compile(List<String> regexes) {
+		return new PatternSet(regexes.toArray(new String[0]));
+	}
+
+	/**
+	 * Returns the ids of all rules that occur in the input.
+	 */
+	public BitSet find(CharSequence input) {
+		BitSet matched = new BitSet(regexes.length);
+		if(automaton != null)
+			automaton.scan(input, matched);
+		for(int i=0;i<fallbacks.length;i++)
+			if(fallbacks[i].find(input))
+				matched.set(fallbackIds[i]);
+		return matched;
+	}
+
+	/**
+	 * Returns true if at least one rule occurs in the input. Stops at the first rule found.
+	 */
+	public boolean findAny(CharSequence input) {
+		if(automaton != null && automaton.scanAny(input))
+			return true;
+		for(MatcherPool fallback: fallbacks)
+			if(fallback.find(input))
+				return true;
+		return false;
+	}
+
+	public int size() {
+		return regexes.length;
+	}
+
+	public String regex(int id) {
+		return regexes[id];
+	}
+
+	/**
+	 * Number of rules that are run by java.util.regex instead of the automaton.
+	 */
+	public int fallbackCount() {
+		return fallbacks.length;
+	}
+
+
+	/**
+	 * Returns the literals a regex stands for if it is a plain literal ("cosco", "gmail\\.com", "\\Qa+b\\E") or an alternation of
+	 * plain literals ("jpg|jpeg"), else null.
+	 */
+	static List<String> literalAlternatives(String regex) {
+		List<String> alternatives = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		int i = 0;
+		while(i < regex.length()) {
+			char c = regex.charAt(i);
+			if(c == '\\') {
+				if(i + 1 == regex.length())
+					return null;
+				char next = regex.charAt(i + 1);
+				if(next == 'Q') {	// quoted section \Q...\E, \E is optional at the end of the regex
+					int end = regex.indexOf("\\E", i + 2);
+					literal.append(regex, i + 2, end < 0 ? regex.length() : end);
+					i = end < 0 ? regex.length() : end + 2;
+					continue;
+				}
+				char escaped = escapedLiteral(next);
+				if(escaped == 0)
+					return null;	// \d, \w, \b, back-references, etc
+				literal.append(escaped);
+				i += 2;
+				continue;
+			}
+			if(c == '|') {
+				if(literal.length() == 0)
+					return null;	// empty alternative matches everywhere
+				alternatives.add(literal.toString());
+				literal.setLength(0);
+				i++;
+				continue;
+			}
+			if(".[]{}()*+?^$".indexOf(c) >= 0)
+				return null;
+			literal.append(c);
+			i++;
+		}
+		if(literal.length() == 0)
+			return null;
+		alternatives.add(literal.toString());
+		return alternatives;
+	}
+
+	private static char escapedLiteral(char c) {
+		switch(c) {
+		case 't': return '\t';
+		case 'n': return '\n';
+		case 'r': return '\r';
+		case 'f': return '\f';
+		case 'a': return '\u0007';
+		case 'e': return '\u001B';
+		default:
+			return Character.isLetterOrDigit(c) ? 0 : c;	// escaped punctuation stands for itself
+		}
+	}
+
+
+	/**
+	 * Aho-Corasick automaton with all transitions resolved, see class notes.
+	 */
+	static final class AhoCorasick {
+		private static final int[] NONE = new int[0];
+
+		private final int[] asciiClass = new int[128];	// char -> alphabet class, 0 for characters not in any literal
+		private final Map<Character, Integer> otherClass = new HashMap<Character, Integer>();
+		private final int alphabet;
+		private final int[] delta;		// delta[state * alphabet + class] = next state
+		private final int[][] output;	// ids ending exactly at a state
+		private final int[] dictLink;	// nearest state on the failure chain with an output, -1 if none
+
+		AhoCorasick(List<String> literals, List<Integer> ids) {
+			int classes = 1;
+			for(String literal: literals)
+				for(int i=0;i<literal.length();i++) {
+					char c = literal.charAt(i);
+					if(classOf(c) == 0) {
+						if(c < 128)
+							asciiClass[c] = classes++;
+						else
+							otherClass.put(c, classes++);
+					}
+				}
+			alphabet = classes;
+
+			// 1. trie, -1 means no edge yet
+			List<int[]> edges = new ArrayList<int[]>();
+			List<int[]> outputs = new ArrayList<int[]>();
+			edges.add(newRow());
+			outputs.add(NONE);
+			for(int l=0;l<literals.size();l++) {
+				String literal = literals.get(l);
+				int state = 0;
+				for(int i=0;i<literal.length();i++) {
+					int cls = classOf(literal.charAt(i));
+					if(edges.get(state)[cls] < 0) {
+						edges.get(state)[cls] = edges.size();
+						edges.add(newRow());
+						outputs.add(NONE);
+					}
+					state = edges.get(state)[cls];
+				}
+				int[] out = outputs.get(state);
+				out = Arrays.copyOf(out, out.length + 1);
+				out[out.length - 1] = ids.get(l);
+				outputs.set(state, out);
+			}
+
+			int states = edges.size();
+			delta = new int[states * alphabet];
+			output = outputs.toArray(new int[0][]);
+			dictLink = new int[states];
+			int[] fail = new int[states];
+
+			// 2 & 3. failure links and full transitions breadth first, so a node's failure target is complete before the node
+			Queue<Integer> queue = new ArrayDeque<Integer>();
+			int[] root = edges.get(0);
+			dictLink[0] = -1;
+			for(int cls=0;cls<alphabet;cls++) {
+				if(root[cls] > 0) {
+					delta[cls] = root[cls];
+					fail[root[cls]] = 0;
+					dictLink[root[cls]] = -1;
+					queue.add(root[cls]);
+				}
+				else {
+					delta[cls] = 0;
+				}
+			}
+			while(!queue.isEmpty()) {
+				int state = queue.remove();
+				int[] row = edges.get(state);
+				for(int cls=0;cls<alphabet;cls++) {
+					int next = row[cls];
+					if(next > 0) {
+						int f = delta[fail[state] * alphabet + cls];
+						fail[next] = f;
+						dictLink[next] = output[f].length > 0 ? f : dictLink[f];	// 4. dictionary suffix link
+						delta[state * alphabet + cls] = next;
+						queue.add(next);
+					}
+					else {
+						delta[state * alphabet + cls] = delta[fail[state] * alphabet + cls];
+					}
+				}
+			}
+		}
+
+		private int[] newRow() {
+			int[] row = new int[alphabet];
+			Arrays.fill(row, -1);
+			return row;
+		}
+
+		int classOf(char c) {
+			if(c < 128)
+				return asciiClass[c];
+			Integer cls = otherClass.get(c);
+			return cls == null ? 0 : cls;
+		}
+
+		void scan(CharSequence input, BitSet matched) {
+			int state = 0;
+			for(int i=0;i<input.length();i++) {
+				state = delta[state * alphabet + classOf(input.charAt(i))];
+				for(int s=state;s>=0;s=dictLink[s])
+					for(int id: output[s])
+						matched.set(id);
+			}
+		}
+
+		// single steps for callers that need the positions of the literals, not just their ids
+
+		int next(int state, char c) {
+			return delta[state * alphabet + classOf(c)];
+		}
+
+		/**
+		 * Ids of the literals ending exactly at state. The ones ending in a suffix of it are found through dictLink(state).
+		 */
+		int[] output(int state) {
+			return output[state];
+		}
+
+		int dictLink(int state) {
+			return dictLink[state];
+		}
+
+		boolean scanAny(CharSequence input) {
+			int state = 0;
+			for(int i=0;i<input.length();i++) {
+				state = delta[state * alphabet + classOf(input.charAt(i))];
+				if(output[state].length > 0 || dictLink[state] >= 0)
+					return true;
+			}
+			return false;
+		}
+	}
+
+}
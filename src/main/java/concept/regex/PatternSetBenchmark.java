@@ -0,0 +1,94 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Checks one line of text against a rule set of random literal words (plus a couple of real regexes) with PatternSet and with one
+ * Matcher per rule. The matcherPerRule score drops linearly with the number of rules whereas patternSet stays close to flat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternSetBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int rules;
+
+	private String input;
+	private PatternSet patternSet;
+	private Matcher[] matchers;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(PatternSetBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		List<String> regexes = new ArrayList<String>();
+		regexes.add("\\d{3}-\\d{4}");						// two non-literal rules that run on java.util.regex
+		regexes.add("[a-z]+@[a-z]+\\.com");
+		while(regexes.size() < rules)
+			regexes.add(randomWord(random, 5 + random.nextInt(6)));
+
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < 200)
+			sb.append(randomWord(random, 2 + random.nextInt(8))).append(' ');
+		input = sb.append(regexes.get(rules / 2)).toString();	// at least one rule matches
+
+		patternSet = PatternSet.compile(regexes);
+		matchers = new Matcher[regexes.size()];
+		for(int i=0;i<matchers.length;i++)
+			matchers[i] = Pattern.compile(regexes.get(i)).matcher("");
+	}
+
+	private static String randomWord(Random random, int length) {
+		char[] word = new char[length];
+		for(int i=0;i<length;i++)
+			word[i] = (char) ('a' + random.nextInt(26));
+		return new String(word);
+	}
+
+	@Benchmark
+	public BitSet patternSet() {
+		return patternSet.find(input);
+	}
+
+	@Benchmark
+	public BitSet matcherPerRule() {
+		BitSet matched = new BitSet(matchers.length);
+		for(int i=0;i<matchers.length;i++)
+			if(matchers[i].reset(input).find())
+				matched.set(i);
+		return matched;
+	}
+
+}
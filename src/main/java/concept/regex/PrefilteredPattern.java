@@ -0,0 +1,192 @@
+package concept.regex;
+
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import concept.regex.linear.RequiredLiterals;
+
+/**
+ * A Pattern that searches for the literal text its matches must contain before it runs the backtracking engine (see
+ * RequiredLiterals for how the text is found). Most patterns in this package have one: "cosco" (AboutPatternMatcher.Example5), "@"
+ * in the email regex, "." in the file extension regex. java.util.regex only skips ahead this way for patterns that start with a
+ * literal, everything else is tried at every position of the input.
+ * 1. matches() and find() look for the required literal with String.indexOf() first, an input without it is rejected without
+ * 		running the regex at all.
+ * 2. When every match starts with a literal prefix, the find() loop jumps from one occurrence of the prefix to the next and tries
+ * 		the regex only there, with lookingAt() on a region that starts at the occurrence. Transparent and non anchoring bounds keep
+ * 		look-arounds, \b and ^ seeing the whole input, so the matches are the ones find() reports.
+ * 3. Otherwise the find() loop runs the regex as usual but stops as soon as the required literal doesn't occur in the rest of the
+ * 		input, which saves the fruitless scan of the tail after the last match.
+ * The indexOf() calls are JIT intrinsics that compare 16 or 32 bytes at a time for a String input, any other CharSequence is
+ * scanned char by char.
+ *
+ * Patterns without a required literal behave like the plain Pattern, with the cost of one check per call. Instances are immutable and
+ * thread safe, matchers are kept per thread like in MatcherPool.
+ *
+ * PrefilteredPatternBenchmark measures the difference on a large text.
+ */
+public final class PrefilteredPattern {
+
+	private final Pattern pattern;
+	private final String required;		// "" when nothing is required
+	private final String prefix;
+	private final MatcherPool matchers;
+
+	private PrefilteredPattern(Pattern pattern) {
+		RequiredLiterals literals = RequiredLiterals.of(pattern);
+		this.pattern = pattern;
+		this.required = literals.required();
+		this.prefix = literals.prefix();
+		this.matchers = new MatcherPool(pattern);
+	}
+
+	public static PrefilteredPattern compile(Pattern pattern) {
+		return new PrefilteredPattern(pattern);
+	}
+
+	/**
+	 * Prefiltered pattern for the given regex, compiled through the shared PatternCache.
+	 */
+	public static PrefilteredPattern compile(String regex) {
+		return new PrefilteredPattern(PatternCache.shared().compile(regex));
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * The literal every match contains, "" if there is none.
+	 */
+	public String required() {
+		return required;
+	}
+
+	/**
+	 * The literal every match starts with, "" if there is none.
+	 */
+	public String prefix() {
+		return prefix;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).matches().
+	 */
+	public boolean matches(CharSequence input) {
+		return indexOf(input, required, 0) >= 0 && matchers.matches(input);
+	}
+
+	/**
+	 * Same as pattern.matcher(input).find().
+	 */
+	public boolean find(CharSequence input) {
+		if(prefix.isEmpty())
+			return indexOf(input, required, 0) >= 0 && matchers.find(input);
+		Matcher matcher = matchers.matcher(input).useTransparentBounds(true).useAnchoringBounds(false);
+		try {
+			return next(matcher, input, 0) >= 0;
+		}
+		finally {
+			matcher.useTransparentBounds(false).useAnchoringBounds(true).reset("");		// back to the defaults of the pool
+		}
+	}
+
+	/**
+	 * Number of matches, the same as counting matcher.find() calls.
+	 */
+	public long count(CharSequence input) {
+		return findAll(input).count();
+	}
+
+	/**
+	 * Lazy stream of the matches, the same as pattern.matcher(input).results(). Groups are read from input, which must not change
+	 * while the results are used.
+	 */
+	public Stream<MatchResult> findAll(CharSequence input) {
+		return StreamSupport.stream(new Matches(input), false);
+	}
+
+	/**
+	 * Finds the first match starting at or after from with the prefix jumps, returns its start or -1. The matcher holds the match.
+	 */
+	private int next(Matcher matcher, CharSequence input, int from) {
+		for(int at=indexOf(input, prefix, from);at>=0;at=indexOf(input, prefix, at + 1)) {
+			matcher.region(at, input.length());
+			if(matcher.lookingAt())
+				return at;
+		}
+		return -1;
+	}
+
+	private static int indexOf(CharSequence input, String literal, int from) {
+		if(literal.isEmpty())
+			return from <= input.length() ? from : -1;
+		if(input instanceof String) {
+			String s = (String) input;
+			return literal.length() == 1 ? s.indexOf(literal.charAt(0), from) : s.indexOf(literal, from);
+		}
+		char first = literal.charAt(0);
+		int last = input.length() - literal.length();
+		for(int i=Math.max(from, 0);i<=last;i++) {
+			if(input.charAt(i) != first)
+				continue;
+			int j = 1;
+			while(j < literal.length() && input.charAt(i + j) == literal.charAt(j))
+				j++;
+			if(j == literal.length())
+				return i;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * The find() loop with the prefilter. Uses its own matcher as the stream may be consumed on any thread.
+	 */
+	private final class Matches extends Spliterators.AbstractSpliterator<MatchResult> {
+		private final CharSequence input;
+		private final Matcher matcher;
+		private int from;			// where the next search starts, -1 when done
+
+		Matches(CharSequence input) {
+			super(Long.MAX_VALUE, ORDERED | NONNULL | IMMUTABLE);
+			this.input = input;
+			this.matcher = pattern.matcher(input);
+			if(!prefix.isEmpty())
+				matcher.useTransparentBounds(true).useAnchoringBounds(false);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super MatchResult> action) {
+			if(from < 0 || indexOf(input, required, from) < 0) {
+				from = -1;
+				return false;
+			}
+			boolean found;
+			if(!prefix.isEmpty()) {
+				found = next(matcher, input, from) >= 0;
+			}
+			else {
+				found = matcher.find();		// goes on from its last match
+			}
+			if(!found) {
+				from = -1;
+				return false;
+			}
+			from = matcher.end() == matcher.start() ? matcher.end() + 1 : matcher.end();
+			int[] offsets = new int[2 * (matcher.groupCount() + 1)];
+			for(int g=0;g<=matcher.groupCount();g++) {
+				offsets[2 * g] = matcher.start(g);
+				offsets[2 * g + 1] = matcher.end(g);
+			}
+			action.accept(new OffsetMatch(input, offsets));
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package concept.regex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Counts the matches of selective patterns in an 8 MB log with a plain Matcher and with PrefilteredPattern. The first two start with
+ * an assertion, so java.util.regex tries them at every position while PrefilteredPattern jumps between occurrences of the prefix.
+ * The third has no prefix, only a required literal, and gains only on the tail after its last match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrefilteredPatternBenchmark {
+
+	@Param({"\\bcosco\\b", "(?<![a-z])timeout after (\\d+)ms", "\\w+@gmail\\.com"})
+	public String regex;
+
+	private String log;
+	private Matcher matcher;
+	private PrefilteredPattern prefiltered;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(PrefilteredPatternBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		String[] words = {"request", "done", "user", "session", "cache", "miss", "search", "costco", "cosco", "timeout after 30ms",
+				"alice@example.com", "bob@gmail.com"};
+		int[] weights = {200, 200, 200, 200, 100, 100, 100, 10, 1, 1, 10, 1};
+		int total = 0;
+		for(int weight: weights)
+			total += weight;
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < 8 * 1024 * 1024) {
+			int pick = random.nextInt(total);
+			int w = 0;
+			while(pick >= weights[w])
+				pick -= weights[w++];
+			sb.append(words[w]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+		}
+		log = sb.toString();
+		Pattern pattern = Pattern.compile(regex);
+		matcher = pattern.matcher("");
+		prefiltered = PrefilteredPattern.compile(pattern);
+	}
+
+	@Benchmark
+	public long matcher() {
+		matcher.reset(log);
+		long count = 0;
+		while(matcher.find())
+			count++;
+		return count;
+	}
+
+	@Benchmark
+	public long prefiltered() {
+		return prefiltered.count(log);
+	}
+
+}
@@ -0,0 +1,546 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts records from text into columns of primitive arrays. ExtremeRegexFormulae.justFirstMatched() and nthMatched() take
+ * "Marcelo-12" apart with one replaceAll() per field, and the usual find() loop turns every field of every record into a String
+ * (group()) and then into an Integer or an enum. For millions of records that is millions of short lived objects, before any
+ * aggregation has started. RecordExtractor declares the fields once, as named groups of one pattern mapped to typed columns:
+ * 1. intColumn: the digits of the group parsed straight from the input, into an int[]
+ * 2. stringColumn: the chars of the group as UTF-8 bytes appended to one byte[], with an int[] of offsets (row i is the bytes
+ * 		from offsets[i] to offsets[i + 1]), the layout of Arrow's variable size binary columns
+ * 3. enumColumn: the ordinal of the enum constant named by the group, into an int[], found without making a String
+ * A group that didn't take part in the match is null, one bit per row in the column's null bitmap.
+ *
+ * Every match is a row: every find() in a text, or the first find() in every record of a list. Rows are written into a Batch of
+ * batchSize rows (1024 by default) which is handed to the sink when it is full and then reused, so an extraction allocates its
+ * columns once however many rows there are. A sink that keeps data beyond the call copies it (or aggregates it right away, which
+ * is the point).
+ *
+ * RecordExtractor players = RecordExtractor.compile("(?<name>[A-Z][a-z]+)-(?<number>\\d+)")
+ * 		.stringColumn("name")
+ * 		.intColumn("number");
+ * players.extract(text, batch -> total += batch.ints("number").sum());
+ *
+ * Groups are looked up by name in the Matcher of every match, so that the numbers are java.util.regex's whatever the flags
+ * (a (?<name>..) in a COMMENTS comment is no group). A column for a name the pattern has no group for throws
+ * IllegalArgumentException from extract() at the first match.
+ *
+ * Instances are immutable and thread safe, every call uses its own matcher and batch. RecordExtractorBenchmark compares it with
+ * the find() loop that makes objects.
+ */
+public class RecordExtractor {
+
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	private final Pattern pattern;
+	private final List<ColumnSpec> columns;
+	private final int batchSize;
+
+	private RecordExtractor(Pattern pattern, List<ColumnSpec> columns, int batchSize) {
+		if(batchSize < 1)
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		this.pattern = pattern;
+		this.columns = columns;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Extractor without columns for the given pattern, add them with intColumn(), stringColumn() and enumColumn().
+	 */
+	public static RecordExtractor compile(Pattern pattern) {
+		return new RecordExtractor(pattern, List.of(), DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Extractor for the given regex, compiled through the shared PatternCache.
+	 */
+	public static RecordExtractor compile(String regex) {
+		return compile(PatternCache.shared().compile(regex));
+	}
+
+	/**
+	 * Same extractor with an int column for the named group, which must hold an optionally signed decimal int.
+	 */
+	public RecordExtractor intColumn(String group) {
+		return with(new ColumnSpec(group, null));
+	}
+
+	/**
+	 * Same extractor with a string column for the named group.
+	 */
+	public RecordExtractor stringColumn(String group) {
+		return with(new ColumnSpec(group, String.class));
+	}
+
+	/**
+	 * Same extractor with an enum column for the named group, which must hold the name of one of the constants of type.
+	 */
+	public <E extends Enum<E>> RecordExtractor enumColumn(String group, Class<E> type) {
+		return with(new ColumnSpec(group, type));
+	}
+
+	/**
+	 * Same extractor writing batches of batchSize rows.
+	 */
+	public RecordExtractor batchSize(int batchSize) {
+		return new RecordExtractor(pattern, columns, batchSize);
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	public int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Extracts a row for every match of the pattern in text and passes the batches to sink, the last one possibly not full.
+	 *
+	 * @return the number of rows
+	 * @throws NumberFormatException if an int column's group is not an int
+	 * @throws IllegalArgumentException if an enum column's group is not the name of a constant, or a column has no group
+	 */
+	public long extract(CharSequence text, Consumer<Batch> sink) {
+		Matcher matcher = pattern.matcher(text);
+		Batch batch = new Batch(this);
+		while(matcher.find())
+			add(batch, matcher, text, sink);
+		return flush(batch, sink);
+	}
+
+	/**
+	 * Extracts a row for every record in which the pattern is found, from its first match, and passes the batches to sink. Records
+	 * without a match are skipped, Batch.skipped() counts them.
+	 *
+	 * @return the number of rows
+	 */
+	public long extract(Iterable<? extends CharSequence> records, Consumer<Batch> sink) {
+		Matcher matcher = pattern.matcher("");
+		Batch batch = new Batch(this);
+		for(CharSequence record: records) {
+			if(matcher.reset(record).find())
+				add(batch, matcher, record, sink);
+			else
+				batch.skipped++;
+		}
+		return flush(batch, sink);
+	}
+
+	private void add(Batch batch, Matcher matcher, CharSequence input, Consumer<Batch> sink) {
+		int row = batch.size;
+		for(int c=0;c<batch.columns.length;c++) {
+			String group = columns.get(c).name;
+			batch.columns[c].set(row, input, matcher.start(group), matcher.end(group));
+		}
+		if(++batch.size == batchSize) {
+			sink.accept(batch);
+			batch.clear();
+		}
+	}
+
+	private long flush(Batch batch, Consumer<Batch> sink) {
+		if(batch.size > 0 || batch.skipped > 0)
+			sink.accept(batch);
+		return batch.firstRow + batch.size;
+	}
+
+	private RecordExtractor with(ColumnSpec column) {
+		for(ColumnSpec c: columns)
+			if(c.name.equals(column.name))
+				throw new IllegalArgumentException("duplicate column: " + column.name);
+		List<ColumnSpec> columns = new ArrayList<ColumnSpec>(this.columns);
+		columns.add(column);
+		return new RecordExtractor(pattern, Collections.unmodifiableList(columns), batchSize);
+	}
+
+
+	private static final class ColumnSpec {
+		final String name;			// of the column and its group
+		final Class<?> type;		// null for int, String.class or the enum class
+
+		ColumnSpec(String name, Class<?> type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		Column newColumn(int capacity) {
+			if(type == null)
+				return new IntColumn(name, capacity);
+			if(type == String.class)
+				return new StringColumn(name, capacity);
+			return new EnumColumn<>(name, capacity, type.getEnumConstants());
+		}
+	}
+
+
+	/**
+	 * Up to batchSize rows, one column per column of the extractor in the order they were added. Reused for the next rows after
+	 * the sink returns.
+	 */
+	public static final class Batch {
+		private final Column[] columns;
+		private int size;
+		private long firstRow;
+		private long skipped;
+
+		private Batch(RecordExtractor extractor) {
+			this.columns = new Column[extractor.columns.size()];
+			for(int c=0;c<columns.length;c++)
+				columns[c] = extractor.columns.get(c).newColumn(extractor.batchSize);
+		}
+
+		/**
+		 * Number of rows in this batch.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Row number of this batch's first row among all rows of the extraction.
+		 */
+		public long firstRow() {
+			return firstRow;
+		}
+
+		/**
+		 * Records without a match since the previous batch, 0 when extracting from a text.
+		 */
+		public long skipped() {
+			return skipped;
+		}
+
+		public Column column(int index) {
+			return columns[index];
+		}
+
+		public Column column(String name) {
+			for(Column column: columns)
+				if(column.name.equals(name))
+					return column;
+			throw new IllegalArgumentException("no column " + name);
+		}
+
+		public IntColumn ints(String name) {
+			return (IntColumn) column(name);
+		}
+
+		public StringColumn strings(String name) {
+			return (StringColumn) column(name);
+		}
+
+		@SuppressWarnings("unchecked")
+		public <E extends Enum<E>> EnumColumn<E> enums(String name, Class<E> type) {
+			EnumColumn<?> column = (EnumColumn<?>) column(name);
+			if(column.constants.getClass().getComponentType() != type)
+				throw new ClassCastException(name + " is not a column of " + type.getName());
+			return (EnumColumn<E>) column;
+		}
+
+		private void clear() {
+			firstRow += size;
+			size = 0;
+			skipped = 0;
+			for(Column column: columns)
+				column.clear();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("Batch[rows " + firstRow + ".." + (firstRow + size));
+			for(Column column: columns)
+				sb.append(", ").append(column.name);
+			return sb.append("]").toString();
+		}
+	}
+
+
+	/**
+	 * Values of one field for the rows of a batch, the arrays may be longer than the batch.
+	 */
+	public abstract static class Column {
+		private final String name;
+		final long[] nulls;
+		int size;
+
+		Column(String name, int capacity) {
+			this.name = name;
+			this.nulls = new long[(capacity + 63) >>> 6];
+		}
+
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * True when the group of the column didn't take part in the row's match.
+		 */
+		public boolean isNull(int row) {
+			return (nulls[row >>> 6] & 1L << row) != 0;
+		}
+
+		/**
+		 * The null bitmap, bit row % 64 of long row / 64 is set for a null.
+		 */
+		public long[] nulls() {
+			return nulls;
+		}
+
+		/**
+		 * The row's value as an Object, for printing and tests. The typed accessors don't allocate.
+		 */
+		public abstract Object get(int row);
+
+		/**
+		 * Number of rows, the same as Batch.size().
+		 */
+		public int size() {
+			return size;
+		}
+
+		final void set(int row, CharSequence input, int start, int end) {
+			if(start < 0) {
+				nulls[row >>> 6] |= 1L << row;
+				setNull(row);
+			}
+			else {
+				setValue(row, input, start, end);
+			}
+			size = row + 1;
+		}
+
+		abstract void setValue(int row, CharSequence input, int start, int end);
+
+		abstract void setNull(int row);
+
+		void clear() {
+			Arrays.fill(nulls, 0, (size + 63) >>> 6, 0);
+			size = 0;
+		}
+	}
+
+	public static final class IntColumn extends Column {
+		private final int[] values;
+
+		IntColumn(String name, int capacity) {
+			super(name, capacity);
+			this.values = new int[capacity];
+		}
+
+		/**
+		 * The values by row, 0 for a null.
+		 */
+		public int[] values() {
+			return values;
+		}
+
+		public int getInt(int row) {
+			return values[row];
+		}
+
+		/**
+		 * Sum of the values of the rows, nulls count as 0.
+		 */
+		public long sum() {
+			long sum = 0;
+			for(int row=0;row<size;row++)
+				sum += values[row];
+			return sum;
+		}
+
+		@Override
+		public Object get(int row) {
+			return isNull(row) ? null : values[row];
+		}
+
+		@Override
+		void setValue(int row, CharSequence input, int start, int end) {
+			values[row] = parseInt(input, start, end);
+		}
+
+		@Override
+		void setNull(int row) {
+			values[row] = 0;
+		}
+
+		/**
+		 * Integer.parseInt() of the chars between start and end, without making a String of them.
+		 */
+		static int parseInt(CharSequence input, int start, int end) {
+			int i = start;
+			boolean negative = i < end && input.charAt(i) == '-';
+			if(i < end && (negative || input.charAt(i) == '+'))
+				i++;
+			if(i == end)
+				throw new NumberFormatException("not an int: \"" + input.subSequence(start, end) + "\"");
+			long value = 0;
+			for(;i<end;i++) {
+				int digit = input.charAt(i) - '0';
+				if(digit < 0 || digit > 9)
+					throw new NumberFormatException("not an int: \"" + input.subSequence(start, end) + "\"");
+				value = value * 10 + digit;
+				if(value > Integer.MAX_VALUE + 1L)
+					throw new NumberFormatException("out of int range: \"" + input.subSequence(start, end) + "\"");
+			}
+			if(!negative && value > Integer.MAX_VALUE)
+				throw new NumberFormatException("out of int range: \"" + input.subSequence(start, end) + "\"");
+			return (int) (negative ? -value : value);
+		}
+	}
+
+	public static final class StringColumn extends Column {
+		private final int[] offsets;
+		private byte[] bytes;
+
+		StringColumn(String name, int capacity) {
+			super(name, capacity);
+			this.offsets = new int[capacity + 1];
+			this.bytes = new byte[16 * capacity];
+		}
+
+		/**
+		 * Start of every row's UTF-8 bytes in bytes(), offsets[size] is the end of the last row.
+		 */
+		public int[] offsets() {
+			return offsets;
+		}
+
+		/**
+		 * UTF-8 bytes of all rows, back to back. Grows (is replaced) when a batch doesn't fit.
+		 */
+		public byte[] bytes() {
+			return bytes;
+		}
+
+		/**
+		 * The row's value without decoding it, a view of bytes().
+		 */
+		public Utf8CharSequence view(int row) {
+			return Utf8CharSequence.of(bytes, offsets[row], offsets[row + 1] - offsets[row]);
+		}
+
+		/**
+		 * True if the row holds s, compared without decoding the row.
+		 */
+		public boolean contentEquals(int row, CharSequence s) {
+			int at = offsets[row];
+			int end = offsets[row + 1];
+			for(int i=0;i<s.length();i++) {
+				char c = s.charAt(i);
+				if(c >= 0x80)
+					return !isNull(row) && view(row).toString().contentEquals(s);
+				if(at == end || bytes[at++] != c)
+					return false;
+			}
+			return at == end && !isNull(row);
+		}
+
+		@Override
+		public String get(int row) {
+			return isNull(row) ? null : view(row).toString();
+		}
+
+		@Override
+		void setValue(int row, CharSequence input, int start, int end) {
+			int at = offsets[row];
+			if(bytes.length - at < 3 * (end - start))		// 3 bytes at most per char, a surrogate pair is 4 for 2 chars
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, at + 3 * (end - start)));
+			for(int i=start;i<end;i++) {
+				char c = input.charAt(i);
+				if(c < 0x80) {
+					bytes[at++] = (byte) c;
+				}
+				else if(c < 0x800) {
+					bytes[at++] = (byte) (0xC0 | c >> 6);
+					bytes[at++] = (byte) (0x80 | c & 0x3F);
+				}
+				else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(input.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, input.charAt(++i));
+					bytes[at++] = (byte) (0xF0 | codePoint >> 18);
+					bytes[at++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+					bytes[at++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+					bytes[at++] = (byte) (0x80 | codePoint & 0x3F);
+				}
+				else if(Character.isSurrogate(c)) {
+					bytes[at++] = '?';		// a lone surrogate, what String.getBytes(UTF_8) writes for it
+				}
+				else {
+					bytes[at++] = (byte) (0xE0 | c >> 12);
+					bytes[at++] = (byte) (0x80 | c >> 6 & 0x3F);
+					bytes[at++] = (byte) (0x80 | c & 0x3F);
+				}
+			}
+			offsets[row + 1] = at;
+		}
+
+		@Override
+		void setNull(int row) {
+			offsets[row + 1] = offsets[row];
+		}
+
+		@Override
+		void clear() {
+			super.clear();
+			offsets[0] = 0;
+		}
+	}
+
+	public static final class EnumColumn<E extends Enum<E>> extends Column {
+		private final E[] constants;
+		private final int[] ordinals;
+
+		@SuppressWarnings("unchecked")
+		EnumColumn(String name, int capacity, Object[] constants) {
+			super(name, capacity);
+			this.constants = (E[]) constants;
+			this.ordinals = new int[capacity];
+		}
+
+		/**
+		 * Ordinals by row, -1 for a null.
+		 */
+		public int[] ordinals() {
+			return ordinals;
+		}
+
+		@Override
+		public E get(int row) {
+			return ordinals[row] < 0 ? null : constants[ordinals[row]];
+		}
+
+		@Override
+		void setValue(int row, CharSequence input, int start, int end) {
+			for(E constant: constants) {
+				String name = constant.name();
+				if(name.length() == end - start && regionEquals(name, input, start)) {
+					ordinals[row] = constant.ordinal();
+					return;
+				}
+			}
+			throw new IllegalArgumentException("no " + constants.getClass().getComponentType().getSimpleName() + " constant "
+					+ input.subSequence(start, end));
+		}
+
+		@Override
+		void setNull(int row) {
+			ordinals[row] = -1;
+		}
+
+		private static boolean regionEquals(String name, CharSequence input, int start) {
+			for(int i=0;i<name.length();i++)
+				if(name.charAt(i) != input.charAt(start + i))
+					return false;
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Total request time per log level over 200k log lines: a find() loop that makes a record object per line (level enum, service
+ * String, time Integer) and sums them up afterwards, against RecordExtractor writing int and byte columns that are summed batch
+ * by batch. Run with the gc profiler (main() does) to compare the bytes allocated per op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordExtractorBenchmark {
+
+	enum Level {INFO, WARN, ERROR}
+
+	private static final String REGEX = "(?<level>INFO|WARN|ERROR) \\[(?<service>\\w+)\\] request \\d+ took (?<millis>\\d+)ms";
+
+	private String log;
+	private Pattern pattern;
+	private RecordExtractor extractor;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(RecordExtractorBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		String[] services = {"auth", "billing", "search", "gateway"};
+		Random random = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<200_000;i++) {
+			sb.append(Level.values()[random.nextInt(3)]).append(" [").append(services[random.nextInt(services.length)])
+					.append("] request ").append(i).append(" took ").append(random.nextInt(1000)).append("ms\n");
+		}
+		log = sb.toString();
+		pattern = Pattern.compile(REGEX);
+		extractor = RecordExtractor.compile(pattern)
+				.enumColumn("level", Level.class)
+				.stringColumn("service")
+				.intColumn("millis");
+	}
+
+	@Benchmark
+	public long[] objects() {
+		List<Entry> entries = new ArrayList<Entry>();
+		Matcher matcher = pattern.matcher(log);
+		while(matcher.find())
+			entries.add(new Entry(Level.valueOf(matcher.group("level")), matcher.group("service"),
+					Integer.parseInt(matcher.group("millis"))));
+		long[] totals = new long[Level.values().length];
+		for(Entry entry: entries)
+			totals[entry.level.ordinal()] += entry.millis;
+		return totals;
+	}
+
+	@Benchmark
+	public long[] columns() {
+		long[] totals = new long[Level.values().length];
+		extractor.extract(log, batch -> {
+			int[] levels = batch.enums("level", Level.class).ordinals();
+			int[] millis = batch.ints("millis").values();
+			for(int row=0;row<batch.size();row++)
+				totals[levels[row]] += millis[row];
+		});
+		return totals;
+	}
+
+
+	private static final class Entry {
+		final Level level;
+		final String service;
+		final int millis;
+
+		Entry(Level level, String service, int millis) {
+			this.level = level;
+			this.service = service;
+			this.millis = millis;
+		}
+	}
+
+}
@@ -0,0 +1,197 @@
+package concept.regex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for the claims made across this package, the main one being "compile once, re-use many times".
+ *
+ * Each pair of benchmarks does the same work in the usual way (String methods that compile the pattern on every call) and in the
+ * efficient way (a Pattern compiled once and a Matcher reset for every input). Results are reported in ops/s and, since the gc
+ * profiler is added, in bytes allocated per op (look for 'gc.alloc.rate.norm' in the output).
+ *
+ * 1. stringMatches vs matcherReset vs matcherNew vs matcherPool vs patternCacheMatches : RegexEvalSpeedCompare, 100 strings
+ * 		against one regex. matcherPool should show 0 B/op where matcherNew allocates a Matcher per input.
+ * 2. stringSplit vs patternSplit vs tokenizer			: StringMethodsRegex, splitting an email id on "@|\\.". tokenizer
+ * 		should show 0 B/op.
+ * 3. stringReplaceAll vs matcherReplaceAll vs matcherReplaceAllLambda	: CommonRegexApplications.csvToTsv
+ *
+ * Run main() or, from the command line: java -cp target/classes:[jmh jars] org.openjdk.jmh.Main RegexBenchmark -prof gc
+ * Reference: https://github.com/openjdk/jmh/tree/master/jmh-samples
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexBenchmark {
+
+	private static final String EMAIL = "greenstar180@gmail.com";
+	private static final String EMAIL_SPLIT = "@|\\.";
+	private static final String CSV = "Luka,Marcelo,Sergio,Cristiano,Karim,Toni";
+	private static final String JSON = "{id:12,name:\"Marcelo\",position:\"LB\",playing11:true,nationality:\"Brazil\"}";
+	private static final String JSON_PAIR = "\\{?(\\w+):(\\\"?\\w+\\\"?),?\\}?";
+	private static final String XML_TEMPLATE = "<varName>$1</varName><value>$2</value>";
+
+	private Pattern pattern;
+	private Matcher matcher;
+	private MatcherPool matcherPool;
+	private InstrumentedPattern instrumented;
+	private Pattern splitPattern;
+	private Tokenizer.Cursor tokenizer;
+	private Matcher csvMatcher;
+	private Matcher jsonMatcher;
+	private Replacement toXml;
+	private StringBuilder xml;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(RegexBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		pattern = Pattern.compile(RegexEvalSpeedCompare.REGEX);
+		matcher = pattern.matcher("");
+		matcherPool = new MatcherPool(pattern);
+		instrumented = new InstrumentedPattern(pattern, new RegexMetrics(), InstrumentedPattern.DEFAULT_SAMPLE_INTERVAL);
+		splitPattern = Pattern.compile(EMAIL_SPLIT);
+		tokenizer = Tokenizer.compile(EMAIL_SPLIT).cursor();
+		csvMatcher = Pattern.compile(",").matcher("");
+		jsonMatcher = Pattern.compile(JSON_PAIR).matcher("");
+		toXml = Replacement.compile(XML_TEMPLATE, Pattern.compile(JSON_PAIR));
+		xml = new StringBuilder();
+	}
+
+
+	// matches
+
+	@Benchmark
+	public int stringMatches() {
+		return RegexEvalSpeedCompare.usualWay(RegexEvalSpeedCompare.STRINGS, RegexEvalSpeedCompare.REGEX);
+	}
+
+	@Benchmark
+	public int matcherReset() {
+		return RegexEvalSpeedCompare.efficientWay(RegexEvalSpeedCompare.STRINGS, matcher);
+	}
+
+	@Benchmark
+	public int matcherNew() {	// pattern is compiled once but a new Matcher is created per input
+		int count = 0;
+		for(String s: RegexEvalSpeedCompare.STRINGS)
+			if(pattern.matcher(s).matches())
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	public int matcherPool() {	// thread safe like matcherNew but re-uses the calling thread's Matcher
+		int count = 0;
+		for(String s: RegexEvalSpeedCompare.STRINGS)
+			if(matcherPool.matches(s))
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	public int instrumentedPattern() {	// matcherPool plus counters, and timing of every 256th call
+		int count = 0;
+		for(String s: RegexEvalSpeedCompare.STRINGS)
+			if(instrumented.matches(s))
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	public int patternCacheMatches() {	// regex looked up in PatternCache on every call, as a service with dynamic patterns would
+		int count = 0;
+		for(String s: RegexEvalSpeedCompare.STRINGS)
+			if(PatternCache.matches(RegexEvalSpeedCompare.REGEX, s))
+				count++;
+		return count;
+	}
+
+
+	// split
+
+	@Benchmark
+	public String[] stringSplit() {
+		return EMAIL.split(EMAIL_SPLIT);
+	}
+
+	@Benchmark
+	public String[] patternSplit() {
+		return splitPattern.split(EMAIL);
+	}
+
+	@Benchmark
+	public int tokenizer() {	// offsets only, what a parser reading the tokens in place needs
+		int sum = 0;
+		tokenizer.reset(EMAIL);
+		while(tokenizer.next())
+			sum += tokenizer.end() - tokenizer.start();
+		return sum;
+	}
+
+
+	// replaceAll
+
+	@Benchmark
+	public String stringReplaceAll() {
+		return CSV.replaceAll(",", "\t");
+	}
+
+	@Benchmark
+	public String matcherReplaceAll() {
+		return csvMatcher.reset(CSV).replaceAll("\t");
+	}
+
+	@Benchmark
+	public String matcherReplaceAllLambda() {
+		return csvMatcher.reset(CSV).replaceAll(m -> "\t");
+	}
+
+	@Benchmark
+	public String jsonToXmlMatcher() {
+		return jsonMatcher.reset(JSON).replaceAll(XML_TEMPLATE);
+	}
+
+	@Benchmark
+	public String jsonToXmlReplacement() {
+		return toXml.replaceAll(JSON);
+	}
+
+	@Benchmark
+	public String jsonToXmlStreaming() {
+		return JsonToXml.plain().convert(JSON);
+	}
+
+	@Benchmark
+	public StringBuilder jsonToXmlReplacementReused() {
+		xml.setLength(0);
+		return toXml.replaceAll(JSON, xml);
+	}
+
+}
@@ -3,6 +3,12 @@ package concept.regex;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
 /**
  * Regex is a whole string parser engine in itself that works on a given string to look for a pattern that we have described using
  * regex constructs. Like any regular programming language in regex also the pattern can be interpreted or compiled before it gets
@@ -12,6 +18,8 @@ import java.util.regex.Pattern;
  * at every change they make to regex pattern in pattern box. From user experience perspective having to compile the pattern and run
  * would have been a lot time taking and so is not apt in such use cases. Whereas in Java where performance is priority compiling is
  * significantly better.
+ * The other half of such a tool is re-running the pattern after every edit of the text, IncrementalMatcher does that over the part
+ * of the text the edit can change instead of the whole text.
  * 
  * Anywhere in Java where the string argument supports regex, the call can be traced back to methods of Matcher class.
  * For ex: "some str".matches("regex") 
@@ -29,75 +37,80 @@ import java.util.regex.Pattern;
  */
 public class RegexEvalSpeedCompare {
 
+	// 100 random strings
+	static final String[] STRINGS = {"oyypplb", "xmnff%n", "jdtx", "jgqlhw%t", "ukaqb", "jccpi", "sgwc", "fyo%x", "x#", "gwmne", 
+			"uni&", "jciwy", "gkmpk", "efrd%du", "nubnhrva", "mojag%ff", "ctg&h", "nvkkya", "ekmp&cs", "ttad%h", 
+			"qjpxiok", "eyl", "mabd", "rghtk&ss", "fam", "pwxswh&b", "drwlnfu", "sifc&m", "wdutrs", "rb%c", 
+			"c%r", "ndmce%", "cvvfa%f", "ymex&bm", "&a", "fvpg", "pp&m", "nwsh&", "vft%ln", "sg%o", 
+			"xwiv#bx", "qfx", "vvkqss", "vpebmmd", "er%m", "vxrt", "clksvd", "twgo%k", "camaxvkon", "div", 
+			"fxdvi#", "oknjic&", "aqn", "upxo&", "mhfr%d", "kj#h", "ffj%om", "ekayvgbhr", "r&", "x&js", 
+			"eee&", "mw", "tigkm#", "o", "sv%", "p", "kbck", "dbsyf", "yd&u", "ddasjdsad&dsjda##jhdajsd%jnjsad%",  
+			"hdkbr", "qyc", "pl", "q", "xfsrx", "m%", "kltdx", "edgy&sr", "bkfdk%it", "h", 
+			"bqlqa", "eo&", "be%q", "gghf", "vad", "rrhv", "qniy", "q", "qn&wi", "wapx%kf", 
+			"egtxra%u", "mjo&b", "sr", "vlyet&g", "tykdnxg%tj", "acbub", "qjrku", "iax&or", "nau", "dmrdt" };
+	
+	// regex to match. Returns true if the string contains any of '%', '#', '&' else returns false.
+	static final String REGEX = "([a-z]*[%#&]+[a-z]*)+";
+
 	/**
 	 * Given 100 Strings, count the number of strings that has at least one special character.
 	 * Where special characters to be considered are '%', '#', '&'. 
+	 * 
+	 * Timing the two ways with System.currentTimeMillis() around a loop mostly measures console I/O and JIT warm-up rather than
+	 * regex evaluation, and for fast runs the difference rounds down to 0 milliseconds. So here we only check that both ways agree
+	 * and then hand over the timing to JMH which warms up the JVM, measures ops/s and, with the gc profiler, the bytes allocated per
+	 * op. Run RegexBenchmark for the full set (split, replaceAll, etc).
 	 */
-	public static void main(String[] args) {
-		
-		// 100 random strings
-		String[] arr = {"oyypplb", "xmnff%n", "jdtx", "jgqlhw%t", "ukaqb", "jccpi", "sgwc", "fyo%x", "x#", "gwmne", 
-				"uni&", "jciwy", "gkmpk", "efrd%du", "nubnhrva", "mojag%ff", "ctg&h", "nvkkya", "ekmp&cs", "ttad%h", 
-				"qjpxiok", "eyl", "mabd", "rghtk&ss", "fam", "pwxswh&b", "drwlnfu", "sifc&m", "wdutrs", "rb%c", 
-				"c%r", "ndmce%", "cvvfa%f", "ymex&bm", "&a", "fvpg", "pp&m", "nwsh&", "vft%ln", "sg%o", 
-				"xwiv#bx", "qfx", "vvkqss", "vpebmmd", "er%m", "vxrt", "clksvd", "twgo%k", "camaxvkon", "div", 
-				"fxdvi#", "oknjic&", "aqn", "upxo&", "mhfr%d", "kj#h", "ffj%om", "ekayvgbhr", "r&", "x&js", 
-				"eee&", "mw", "tigkm#", "o", "sv%", "p", "kbck", "dbsyf", "yd&u", "ddasjdsad&dsjda##jhdajsd%jnjsad%",  
-				"hdkbr", "qyc", "pl", "q", "xfsrx", "m%", "kltdx", "edgy&sr", "bkfdk%it", "h", 
-				"bqlqa", "eo&", "be%q", "gghf", "vad", "rrhv", "qniy", "q", "qn&wi", "wapx%kf", 
-				"egtxra%u", "mjo&b", "sr", "vlyet&g", "tykdnxg%tj", "acbub", "qjrku", "iax&or", "nau", "dmrdt" };
-		
-		
-		// regex to match. Returns true if the string contains any of '%', '#', '&' else returns false.
-		String regex = "([a-z]*[%#&]+[a-z]*)+";
-		
-		
-		// Using str.matches(regex)
-		long start = System.currentTimeMillis();
-		usualWay(arr, regex);	// function call Usual way
-		long end = System.currentTimeMillis();
-		long usualWay = end-start;
-		
-		// Using matcher.matches()
-		start = System.currentTimeMillis();
-		efficientWay(arr, regex);	// function call Efficient way
-		end = System.currentTimeMillis();
-		long efficientWay = end-start;
+	public static void main(String[] args) throws RunnerException {
 		
-		System.out.println("Usual way time taken: " + usualWay + " milliseconds");
-		System.out.println("Efficient way time taken: " + efficientWay + " milliseconds");
-		System.out.println("Difference: " + (usualWay-efficientWay) + " milliseconds");
-		System.out.println("Efficient way is atleast " + (usualWay/efficientWay) + " times faster than Usual way in this case");
+		System.out.println("Usual way count: " + usualWay(STRINGS, REGEX));
+		System.out.println("Efficient way count: " + efficientWay(STRINGS, REGEX));
+		System.out.println("Instrumented way count: " + instrumentedWay(STRINGS, REGEX));
+		System.out.print(RegexMetrics.shared().dump());	// where the regex time went, per pattern
 		
+		Options options = new OptionsBuilder()
+				.include(RegexBenchmark.class.getSimpleName() + ".(stringMatches|matcherReset)$")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
 	}
 
 	
-	private static void usualWay(String[] arr, String regex) {
-		// we run the same computation 10k times
-		for(int i=0;i<10*1000;i++) {
-			int count = 0;
-			for(String s: arr)
-				if(s.matches(regex))	// here every call to matches() requires to compile the pattern 
-					count++;
-					
-			System.out.println(count);	// hence total number of times pattern compiled here is 10k*100 = 1 Million times
-		}
+	static int usualWay(String[] arr, String regex) {
+		int count = 0;
+		for(String s: arr)
+			if(s.matches(regex))	// here every call to matches() requires to compile the pattern 
+				count++;			// hence total number of times pattern compiled here is 100 times
+		return count;
 	}
 
-	private static void efficientWay(String[] arr, String regex) {
+	static int efficientWay(String[] arr, String regex) {
 		Pattern pattern = Pattern.compile(regex);
 		Matcher matcher = pattern.matcher("");
-		
-		// we run the same computation 10k times
-		for(int i=0;i<10*1000;i++) {
-			int count = 0;
-			for(String s: arr) {
-				matcher.reset(s);		// just reset the string to be matched
-				if(matcher.matches())	// here the already compiled pattern is being re-used
-					count++;
-			}
-			System.out.println(count);	// hence total number of times pattern compiled here is exactly 1 time.
+		return efficientWay(arr, matcher);
+	}
+
+	/**
+	 * Same as efficientWay, with the pattern's calls, hits and (for every 256th call) time and chars read recorded in RegexMetrics.
+	 * In an application with many patterns that tells which ones cost the most, without timing code around the loops.
+	 */
+	static int instrumentedWay(String[] arr, String regex) {
+		InstrumentedPattern pattern = InstrumentedPattern.compile(regex);
+		int count = 0;
+		for(String s: arr)
+			if(pattern.matches(s))
+				count++;
+		return count;
+	}
+
+	static int efficientWay(String[] arr, Matcher matcher) {
+		int count = 0;
+		for(String s: arr) {
+			matcher.reset(s);		// just reset the string to be matched
+			if(matcher.matches())	// here the already compiled pattern is being re-used
+				count++;
 		}
+		return count;				// hence total number of times pattern compiled here is exactly 1 time.
 	}
 
 }
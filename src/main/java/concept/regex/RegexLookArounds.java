@@ -1,5 +1,7 @@
 package concept.regex;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -57,6 +59,9 @@ public class RegexLookArounds {
 		// negative look behind example
 		NegativeLookBehind();
 		
+		// the same validations over a whole batch of records
+		batchValidation();
+		
 	}
 
 	/**
@@ -239,4 +244,18 @@ public class RegexLookArounds {
 		}
 	}
 
+	/**
+	 * The phone number and file name checks above, plus the e-mail check of StringMethodsRegex, on a batch of records at once.
+	 * BatchValidator runs the batches on a thread pool and returns one bit per record and validator.
+	 */
+	private static void batchValidation() {
+		List<String> records = Arrays.asList("919740467017", "46160861608", "greenstar180@gmail.com", "tulips.jpg", "beat it.mp3");
+		BatchValidator validator = BatchValidator.common();
+		BatchValidator.Results results = validator.validate(records);
+		for(int i=0;i<results.size();i++) {
+			System.out.println(records.get(i) + "\t phone: " + results.passed(i, "phone") + ", email: " + results.passed(i, "email")
+					+ ", fileName: " + results.passed(i, "fileName"));
+		}
+	}
+
 }
@@ -0,0 +1,341 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Metrics of every pattern used through InstrumentedPattern, by (regex, flags): how often it was compiled, called and matched and,
+ * for the sampled calls, how long a call took and how many chars it read. Timing everything with currentTimeMillis() around a loop
+ * (what RegexEvalSpeedCompare used to do) tells nothing about which of many patterns in a running application costs the most,
+ * these metrics do: snapshot() lists the patterns by estimated total time, the mean time of a sampled call times the number of
+ * calls, and dump() prints that list as a table.
+ *
+ * The same numbers are available in Java Flight Recorder:
+ * 1. concept.regex.Stats, a periodic event (every 10s by default) with one event per pattern. Enabled by default, it costs nothing
+ * 		unless a recording runs.
+ * 2. concept.regex.Match, one event per sampled call with its duration and chars read. Disabled by default, enable it in the
+ * 		recording settings (jfr configure, or -XX:StartFlightRecording:settings=...) with a threshold to catch the slow calls.
+ *
+ * Thread safe. Counters are LongAdders and Histograms, cheap to update from many threads.
+ */
+public class RegexMetrics {
+
+	private static final RegexMetrics SHARED = new RegexMetrics();
+
+	static {
+		FlightRecorder.addPeriodicEvent(StatsEvent.class, () -> {
+			for(Snapshot snapshot: SHARED.snapshot())
+				new StatsEvent(snapshot).commit();
+		});
+	}
+
+	private final ConcurrentMap<Key, Stats> stats = new ConcurrentHashMap<Key, Stats>();
+
+	/**
+	 * The metrics InstrumentedPattern.compile() records to, the ones exported to JFR.
+	 */
+	public static RegexMetrics shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Stats of the given pattern, created on first use.
+	 */
+	public Stats stats(String regex, int flags) {
+		return stats.computeIfAbsent(new Key(regex, flags), key -> new Stats(regex, flags));
+	}
+
+	/**
+	 * Current numbers of every pattern, the most expensive (by estimated total time) first. Approximate while other threads are
+	 * matching.
+	 */
+	public List<Snapshot> snapshot() {
+		List<Snapshot> snapshots = new ArrayList<Snapshot>();
+		for(Stats s: stats.values())
+			snapshots.add(s.snapshot());
+		snapshots.sort(Comparator.comparingDouble(Snapshot::estimatedTotalNanos).reversed());
+		return snapshots;
+	}
+
+	/**
+	 * snapshot() as a plain text table, one line per pattern.
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder(String.format("%12s %10s %8s %7s %9s %9s %9s %9s %9s  %s%n", "est.total ms", "calls",
+				"compiles", "hit %", "sampled", "mean ns", "p99 ns", "max ns", "chars p99", "regex"));
+		for(Snapshot s: snapshot()) {
+			sb.append(String.format("%12.3f %10d %8d %7.1f %9d %9.0f %9d %9d %9d  %s%n", s.estimatedTotalNanos() / 1e6, s.callCount(),
+					s.compileCount(), 100 * s.hitRatio(), s.sampledCount(), s.meanNanos(), s.p99Nanos(), s.maxNanos(), s.p99Chars(),
+					s.flags() == 0 ? s.regex() : s.regex() + " (flags " + s.flags() + ")"));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Forgets all patterns.
+	 */
+	public void clear() {
+		stats.clear();
+	}
+
+
+	/**
+	 * Live counters of one pattern.
+	 */
+	public static final class Stats {
+		private final String regex;
+		private final int flags;
+		private final LongAdder compiles = new LongAdder();
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder tests = new LongAdder();		// matches() and find() calls, the ones with a hit or miss
+		private final LongAdder hits = new LongAdder();
+		private final Histogram nanos = new Histogram();
+		private final Histogram chars = new Histogram();
+
+		Stats(String regex, int flags) {
+			this.regex = regex;
+			this.flags = flags;
+		}
+
+		void compiled() {
+			compiles.increment();
+		}
+
+		void called() {
+			calls.increment();
+		}
+
+		void tested(boolean hit) {
+			tests.increment();
+			if(hit)
+				hits.increment();
+		}
+
+		void sampled(long nanos, long chars) {
+			this.nanos.record(nanos);
+			this.chars.record(chars);
+		}
+
+		/**
+		 * Duration of the sampled calls in nanos.
+		 */
+		public Histogram nanos() {
+			return nanos;
+		}
+
+		/**
+		 * Chars read by the sampled calls.
+		 */
+		public Histogram chars() {
+			return chars;
+		}
+
+		public Snapshot snapshot() {
+			long testCount = tests.sum();
+			return new Snapshot(regex, flags, compiles.sum(), calls.sum(), testCount == 0 ? 0 : (double) hits.sum() / testCount,
+					nanos.count(), nanos.mean(), nanos.percentile(99), nanos.max(), chars.mean(), chars.percentile(99));
+		}
+	}
+
+
+	/**
+	 * Numbers of one pattern at one point in time.
+	 */
+	public static final class Snapshot {
+		private final String regex;
+		private final int flags;
+		private final long compileCount;
+		private final long callCount;
+		private final double hitRatio;
+		private final long sampledCount;
+		private final double meanNanos;
+		private final long p99Nanos;
+		private final long maxNanos;
+		private final double meanChars;
+		private final long p99Chars;
+
+		Snapshot(String regex, int flags, long compileCount, long callCount, double hitRatio, long sampledCount, double meanNanos,
+				long p99Nanos, long maxNanos, double meanChars, long p99Chars) {
+			this.regex = regex;
+			this.flags = flags;
+			this.compileCount = compileCount;
+			this.callCount = callCount;
+			this.hitRatio = hitRatio;
+			this.sampledCount = sampledCount;
+			this.meanNanos = meanNanos;
+			this.p99Nanos = p99Nanos;
+			this.maxNanos = maxNanos;
+			this.meanChars = meanChars;
+			this.p99Chars = p99Chars;
+		}
+
+		public String regex() {
+			return regex;
+		}
+
+		public int flags() {
+			return flags;
+		}
+
+		/**
+		 * Number of InstrumentedPattern.compile() calls for the pattern, compiles in a loop show up here.
+		 */
+		public long compileCount() {
+			return compileCount;
+		}
+
+		public long callCount() {
+			return callCount;
+		}
+
+		/**
+		 * Share of matches() and find() calls that matched, 0 to 1.
+		 */
+		public double hitRatio() {
+			return hitRatio;
+		}
+
+		public long sampledCount() {
+			return sampledCount;
+		}
+
+		public double meanNanos() {
+			return meanNanos;
+		}
+
+		public long p99Nanos() {
+			return p99Nanos;
+		}
+
+		public long maxNanos() {
+			return maxNanos;
+		}
+
+		public double meanChars() {
+			return meanChars;
+		}
+
+		public long p99Chars() {
+			return p99Chars;
+		}
+
+		/**
+		 * Mean time of a sampled call times the number of calls.
+		 */
+		public double estimatedTotalNanos() {
+			return meanNanos * callCount;
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot[" + regex + ", calls=" + callCount + ", compiles=" + compileCount + ", hitRatio=" + hitRatio + ", mean="
+					+ Math.round(meanNanos) + "ns, p99=" + p99Nanos + "ns, chars p99=" + p99Chars + "]";
+		}
+	}
+
+
+	private static final class Key {
+		private final String regex;
+		private final int flags;
+
+		Key(String regex, int flags) {
+			this.regex = Objects.requireNonNull(regex, "regex");
+			this.flags = flags;
+		}
+
+		@Override
+		public int hashCode() {
+			return regex.hashCode() * 31 + flags;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return flags == other.flags && regex.equals(other.regex);
+		}
+	}
+
+
+	@Name("concept.regex.Match")
+	@Label("Regex Match")
+	@Category("Regex")
+	@Description("A sampled call of an InstrumentedPattern")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class MatchEvent extends Event {
+		@Label("Regex")
+		String regex;
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Chars Read")
+		@DataAmount(DataAmount.BYTES)
+		long chars;
+	}
+
+	@Name("concept.regex.Stats")
+	@Label("Regex Statistics")
+	@Category("Regex")
+	@Description("Counters of one pattern used through InstrumentedPattern")
+	@Period("10 s")
+	@StackTrace(false)
+	static final class StatsEvent extends Event {
+		@Label("Regex")
+		String regex;
+
+		@Label("Flags")
+		int flags;
+
+		@Label("Compiles")
+		long compiles;
+
+		@Label("Calls")
+		long calls;
+
+		@Label("Hit Ratio")
+		double hitRatio;
+
+		@Label("Mean")
+		@Timespan(Timespan.NANOSECONDS)
+		long meanNanos;
+
+		@Label("P99")
+		@Timespan(Timespan.NANOSECONDS)
+		long p99Nanos;
+
+		@Label("Chars Read P99")
+		long p99Chars;
+
+		StatsEvent(Snapshot snapshot) {
+			regex = snapshot.regex();
+			flags = snapshot.flags();
+			compiles = snapshot.compileCount();
+			calls = snapshot.callCount();
+			hitRatio = snapshot.hitRatio();
+			meanNanos = Math.round(snapshot.meanNanos());
+			p99Nanos = snapshot.p99Nanos();
+			p99Chars = snapshot.p99Chars();
+		}
+	}
+
+}
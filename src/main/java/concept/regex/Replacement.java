@@ -0,0 +1,222 @@
+package concept.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * matcher.replaceAll("<varName>$1</varName><value>$2</value>") (ExtremeRegexFormulae.capturedReferences) reads the template char
+ * by char on every match, looks up ${name} in a map and copies every group into a String before appending it. For a bulk rewrite
+ * with many matches per input that is a good part of the work.
+ *
+ * Replacement.compile(template, pattern) parses the template once, with the rules of Matcher.appendReplacement(): \x is a literal
+ * x, $n a group number (more digits are taken while the number is still a group of the pattern) and ${name} a named group. The
+ * result is a list of instructions, "append literal part i", "append group g" or "append group name". Errors in the template (a
+ * missing group number, a trailing backslash) are reported by compile() with the exceptions appendReplacement() would throw, instead
+ * of at the first match. A ${name} is looked up in the Matcher of every match: Java 17 has no Pattern.namedGroups() and only
+ * java.util.regex knows which group has a name (a "(?<name>" in a COMMENTS comment or in \Q..\E is none), so a missing name throws
+ * at the first match, as with appendReplacement().
+ *
+ * Expanding appends each group straight from the input into the StringBuilder (no group() String) and, for replaceAll(input, out),
+ * into a StringBuilder that the caller re-uses. The matcher comes from a MatcherPool. Results are the same as
+ * pattern.matcher(input).replaceAll(template). Instances are immutable and thread safe.
+ *
+ * Replacement toXml = Replacement.compile("<varName>$1</varName><value>$2</value>", pattern);
+ * StringBuilder out = new StringBuilder();
+ * for(String json: records) {
+ * 		out.setLength(0);
+ * 		toXml.replaceAll(json, out);
+ * 		write(out);
+ * }
+ */
+public final class Replacement {
+
+	private final Pattern pattern;
+	private final String template;
+	private final String literals;		// all literal parts back to back, escapes resolved
+	private final int[] code;			// per instruction: a group number, ~end of the literal part in literals, or a name in names
+	private final String[] names;		// group names looked up on every match, code groupCount + 1 + i for names[i]
+	private final int groupCount;
+	private final MatcherPool matchers;
+
+	private Replacement(String template, Pattern pattern, String literals, int[] code, String[] names, int groupCount) {
+		this.pattern = pattern;
+		this.template = template;
+		this.literals = literals;
+		this.code = code;
+		this.names = names;
+		this.groupCount = groupCount;
+		this.matchers = new MatcherPool(pattern);
+	}
+
+	/**
+	 * Parses template for matches of pattern.
+	 *
+	 * @throws IllegalArgumentException if template is malformed
+	 * @throws IndexOutOfBoundsException if template refers to a group number that pattern doesn't have
+	 */
+	public static Replacement compile(String template, Pattern pattern) {
+		int groupCount = pattern.matcher("").groupCount();
+		List<String> names = new ArrayList<String>();
+		StringBuilder literals = new StringBuilder();
+		int[] code = new int[8];
+		int size = 0;
+		int literalEnd = 0;		// end of the last literal part emitted
+		int i = 0;
+		while(i < template.length()) {
+			char c = template.charAt(i);
+			int group;
+			if(c == '\\') {
+				if(++i == template.length())
+					throw new IllegalArgumentException("character to be escaped is missing");
+				literals.append(template.charAt(i++));
+				continue;
+			}
+			else if(c != '$') {
+				literals.append(c);
+				i++;
+				continue;
+			}
+			if(++i == template.length())
+				throw new IllegalArgumentException("Illegal group reference: group index is missing");
+			if(template.charAt(i) == '{') {
+				int end = ++i;
+				while(end < template.length() && isNameChar(template.charAt(end)))
+					end++;
+				if(end == i)
+					throw new IllegalArgumentException("named capturing group has 0 length name");
+				if(end == template.length() || template.charAt(end) != '}')
+					throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+				String name = template.substring(i, end);
+				if(Character.isDigit(name.charAt(0)))
+					throw new IllegalArgumentException("capturing group name {" + name + "} starts with digit character");
+				group = groupCount + 1 + names.size();
+				names.add(name);
+				i = end + 1;
+			}
+			else {
+				group = template.charAt(i) - '0';
+				if(group < 0 || group > 9)
+					throw new IllegalArgumentException("Illegal group reference");
+				i++;
+				while(i < template.length()) {	// as long as the longer number is still a group
+					int digit = template.charAt(i) - '0';
+					if(digit < 0 || digit > 9 || group * 10 + digit > groupCount)
+						break;
+					group = group * 10 + digit;
+					i++;
+				}
+				if(group > groupCount)
+					throw new IndexOutOfBoundsException("No group " + group);
+			}
+			if(literals.length() > literalEnd) {
+				code = grow(code, size);
+				code[size++] = ~literals.length();
+				literalEnd = literals.length();
+			}
+			code = grow(code, size);
+			code[size++] = group;
+		}
+		if(literals.length() > literalEnd) {
+			code = grow(code, size);
+			code[size++] = ~literals.length();
+		}
+		return new Replacement(template, pattern, literals.toString(), Arrays.copyOf(code, size), names.toArray(new String[0]),
+				groupCount);
+	}
+
+	private static boolean isNameChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+	}
+
+	private static int[] grow(int[] code, int size) {
+		return size < code.length ? code : Arrays.copyOf(code, code.length * 2);
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	public String template() {
+		return template;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).replaceAll(template).
+	 */
+	public String replaceAll(CharSequence input) {
+		return replaceAll(input, new StringBuilder(input.length() + 16)).toString();
+	}
+
+	/**
+	 * Appends input with every match replaced to out and returns out.
+	 */
+	public StringBuilder replaceAll(CharSequence input, StringBuilder out) {
+		Matcher matcher = matchers.matcher(input);
+		int last = 0;
+		while(matcher.find()) {
+			out.append(input, last, matcher.start());
+			expand(matcher, input, out);
+			last = matcher.end();
+		}
+		out.append(input, last, input.length());
+		matcher.reset("");		// don't keep the input reachable from the pool
+		return out;
+	}
+
+	/**
+	 * Same as pattern.matcher(input).replaceFirst(template).
+	 */
+	public String replaceFirst(CharSequence input) {
+		Matcher matcher = matchers.matcher(input);
+		StringBuilder out = new StringBuilder(input.length() + 16);
+		if(matcher.find()) {
+			out.append(input, 0, matcher.start());
+			expand(matcher, input, out);
+			out.append(input, matcher.end(), input.length());
+		}
+		else {
+			out.append(input);
+		}
+		matcher.reset("");
+		return out.toString();
+	}
+
+	/**
+	 * Appends the replacement for one match of input to out, for loops that decide match by match what to replace (the
+	 * appendReplacement() part of ExtremeRegexFormulae.nthMatched).
+	 *
+	 * @throws IllegalArgumentException if the pattern has no group of a ${name} of the template, or if there is a ${name} and match
+	 * 		is not a Matcher, as a MatchResult can't be asked for a group by name in Java 17
+	 */
+	public StringBuilder expand(MatchResult match, CharSequence input, StringBuilder out) {
+		int literalStart = 0;
+		for(int op: code) {
+			if(op < 0) {
+				out.append(literals, literalStart, ~op);
+				literalStart = ~op;
+			}
+			else if(op > groupCount) {
+				String name = names[op - groupCount - 1];
+				if(!(match instanceof Matcher))
+					throw new IllegalArgumentException("${" + name + "} needs a Matcher to be looked up");
+				Matcher matcher = (Matcher) match;
+				if(matcher.start(name) >= 0)
+					out.append(input, matcher.start(name), matcher.end(name));
+			}
+			else if(match.start(op) >= 0) {	// a group that didn't take part in the match appends nothing
+				out.append(input, match.start(op), match.end(op));
+			}
+		}
+		return out;
+	}
+
+	@Override
+	public String toString() {
+		return "Replacement[" + template + " for " + pattern + "]";
+	}
+
+}
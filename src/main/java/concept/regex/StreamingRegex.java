@@ -0,0 +1,343 @@
+package concept.regex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matcher works on a CharSequence that has to be in memory as a whole, so CommonRegexApplications.csvToTsv style replaceAll on a
+ * multi GB file means loading all of it first. StreamingRegex runs find and replaceAll over a Reader instead, in constant memory.
+ *
+ * The input is read in chunks into a window (a char[] of chunkSize + 2 * maxMatchLength) and matched there. The catch is a match
+ * close to the end of the window: more input could extend it ("ab+" on a window ending in "abb") or make an earlier one possible.
+ * Matcher.hitEnd() tells exactly that, it is true when the engine looked at the end of the window while matching. So a match is
+ * accepted when
+ * 1. the input is exhausted, or
+ * 2. !hitEnd(), more input can't change the result, or
+ * 3. the window holds more than maxMatchLength chars from the match start, any other result would need a longer match (one
+ *    more than maxMatchLength, so that $ at the end of a match isn't checked against the end of the window).
+ * Otherwise the text that can no longer take part in a match is written out, the rest (at most maxMatchLength chars plus as many
+ * before it for look-behinds and \b) is moved to the front of the window and the next chunk is read behind it.
+ *
+ * Results are the same as Matcher.find()/replaceAll() on the whole input as long as no match, including what its look-aheads and
+ * look-behinds examine, is longer than maxMatchLength. ^ and \A match only at the start of the stream, $ and \z only at its end
+ * (the window uses transparent and non anchoring bounds).
+ *
+ * ReadableByteChannels and ByteBuffers (e.g. a MappedByteBuffer of a file) are read through reader(), which decodes them chunk by
+ * chunk. A buffer that holds the whole input doesn't need the window at all: Latin1CharSequence and Utf8CharSequence let a
+ * Matcher read it in place. Output goes to a Writer, use a BufferedWriter or writer(channel, charset). Instances are immutable and
+ * thread safe, every call uses its own matcher and window.
+ */
+public class StreamingRegex {
+
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private final Pattern pattern;
+	private final int maxMatchLength;
+	private final int chunkSize;
+
+	/**
+	 * Callback for every match of findAll(). start and end are offsets in the whole stream, match has the groups and offsets in the
+	 * current window and is only valid during the call.
+	 */
+	@FunctionalInterface
+	public interface MatchHandler {
+		void onMatch(long start, long end, MatchResult match) throws IOException;
+	}
+
+	public StreamingRegex(Pattern pattern, int maxMatchLength) {
+		this(pattern, maxMatchLength, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param maxMatchLength longest match (including look-around reach) that must be found correctly
+	 * @param chunkSize chars read from the input at a time
+	 */
+	public StreamingRegex(Pattern pattern, int maxMatchLength, int chunkSize) {
+		if(maxMatchLength < 1 || chunkSize < 1)
+			throw new IllegalArgumentException("maxMatchLength and chunkSize must be positive: " + maxMatchLength + ", " + chunkSize);
+		if((long) chunkSize + 2L * maxMatchLength > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("window too large: " + chunkSize + " + 2 * " + maxMatchLength);
+		this.pattern = pattern;
+		this.maxMatchLength = maxMatchLength;
+		this.chunkSize = chunkSize;
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	public int maxMatchLength() {
+		return maxMatchLength;
+	}
+
+	/**
+	 * Calls handler for every match in the input, in order.
+	 *
+	 * @return number of matches
+	 */
+	public long findAll(Reader in, MatchHandler handler) throws IOException {
+		return new Scan(in, null).run(handler, null);
+	}
+
+	/**
+	 * Writes the input to out with every match replaced, the streaming form of Matcher.replaceAll(replacement). $n, ${name} and
+	 * escapes in replacement work as in Matcher.appendReplacement().
+	 *
+	 * @return number of replacements
+	 */
+	public long replaceAll(Reader in, Writer out, String replacement) throws IOException {
+		return new Scan(in, out).run(null, replacement);
+	}
+
+	/**
+	 * Same as replaceAll(in, out, replacement) with the replacement computed for each match, like Matcher.replaceAll(Function).
+	 * The function gets the matcher itself as the MatchResult, don't keep it.
+	 */
+	public long replaceAll(Reader in, Writer out, Function<MatchResult, String> replacer) throws IOException {
+		return new Scan(in, out).run(null, replacer);
+	}
+
+	/**
+	 * Channel to channel replaceAll, e.g. between two FileChannels.
+	 */
+	public long replaceAll(ReadableByteChannel in, WritableByteChannel out, Charset charset, String replacement) throws IOException {
+		Writer writer = writer(out, charset);
+		long count = replaceAll(reader(in, charset), writer, replacement);
+		writer.flush();
+		return count;
+	}
+
+
+	/**
+	 * Reader decoding a channel chunk by chunk, malformed input is replaced rather than reported.
+	 */
+	public static Reader reader(ReadableByteChannel channel, Charset charset) {
+		return Channels.newReader(channel, decoder(charset), -1);
+	}
+
+	/**
+	 * Reader decoding the remaining bytes of buffer (e.g. a MappedByteBuffer) chunk by chunk. The buffer's position is not changed.
+	 */
+	public static Reader reader(ByteBuffer buffer, Charset charset) {
+		return new ByteBufferReader(buffer.duplicate(), decoder(charset));
+	}
+
+	public static Writer writer(WritableByteChannel channel, Charset charset) {
+		return Channels.newWriter(channel, charset.newEncoder(), -1);
+	}
+
+	private static CharsetDecoder decoder(Charset charset) {
+		return charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+
+	/**
+	 * State of one findAll() or replaceAll() call.
+	 */
+	private final class Scan {
+		private final Reader in;
+		private final Writer out;
+		private final Window window = new Window(new char[chunkSize + 2 * maxMatchLength]);
+		private final Matcher matcher = pattern.matcher("");
+		private final StringBuilder expanded = new StringBuilder();
+		private boolean eof;
+		private long base;			// stream offset of window[0]
+		private int pos;			// window[0, pos) is written out (or skipped by findAll)
+		private int searchFrom;		// next search starts here, pos + 1 after an empty match at pos
+
+		Scan(Reader in, Writer out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		// replacement is null, a String template or a Function<MatchResult, String>
+		@SuppressWarnings("unchecked")
+		long run(MatchHandler handler, Object replacement) throws IOException {
+			long count = 0;
+			fill();
+			while(true) {
+				matcher.reset(window);
+				matcher.useTransparentBounds(true).useAnchoringBounds(false);
+				matcher.region(Math.min(searchFrom, window.length), window.length);
+				int appended = 0;	// where Matcher.appendReplacement() continues from after this region()
+				while(true) {
+					if(searchFrom > window.length || !matcher.find()) {	// the first is after an empty match at the end
+						if(eof) {
+							write(window.length);
+							return count;
+						}
+						settle(window.length - maxMatchLength);
+						break;
+					}
+					int start = matcher.start();
+					int end = matcher.end();
+					if(!eof && matcher.hitEnd() && window.length - start <= maxMatchLength) {
+						settle(Math.min(start, window.length - maxMatchLength));	// more input may change this match
+						break;
+					}
+
+					count++;
+					if(handler != null) {
+						handler.onMatch(base + start, base + end, matcher);
+					}
+					else {
+						write(start);
+						if(replacement instanceof String) {
+							expanded.setLength(0);
+							matcher.appendReplacement(expanded, (String) replacement);	// text since appended, then the replacement
+							out.append(expanded, start - appended, expanded.length());
+						}
+						else {
+							out.write(((Function<MatchResult, String>) replacement).apply(matcher));
+						}
+					}
+					appended = end;
+					pos = end;
+					searchFrom = start == end ? end + 1 : end;
+				}
+				fill();		// even if nothing was read eof is known now, so search again
+			}
+		}
+
+		// positions before limit can't be part of a future match
+		private void settle(int limit) throws IOException {
+			if(limit > pos)
+				write(limit);
+			searchFrom = Math.max(searchFrom, pos);
+		}
+
+		// writes window[pos, to) in replace mode and moves pos
+		private void write(int to) throws IOException {
+			if(out != null && to > pos)
+				out.write(window.chars, pos, to - pos);
+			pos = Math.max(pos, to);
+		}
+
+		/**
+		 * Drops what is no longer needed from the front of the window and reads up to a chunk behind the rest.
+		 */
+		private void fill() throws IOException {
+			int keep = Math.max(0, pos - maxMatchLength);	// keep maxMatchLength chars before pos for look-behinds
+			if(keep > 0) {
+				System.arraycopy(window.chars, keep, window.chars, 0, window.length - keep);
+				window.length -= keep;
+				pos -= keep;
+				searchFrom -= keep;
+				base += keep;
+			}
+			int read = 0;
+			while(!eof && window.length < window.chars.length) {
+				int n = in.read(window.chars, window.length, window.chars.length - window.length);
+				if(n < 0) {
+					eof = true;
+				}
+				else if(n == 0) {
+					break;		// e.g. no room for a surrogate pair, there is room again after the next settle()
+				}
+				else {
+					window.length += n;
+					read += n;
+					if(read >= chunkSize)
+						break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The window as a CharSequence for the matcher.
+	 */
+	private static final class Window implements CharSequence {
+		final char[] chars;
+		int length;
+
+		Window(char[] chars) {
+			this.chars = chars;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if(index >= length)
+				throw new IndexOutOfBoundsException(index);
+			return chars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+
+	/**
+	 * Decodes a ByteBuffer on demand. java.io has no such Reader and wrapping the buffer in an InputStream would copy every byte.
+	 */
+	private static final class ByteBufferReader extends Reader {
+		private final ByteBuffer buffer;
+		private final CharsetDecoder decoder;
+		private final char[] pair = new char[2];	// for a surrogate pair when only one char is asked for
+		private char pending;						// low surrogate of pair not returned yet, 0 if none
+		private boolean flushed;
+
+		ByteBufferReader(ByteBuffer buffer, CharsetDecoder decoder) {
+			this.buffer = buffer;
+			this.decoder = decoder;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if(len == 0)
+				return 0;
+			if(pending != 0) {
+				cbuf[off] = pending;
+				pending = 0;
+				return 1;
+			}
+			if(flushed)
+				return -1;
+			if(len == 1) {
+				int n = read(pair, 0, 2);
+				if(n > 0)
+					cbuf[off] = pair[0];
+				if(n == 2)
+					pending = pair[1];
+				return n < 0 ? -1 : Math.min(n, 1);
+			}
+			CharBuffer target = CharBuffer.wrap(cbuf, off, len);
+			decoder.decode(buffer, target, true);
+			if(!buffer.hasRemaining() && !flushed && target.hasRemaining()) {
+				decoder.flush(target);
+				flushed = true;
+			}
+			int n = target.position() - off;
+			return n == 0 && flushed ? -1 : n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+}
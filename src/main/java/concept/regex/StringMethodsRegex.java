@@ -27,6 +27,10 @@ package concept.regex;
  * 									<- Pattern.compile(regex).split(this, limit)	// after some initial processing it calls this method
  * 									<- Matcher m = matcher(input) // the above internally uses matcher object
  * 
+ * Since each of these compiles the regex on every call, PatternCache provides matches(), replaceAll() and split() helpers with the
+ * same behavior that compile a given regex only once and re-use it for later calls.
+ * split() also creates one String per token and the array. Tokenizer walks the same tokens as offsets into the input instead.
+ * 
  * Reference: https://www.vogella.com/tutorials/JavaRegularExpressions/article.html
  */
 public class StringMethodsRegex {
@@ -43,6 +47,21 @@ public class StringMethodsRegex {
 		String str[] = "greenstar180@gmail.com".split(regex);
 		System.out.println("ID: " + str[0] + "\nDomain: " + str[1] + "\nSubdomain: " + str[2]);
 		
+		// same calls using the compiled pattern cache. the second round of calls finds both patterns in the cache.
+		for(int i=0;i<2;i++) {
+			System.out.println(PatternCache.matches(regx, "greenstar180@gmail.com"));	// true
+			str = PatternCache.split("greenstar180@gmail.com", regex);
+			System.out.println("ID: " + str[0] + "\nDomain: " + str[1] + "\nSubdomain: " + str[2]);
+		}
+		System.out.println(PatternCache.shared());	// 2 misses followed by 2 hits
+		
+		// split without the array and the substrings: "@|\\." is a set of two chars, so no regex runs at all
+		Tokenizer.Cursor cursor = Tokenizer.compile(regex).cursor();	// keep the cursor and reset it for every input
+		String email = "greenstar180@gmail.com";
+		cursor.reset(email);
+		while(cursor.next()) {
+			System.out.println(cursor.start() + "-" + cursor.end() + ": " + cursor.token());	// token() copies, start and end don't
+		}
 	}
 
 }
@@ -0,0 +1,289 @@
+package concept.regex;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * str.split("@|\\.") compiles the regex (unless it is a single char), creates a Matcher, an ArrayList, one String per token and
+ * the result array. For ingest that splits millions of records a second that is most of the garbage. A Tokenizer instead walks
+ * the tokens as (start, end) offsets through a Cursor that is reset for every record, and the caller reads each token in place
+ * (parse a number from it, compare it, copy it into its own buffer).
+ *
+ * Tokenizer.compile(regex) picks the fastest way to find the delimiters:
+ * 1. a single char (",", "\\.")			: String.indexOf(char) on a String, a one char CharClass otherwise
+ * 2. a set of chars ("@|\\.", "[@.]")		: CharClass, a bitmap test per char and 8 bytes at a time on a byte[] backed buffer
+ * 3. any other regex ("\\s*,\\s*")		: the pattern from the shared PatternCache and one Matcher per cursor, reset per record
+ * on(char) and onAnyOf(chars) skip the regex altogether.
+ *
+ * Tokens are the same as Pattern.split(input, -1), that is String.split(regex) without dropping trailing empty tokens: no
+ * delimiter gives the whole input as one token, and a zero width match at the start doesn't give a leading empty token.
+ *
+ * Tokenizer tokenizer = Tokenizer.compile("@|\\.");
+ * Tokenizer.Cursor cursor = tokenizer.cursor();		// one per thread, re-used for every record
+ * cursor.reset("greenstar180@gmail.com");
+ * while(cursor.next())
+ * 		process(input, cursor.start(), cursor.end());
+ *
+ * ByteBuffers are split byte by byte as Latin-1 (any ASCII compatible encoding works for ASCII delimiters), the offsets are
+ * indexes into the buffer between its position and limit. A Tokenizer is immutable and thread safe, a Cursor belongs to one thread.
+ * Once reset() has been called on a cursor, iterating doesn't allocate anything.
+ */
+public final class Tokenizer {
+
+	private final boolean single;			// one delimiter char, found with String.indexOf(delimiter)
+	private final char delimiter;
+	private final CharClass delimiters;		// the delimiter chars, null for a regex
+	private final Pattern pattern;			// null unless a regex
+
+	private Tokenizer(boolean single, char delimiter, CharClass delimiters, Pattern pattern) {
+		this.single = single;
+		this.delimiter = delimiter;
+		this.delimiters = delimiters;
+		this.pattern = pattern;
+	}
+
+	public static Tokenizer on(char delimiter) {
+		return new Tokenizer(true, delimiter, CharClass.of(String.valueOf(delimiter)), null);
+	}
+
+	/**
+	 * Splits on any of the given chars.
+	 */
+	public static Tokenizer onAnyOf(CharSequence delimiters) {
+		if(delimiters.length() == 1)
+			return on(delimiters.charAt(0));
+		return new Tokenizer(false, '\0', CharClass.of(delimiters), null);
+	}
+
+	/**
+	 * Splits on the given regex, taking the single char or char set path when the regex is just that.
+	 */
+	public static Tokenizer compile(String regex) {
+		String chars = delimiterChars(regex);
+		if(chars != null)
+			return onAnyOf(chars);
+		return new Tokenizer(false, '\0', null, PatternCache.shared().compile(regex));
+	}
+
+	/**
+	 * Always splits with the given pattern.
+	 */
+	public static Tokenizer compile(Pattern pattern) {
+		return new Tokenizer(false, '\0', null, pattern);
+	}
+
+	/**
+	 * A new cursor, keep it and reset() it for every input.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Returns the chars a regex stands for if it is one char, an alternation of single chars ("@|\\.") or a simple bracket class
+	 * of single chars ("[@.]"), else null.
+	 */
+	static String delimiterChars(String regex) {
+		List<String> alternatives = PatternSet.literalAlternatives(regex);
+		if(alternatives != null) {
+			StringBuilder chars = new StringBuilder();
+			for(String alternative: alternatives) {
+				if(alternative.length() != 1)
+					return null;
+				chars.append(alternative);
+			}
+			return chars.toString();
+		}
+		if(regex.length() < 3 || regex.charAt(0) != '[' || regex.charAt(regex.length() - 1) != ']' || regex.charAt(1) == '^')
+			return null;
+		StringBuilder chars = new StringBuilder();
+		for(int i=1;i<regex.length()-1;i++) {
+			char c = regex.charAt(i);
+			if(c == '\\') {
+				char next = regex.charAt(++i);
+				if(Character.isLetterOrDigit(next) || i == regex.length() - 1)
+					return null;	// \d, \s, \n and friends, or an escaped ']'
+				chars.append(next);
+			}
+			else if(c == '-' || c == '[' || c == ']' || c == '&') {
+				return null;		// ranges, nested classes and intersections
+			}
+			else {
+				chars.append(c);
+			}
+		}
+		return chars.toString();
+	}
+
+
+	/**
+	 * Iterates the tokens of one input at a time. Typical use: reset(input), then while(next()) read start() and end().
+	 */
+	public final class Cursor {
+		private final Matcher matcher = pattern == null ? null : pattern.matcher("");
+		private final Latin1View bytesView = pattern == null ? null : new Latin1View();
+		private CharSequence chars;		// the input, or bytesView over bytes for a regex
+		private ByteBuffer bytes;		// the input when splitting bytes without a regex
+		private int from;				// start of the next token
+		private int limit;
+		private int start;
+		private int end;
+		private boolean done;
+
+		private Cursor() {
+		}
+
+		public Cursor reset(CharSequence input) {
+			chars = input;
+			bytes = null;
+			return restart(0, input.length());
+		}
+
+		/**
+		 * Splits the bytes between position and limit of input, the buffer's position is not changed.
+		 */
+		public Cursor reset(ByteBuffer input) {
+			if(matcher != null) {
+				chars = bytesView.wrap(input);
+				bytes = null;
+			}
+			else {
+				chars = null;
+				bytes = input;
+			}
+			return restart(input.position(), input.limit());
+		}
+
+		private Cursor restart(int from, int limit) {
+			this.from = from;
+			this.limit = limit;
+			this.start = -1;
+			this.end = -1;
+			this.done = false;
+			if(matcher != null)
+				matcher.reset(chars).region(from, limit);
+			return this;
+		}
+
+		/**
+		 * Moves to the next token, returns false when there are no more.
+		 */
+		public boolean next() {
+			if(done)
+				return false;
+			int delimiterStart;
+			int delimiterEnd;
+			if(matcher != null) {
+				delimiterStart = -1;
+				delimiterEnd = -1;
+				while(matcher.find()) {
+					if(matcher.end() == matcher.regionStart() && from == matcher.regionStart())
+						continue;	// no leading empty token for a zero width match at the start, like Pattern.split
+					delimiterStart = matcher.start();
+					delimiterEnd = matcher.end();
+					break;
+				}
+			}
+			else {
+				delimiterStart = indexOfDelimiter();
+				delimiterEnd = delimiterStart + 1;
+			}
+			start = from;
+			if(delimiterStart < 0) {
+				end = limit;
+				done = true;
+			}
+			else {
+				end = delimiterStart;
+				from = delimiterEnd;
+			}
+			return true;
+		}
+
+		private int indexOfDelimiter() {
+			if(bytes != null) {
+				if(bytes.hasArray()) {	// CharClass on the array takes the SWAR path for up to 3 delimiters
+					int offset = bytes.arrayOffset();
+					int i = delimiters.indexOfAny(bytes.array(), offset + from, offset + limit);
+					return i < 0 ? -1 : i - offset;
+				}
+				for(int i=from;i<limit;i++)
+					if(delimiters.contains((char) (bytes.get(i) & 0xFF)))
+						return i;
+				return -1;
+			}
+			if(single && chars instanceof String)
+				return ((String) chars).indexOf(delimiter, from);	// an intrinsic, vectorized by the JIT
+			return delimiters.indexOfAny(chars, from);
+		}
+
+		/**
+		 * Start of the current token, an index into the input (into the buffer for a ByteBuffer).
+		 */
+		public int start() {
+			return start;
+		}
+
+		/**
+		 * End of the current token, exclusive.
+		 */
+		public int end() {
+			return end;
+		}
+
+		public int length() {
+			return end - start;
+		}
+
+		/**
+		 * The current token as a String, for when a copy is wanted after all.
+		 */
+		public String token() {
+			if(bytes != null) {
+				char[] token = new char[end - start];
+				for(int i=0;i<token.length;i++)
+					token[i] = (char) (bytes.get(start + i) & 0xFF);
+				return new String(token);
+			}
+			return chars.subSequence(start, end).toString();
+		}
+	}
+
+	/**
+	 * Bytes of a ByteBuffer as Latin-1 chars, so that a Matcher can run on them without decoding. Indexes are buffer indexes.
+	 */
+	private static final class Latin1View implements CharSequence {
+		private ByteBuffer buffer;
+
+		Latin1View wrap(ByteBuffer buffer) {
+			this.buffer = buffer;
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return buffer.limit();
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			char[] chars = new char[end - start];
+			for(int i=0;i<chars.length;i++)
+				chars[i] = charAt(start + i);
+			return new String(chars);
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length()).toString();
+		}
+	}
+
+}
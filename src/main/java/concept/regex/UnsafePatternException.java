@@ -0,0 +1,27 @@
+package concept.regex;
+
+import java.util.regex.PatternSyntaxException;
+
+import concept.regex.linear.PatternAnalyzer;
+
+/**
+ * Thrown by a PatternCache with Admission.REJECT for a regex that PatternAnalyzer considers unsafe. It is a PatternSyntaxException
+ * so that code already handling invalid user supplied patterns handles this one the same way.
+ */
+public class UnsafePatternException extends PatternSyntaxException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient PatternAnalyzer.Report report;
+
+	public UnsafePatternException(PatternAnalyzer.Report report) {
+		super("Pattern may take " + report.complexity().toString().toLowerCase() + " time to match: " + report.findings(),
+				report.regex(), report.findings().isEmpty() ? -1 : report.findings().get(0).index());
+		this.report = report;
+	}
+
+	public PatternAnalyzer.Report report() {
+		return report;
+	}
+
+}
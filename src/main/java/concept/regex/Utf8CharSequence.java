@@ -0,0 +1,273 @@
+package concept.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * UTF-8 bytes read as UTF-16 chars without decoding them to a String, the UTF-8 counterpart of Latin1CharSequence. Chars of a
+ * UTF-8 text don't sit at a fixed byte offset, so charAt(i) has to find the byte where char i starts:
+ * 1. Making the view reads the bytes once, counts the chars and records the byte offset of every CHECKPOINT_INTERVAL-th char
+ * 		(one int per 64 chars, about 1/16 of the text's size). Pure ASCII bytes need no checkpoints, char i is byte i.
+ * 2. charAt() decodes from a cursor, the last char read. A Matcher reads mostly left to right and backtracks a little, so almost
+ * 		every call is a step of one char from the cursor. A step back skips the continuation bytes (10xxxxxx) to the lead byte of
+ * 		the previous code point, which is unambiguous in well formed UTF-8.
+ * 3. A read far from the cursor, or behind it in malformed input, starts from the checkpoint before the char, at most 63 chars
+ * 		away.
+ * A supplementary code point (4 bytes) is two chars, a surrogate pair, like in a String. Malformed bytes read as U+FFFD, one per
+ * maximal subpart of an invalid sequence as the Unicode standard recommends. new String(bytes, UTF_8) agrees on well formed input
+ * but replaces a few malformed sequences (e.g. encoded surrogates) with a different number of U+FFFD.
+ *
+ * The bytes are not copied, they must not change while the view is used. subSequence() is a view sharing the checkpoints, only
+ * toString() (and so Matcher.group()) decodes. byteIndex() turns a char index, e.g. of a match, back into a byte offset.
+ * Not thread safe because of the cursor, use a subSequence(0, length()) per thread, it costs one small object.
+ */
+public final class Utf8CharSequence implements CharSequence {
+
+	public static final int CHECKPOINT_INTERVAL = 64;
+
+	private static final int SHIFT = Integer.numberOfTrailingZeros(CHECKPOINT_INTERVAL);
+	private static final int BEFORE = Integer.MIN_VALUE;		// checkpoint flag: the code point starts one char before
+	private static final int CODE_POINT = 0x1FFFFF;				// decode() returns the code point | its length in bytes << 24
+
+	private final Index index;
+	private final int start;
+	private final int end;
+	private int cursor;			// char index of the code point at cursorByte
+	private int cursorByte;
+	private int cursorBytes;	// bytes of that code point
+	private int cursorUnits;	// chars of that code point, 1 or 2
+	private int cursorCodePoint;
+
+	private Utf8CharSequence(Index index, int start, int end) {
+		this.index = index;
+		this.start = start;
+		this.end = end;
+		this.cursor = -CHECKPOINT_INTERVAL;		// nothing decoded yet, the first read seeks
+	}
+
+	public static Utf8CharSequence of(byte[] bytes) {
+		return of(bytes, 0, bytes.length);
+	}
+
+	public static Utf8CharSequence of(byte[] bytes, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		Index index = new Index(bytes, null, offset, length);
+		return new Utf8CharSequence(index, 0, index.length);
+	}
+
+	/**
+	 * The bytes between position and limit of buffer. The buffer's position and limit are not used afterwards.
+	 */
+	public static Utf8CharSequence of(ByteBuffer buffer) {
+		Index index = new Index(null, buffer, buffer.position(), buffer.remaining());
+		return new Utf8CharSequence(index, 0, index.length);
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int i) {
+		Objects.checkIndex(i, end - start);
+		int at = start + i;
+		if(index.ascii)
+			return (char) index.byteAt(index.offset + at);
+		locate(at);
+		if(cursorUnits == 1)
+			return (char) cursorCodePoint;
+		return at == cursor ? Character.highSurrogate(cursorCodePoint) : Character.lowSurrogate(cursorCodePoint);
+	}
+
+	@Override
+	public Utf8CharSequence subSequence(int from, int to) {
+		Objects.checkFromToIndex(from, to, end - start);
+		return new Utf8CharSequence(index, start + from, start + to);
+	}
+
+	/**
+	 * Offset in the array or buffer of the first byte of char i, the end of the bytes for i == length(). The low surrogate of a
+	 * supplementary code point has the byte index of the code point.
+	 */
+	public int byteIndex(int i) {
+		Objects.checkIndex(i, end - start + 1);
+		int at = start + i;
+		if(index.ascii)
+			return index.offset + at;
+		if(at == index.length)
+			return index.offset + index.byteLength;
+		locate(at);
+		return index.offset + cursorByte;
+	}
+
+	@Override
+	public String toString() {
+		if(index.wellFormed && isCodePointStart(start) && isCodePointStart(end)) {
+			int from = byteIndex(0);
+			int to = byteIndex(end - start);
+			if(index.array != null)
+				return new String(index.array, from, to - from, StandardCharsets.UTF_8);
+			byte[] bytes = new byte[to - from];
+			index.buffer.get(from, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		char[] chars = new char[end - start];
+		for(int i=0;i<chars.length;i++)
+			chars[i] = charAt(i);
+		return new String(chars);
+	}
+
+	private boolean isCodePointStart(int at) {
+		if(index.ascii || at == index.length)
+			return true;
+		locate(at);
+		return cursor == at;
+	}
+
+	/**
+	 * Moves the cursor to the code point holding char at.
+	 */
+	private void locate(int at) {
+		if(at < cursor - CHECKPOINT_INTERVAL || at >= cursor + CHECKPOINT_INTERVAL || (at < cursor && !index.wellFormed))
+			seek(at);
+		while(at < cursor)
+			stepBack();
+		while(at >= cursor + cursorUnits)
+			step();
+	}
+
+	/**
+	 * Moves the cursor to the checkpoint before char at.
+	 */
+	private void seek(int at) {
+		int checkpoint = index.checkpoints[at >>> SHIFT];
+		cursor = (at >>> SHIFT << SHIFT) - (checkpoint < 0 ? 1 : 0);
+		cursorByte = checkpoint & ~BEFORE;
+		decode();
+	}
+
+	private void step() {
+		cursor += cursorUnits;
+		cursorByte += cursorBytes;
+		decode();
+	}
+
+	private void stepBack() {
+		do
+			cursorByte--;
+		while((index.byteAt(index.offset + cursorByte) & 0xC0) == 0x80);
+		decode();
+		cursor -= cursorUnits;
+	}
+
+	private void decode() {
+		int decoded = index.decode(cursorByte);
+		cursorCodePoint = decoded & CODE_POINT;
+		cursorBytes = decoded >>> 24;
+		cursorUnits = Character.charCount(cursorCodePoint);
+	}
+
+
+	/**
+	 * The bytes, their char count and the checkpoints, shared by a view and its subSequences.
+	 */
+	private static final class Index {
+		final byte[] array;			// null for a buffer
+		final ByteBuffer buffer;
+		final int offset;
+		final int byteLength;
+		final int length;			// in chars
+		final boolean ascii;
+		final boolean wellFormed;
+		final int[] checkpoints;	// byte index (from offset) of the code point holding char k * CHECKPOINT_INTERVAL
+
+		Index(byte[] array, ByteBuffer buffer, int offset, int byteLength) {
+			this.array = array;
+			this.buffer = buffer;
+			this.offset = offset;
+			this.byteLength = byteLength;
+			int pos = 0;
+			while(pos < byteLength && byteAt(offset + pos) >= 0)
+				pos++;
+			this.ascii = pos == byteLength;
+			if(ascii) {
+				this.length = byteLength;
+				this.wellFormed = true;
+				this.checkpoints = null;
+				return;
+			}
+			int[] checkpoints = new int[((byteLength - 1) >>> SHIFT) + 1];		// there are at most as many chars as bytes
+			for(int k=0;k<=(pos - 1) >>> SHIFT && pos > 0;k++)
+				checkpoints[k] = k << SHIFT;		// the ASCII run before the first multi byte char
+			int chars = pos;
+			boolean wellFormed = true;
+			int next = (pos + CHECKPOINT_INTERVAL - 1) >>> SHIFT;		// next checkpoint to record
+			while(pos < byteLength) {
+				int decoded = decode(pos);
+				int codePoint = decoded & CODE_POINT;
+				int units = Character.charCount(codePoint);
+				if(codePoint == 0xFFFD && (decoded >>> 24 != 3 || (byteAt(offset + pos) & 0xFF) != 0xEF))
+					wellFormed = false;		// not an encoded U+FFFD (EF BF BD), a malformed sequence
+				while(next << SHIFT < chars + units) {
+					checkpoints[next] = pos | (next << SHIFT == chars ? 0 : BEFORE);
+					next++;
+				}
+				chars += units;
+				pos += decoded >>> 24;
+			}
+			this.length = chars;
+			this.wellFormed = wellFormed;
+			this.checkpoints = checkpoints;
+		}
+
+		int byteAt(int pos) {
+			return array != null ? array[pos] : buffer.get(pos);
+		}
+
+		/**
+		 * Code point starting at byte pos (from offset), U+FFFD for a malformed sequence, | its length in bytes << 24.
+		 */
+		int decode(int pos) {
+			int b0 = byteAt(offset + pos);
+			if(b0 >= 0)
+				return b0 | 1 << 24;
+			b0 &= 0xFF;
+			int n;			// continuation bytes
+			int min = 0x80;	// range of the first continuation byte, narrower after E0, ED, F0 and F4
+			int max = 0xBF;
+			if(b0 >= 0xC2 && b0 <= 0xDF) {
+				n = 1;
+			}
+			else if(b0 >= 0xE0 && b0 <= 0xEF) {
+				n = 2;
+				if(b0 == 0xE0)
+					min = 0xA0;
+				else if(b0 == 0xED)
+					max = 0x9F;		// no surrogates
+			}
+			else if(b0 >= 0xF0 && b0 <= 0xF4) {
+				n = 3;
+				if(b0 == 0xF0)
+					min = 0x90;
+				else if(b0 == 0xF4)
+					max = 0x8F;		// up to U+10FFFF
+			}
+			else {
+				return 0xFFFD | 1 << 24;
+			}
+			int codePoint = b0 & (0x3F >> n);
+			for(int i=1;i<=n;i++) {
+				int b = pos + i < byteLength ? byteAt(offset + pos + i) & 0xFF : -1;
+				if(b < min || b > max)
+					return 0xFFFD | i << 24;		// the lead byte and the valid continuation bytes read as one U+FFFD
+				codePoint = codePoint << 6 | (b & 0x3F);
+				min = 0x80;
+				max = 0xBF;
+			}
+			return codePoint | (n + 1) << 24;
+		}
+	}
+
+}
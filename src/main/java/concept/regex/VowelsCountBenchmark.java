@@ -0,0 +1,89 @@
+package concept.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Counts the vowels of random ASCII text the three ways VowelsCount does: a HashSet<Character>, two replaceAll passes and a
+ * CharClass, the last one both on the String and on the same text as Latin-1 bytes (the table path, [aeiou] has more members
+ * than the SWAR path takes) and with a single member class on the bytes (the SWAR path). Reported in ops/s, divide by the length
+ * to get chars/s, and in bytes allocated per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VowelsCountBenchmark {
+
+	@Param({"64", "65536", "16777216"})
+	public int length;
+
+	private static final CharClass SPACE = CharClass.of(" ");
+
+	private String text;
+	private byte[] latin1;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(VowelsCountBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		char[] chars = new char[length];
+		for(int i=0;i<length;i++)
+			chars[i] = random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26));
+		text = new String(chars);
+		latin1 = text.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	@Benchmark
+	public int hashSet() {
+		return VowelsCount.vowCount(text);
+	}
+
+	@Benchmark
+	public int regex() {
+		return VowelsCount.vowCountRgx(text);
+	}
+
+	@Benchmark
+	public int charClass() {
+		return VowelsCount.VOWELS.count(text);
+	}
+
+	@Benchmark
+	public int charClassBytes() {
+		return VowelsCount.VOWELS.count(latin1);
+	}
+
+	@Benchmark
+	public int charClassBytesSwar() {
+		return SPACE.count(latin1);
+	}
+
+}
@@ -0,0 +1,236 @@
+package concept.regex.linear;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DFA built lazily from a Prog, used to answer "is there a match" in a single pass without tracking capture groups.
+ *
+ * A DFA state is the set of NFA threads (pcs waiting on a CLASS or MATCH instruction) that the Pike VM would hold at a position. The
+ * state for the next char is computed the first time it is needed and then cached, so in the common case every char costs one array
+ * lookup. Since the number of possible states is exponential in the program size the cache is bounded: once it holds MAX_STATES
+ * states it is thrown away and rebuilt as needed (RE2 does the same), which keeps memory bounded and the scan still linear.
+ *
+ * Assertions the DFA can't decide from its state (\b, \B and $ which need the chars around the position) are treated as always
+ * true. The DFA then answers for a slightly larger language and a "yes" has to be confirmed by the Pike VM, see Prog.dfaInexact.
+ * ^ and \z are exact as the DFA knows when it is at the start and at the end of the input.
+ *
+ * Not thread safe, each LinearMatcher owns one.
+ *
+ * Reference: https://swtch.com/~rsc/regexp/regexp3.html
+ */
+final class LazyDFA {
+
+	static final int MAX_STATES = 10000;
+
+	private final Prog prog;
+	private final Map<DState, DState> cache = new HashMap<DState, DState>();
+	private final DState[] starts = new DState[4];	// [search][atStart]
+
+	// scratch space for building states
+	private final int[] dense;
+	private final int[] sparse;
+	private int size;
+	private final int[] stack;
+	private final int[] seeds;
+
+	LazyDFA(Prog prog) {
+		this.prog = prog;
+		dense = new int[prog.size()];
+		sparse = new int[prog.size()];
+		stack = new int[2 * prog.size() + 1];
+		seeds = new int[prog.size() + 1];
+	}
+
+	/**
+	 * true if the whole input may match. Exact unless prog.dfaInexact.
+	 */
+	boolean matches(CharSequence input) {
+		DState state = start(false, true);
+		for(int i=0;i<input.length();i++) {
+			state = next(state, input.charAt(i));
+			if(state.pcs.length == 0)
+				return false;	// dead state, no thread left
+		}
+		return state.acceptAtEnd;
+	}
+
+	/**
+	 * true if a match may start at or after from. Exact unless prog.dfaInexact.
+	 */
+	boolean find(CharSequence input, int from) {
+		DState state = start(true, from == 0);
+		if(state.match)
+			return true;
+		for(int i=from;i<input.length();i++) {
+			state = next(state, input.charAt(i));
+			if(state.match)
+				return true;
+		}
+		return state.acceptAtEnd;
+	}
+
+	private DState start(boolean search, boolean atStart) {
+		int index = (search ? 2 : 0) + (atStart ? 1 : 0);
+		if(starts[index] == null) {
+			seeds[0] = 0;
+			starts[index] = intern(1, search, atStart);
+		}
+		return starts[index];
+	}
+
+	private DState next(DState state, char c) {
+		DState next;
+		if(c < 128)
+			next = state.ascii[c];
+		else
+			next = state.other == null ? null : state.other.get(c);
+		if(next != null)
+			return next;
+
+		int n = 0;
+		for(int pc: state.pcs)
+			if(prog.op[pc] == Prog.CLASS && prog.matches(pc, c))
+				seeds[n++] = pc + 1;
+		if(state.search)
+			seeds[n++] = 0;		// a match can also start at the next position
+		next = intern(n, state.search, false);
+
+		if(c < 128) {
+			state.ascii[c] = next;
+		}
+		else {
+			if(state.other == null)
+				state.other = new HashMap<Character, DState>();
+			state.other.put(c, next);
+		}
+		return next;
+	}
+
+	/**
+	 * Returns the cached state for the closure of the first n seeds, creating it if needed.
+	 */
+	private DState intern(int n, boolean search, boolean atStart) {
+		size = 0;
+		for(int i=0;i<n;i++)
+			closure(seeds[i], atStart, false);
+
+		int count = 0;
+		boolean match = false;
+		for(int i=0;i<size;i++) {
+			int pc = dense[i];
+			if(waits(pc)) {
+				dense[count++] = pc;
+				match |= prog.op[pc] == Prog.MATCH;
+			}
+		}
+		int[] pcs = Arrays.copyOf(dense, count);
+		Arrays.sort(pcs);
+
+		DState key = new DState(pcs, search, atStart);
+		DState state = cache.get(key);
+		if(state != null)
+			return state;
+
+		if(cache.size() >= MAX_STATES) {	// start over rather than grow without bound
+			cache.clear();
+			Arrays.fill(starts, null);
+		}
+		key.match = match;
+		key.acceptAtEnd = match || acceptsAtEnd(pcs, atStart);
+		cache.put(key, key);
+		return key;
+	}
+
+	/**
+	 * true if one of the \z assertions waiting in the state leads to MATCH once we know we are at the end of the input.
+	 */
+	private boolean acceptsAtEnd(int[] pcs, boolean atStart) {
+		size = 0;
+		for(int pc: pcs)
+			if(prog.op[pc] == Prog.ASSERT)
+				closure(pc, atStart, true);
+		for(int i=0;i<size;i++)
+			if(prog.op[dense[i]] == Prog.MATCH)
+				return true;
+		return false;
+	}
+
+	/**
+	 * pcs that are kept in a state: those waiting on a char, MATCH, and \z assertions waiting for the end of the input.
+	 */
+	private boolean waits(int pc) {
+		int op = prog.op[pc];
+		return op == Prog.CLASS || op == Prog.MATCH || (op == Prog.ASSERT && prog.x[pc] == Prog.END_TEXT);
+	}
+
+	/**
+	 * Adds every pc reachable from start without consuming a char to the scratch set.
+	 */
+	private void closure(int start, boolean atStart, boolean atEnd) {
+		int top = 0;
+		stack[top++] = start;
+		while(top > 0) {
+			int pc = stack[--top];
+			int i = sparse[pc];
+			if(i < size && dense[i] == pc)
+				continue;
+			sparse[pc] = size;
+			dense[size++] = pc;
+			switch(prog.op[pc]) {
+			case Prog.JMP:
+				stack[top++] = prog.x[pc];
+				break;
+			case Prog.SPLIT:
+			case Prog.LOOP:
+				stack[top++] = prog.y[pc];
+				stack[top++] = prog.x[pc];
+				break;
+			case Prog.SAVE:
+				stack[top++] = pc + 1;
+				break;
+			case Prog.ASSERT:
+				int kind = prog.x[pc];
+				if((kind == Prog.BEGIN_TEXT && atStart) || (kind == Prog.END_TEXT && atEnd) || kind >= Prog.END_LINE)
+					stack[top++] = pc + 1;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+
+	private static final class DState {
+		final int[] pcs;
+		final boolean search;	// unanchored, a new thread starts at every position
+		final boolean atStart;
+		final int hash;
+		boolean match;
+		boolean acceptAtEnd;
+		final DState[] ascii = new DState[128];
+		Map<Character, DState> other;
+
+		DState(int[] pcs, boolean search, boolean atStart) {
+			this.pcs = pcs;
+			this.search = search;
+			this.atStart = atStart;
+			this.hash = Arrays.hashCode(pcs) * 4 + (search ? 2 : 0) + (atStart ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof DState))
+				return false;
+			DState other = (DState) o;
+			return search == other.search && atStart == other.atStart && Arrays.equals(pcs, other.pcs);
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+package concept.regex.linear;
+
+import java.util.Arrays;
+import java.util.regex.MatchResult;
+
+/**
+ * Matcher of a LinearPattern. Same contract as java.util.regex.Matcher for the methods it has: reset(input) to re-use it, matches()
+ * for validation, find() for search, then group()/start()/end() on the match. Not thread safe.
+ *
+ * Both the lazy DFA cache and the Pike VM thread lists live in the matcher, so re-using a matcher with reset(input) is considerably
+ * cheaper than creating a new one for every input.
+ */
+public final class LinearMatcher implements MatchResult {
+
+	private final LinearPattern pattern;
+	private final Prog prog;
+	private final LazyDFA dfa;
+	private final PikeVM vm;
+	private final int[] groups;
+
+	private CharSequence text;
+	private boolean matched;
+	private int first = -1;	// start of the last match, -1 if none
+	private int last = 0;	// end of the last match, where the next find() starts
+
+	LinearMatcher(LinearPattern pattern, CharSequence text) {
+		this.pattern = pattern;
+		this.prog = pattern.prog;
+		this.dfa = new LazyDFA(prog);
+		this.vm = new PikeVM(prog);
+		this.groups = new int[2 * (prog.groupCount + 1)];
+		this.text = text;
+	}
+
+	public LinearPattern pattern() {
+		return pattern;
+	}
+
+	public LinearMatcher reset() {
+		matched = false;
+		first = -1;
+		last = 0;
+		return this;
+	}
+
+	public LinearMatcher reset(CharSequence input) {
+		text = input;
+		return reset();
+	}
+
+	/**
+	 * true if the entire input matches the pattern.
+	 */
+	public boolean matches() {
+		reset();
+		if(!dfa.matches(text))
+			return false;
+		if(!prog.dfaInexact && prog.groupCount == 0) {	// the DFA answer is exact and there are no groups to fill in
+			groups[0] = 0;
+			groups[1] = text.length();
+		}
+		else if(!vm.run(text, 0, true, true, groups)) {
+			return false;
+		}
+		return found();
+	}
+
+	/**
+	 * true if a prefix of the input matches the pattern.
+	 */
+	public boolean lookingAt() {
+		reset();
+		return vm.run(text, 0, true, false, groups) && found();
+	}
+
+	/**
+	 * Finds the next match, starting where the last match ended (one char later if it was empty).
+	 */
+	public boolean find() {
+		int from = last;
+		if(from == first)
+			from++;			// don't find the same empty match again
+		if(from > text.length()) {
+			matched = false;
+			first = -1;
+			return false;
+		}
+		return search(from);
+	}
+
+	/**
+	 * Resets the matcher and finds the next match starting at the given index.
+	 */
+	public boolean find(int start) {
+		if(start < 0 || start > text.length())
+			throw new IndexOutOfBoundsException("Illegal start index");
+		reset();
+		return search(start);
+	}
+
+	private boolean search(int from) {
+		if(!dfa.find(text, from) || !vm.run(text, from, false, false, groups)) {
+			matched = false;
+			first = -1;
+			return false;
+		}
+		return found();
+	}
+
+	private boolean found() {
+		matched = true;
+		first = groups[0];
+		last = groups[1];
+		return true;
+	}
+
+	/**
+	 * Immutable copy of the current match.
+	 */
+	public MatchResult toMatchResult() {
+		return new Result(text.toString(), matched ? groups.clone() : null, prog.groupCount);
+	}
+
+	@Override
+	public int start() {
+		return start(0);
+	}
+
+	@Override
+	public int start(int group) {
+		checkGroup(group);
+		return groups[2 * group];
+	}
+
+	public int start(String name) {
+		return start(groupIndex(name));
+	}
+
+	@Override
+	public int end() {
+		return end(0);
+	}
+
+	@Override
+	public int end(int group) {
+		checkGroup(group);
+		return groups[2 * group + 1];
+	}
+
+	public int end(String name) {
+		return end(groupIndex(name));
+	}
+
+	@Override
+	public String group() {
+		return group(0);
+	}
+
+	@Override
+	public String group(int group) {
+		checkGroup(group);
+		int start = groups[2 * group];
+		return start < 0 ? null : text.subSequence(start, groups[2 * group + 1]).toString();
+	}
+
+	public String group(String name) {
+		return group(groupIndex(name));
+	}
+
+	@Override
+	public int groupCount() {
+		return prog.groupCount;
+	}
+
+	private void checkGroup(int group) {
+		if(!matched)
+			throw new IllegalStateException("No match available");
+		if(group < 0 || group > prog.groupCount)
+			throw new IndexOutOfBoundsException("No group " + group);
+	}
+
+	private int groupIndex(String name) {
+		Integer group = pattern.namedGroups().get(name);
+		if(group == null)
+			throw new IllegalArgumentException("No group with name <" + name + ">");
+		return group;
+	}
+
+	@Override
+	public String toString() {
+		return "LinearMatcher[pattern=" + pattern + " region=0," + text.length() + " lastmatch="
+				+ (matched ? group() : "") + "]";
+	}
+
+
+	/**
+	 * Snapshot returned by toMatchResult().
+	 */
+	private static final class Result implements MatchResult {
+		private final String text;
+		private final int[] groups;
+		private final int groupCount;
+
+		Result(String text, int[] groups, int groupCount) {
+			this.text = text;
+			this.groups = groups;
+			this.groupCount = groupCount;
+		}
+
+		@Override
+		public int start() {
+			return start(0);
+		}
+
+		@Override
+		public int start(int group) {
+			check(group);
+			return groups[2 * group];
+		}
+
+		@Override
+		public int end() {
+			return end(0);
+		}
+
+		@Override
+		public int end(int group) {
+			check(group);
+			return groups[2 * group + 1];
+		}
+
+		@Override
+		public String group() {
+			return group(0);
+		}
+
+		@Override
+		public String group(int group) {
+			check(group);
+			return groups[2 * group] < 0 ? null : text.substring(groups[2 * group], groups[2 * group + 1]);
+		}
+
+		@Override
+		public int groupCount() {
+			return groupCount;
+		}
+
+		private void check(int group) {
+			if(groups == null)
+				throw new IllegalStateException("No match found");
+			if(group < 0 || group > groupCount)
+				throw new IndexOutOfBoundsException("No group " + group);
+		}
+
+		@Override
+		public String toString() {
+			return groups == null ? "no match" : Arrays.toString(groups);
+		}
+	}
+
+}
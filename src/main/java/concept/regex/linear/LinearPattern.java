@@ -0,0 +1,87 @@
+package concept.regex.linear;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * java.util.regex is a backtracking engine: when a path through the pattern fails it goes back and tries the next one. For patterns
+ * with nested or overlapping quantifiers the number of paths grows polynomially or exponentially with the input length, so a short
+ * input can keep a thread busy for minutes. RegexEvalSpeedCompare's own "([a-z]*[%#&]+[a-z]*)+" is such a pattern: against
+ * "%%%%...%!" every run of '%' can be split between the iterations of the outer group in 2^n ways. Since JDK 9 java.util.regex
+ * remembers failed positions of some group loops which defuses this particular one, but "(.*a){12}" against "aaaa...a!" still
+ * tries every way to place 12 'a's. This is known as ReDoS (regular expression denial of service) and is a real risk wherever the
+ * input comes from users.
+ *
+ * LinearPattern is an alternative engine in the style of RE2 that guarantees O(input length * pattern size) matching:
+ * 1. The pattern is compiled to a Thompson NFA (see Prog).
+ * 2. matches() and the first step of find() run a lazily built DFA (see LazyDFA) that answers "is there a match" in one pass.
+ * 3. When a match exists, its position and groups are found by a Pike VM (see PikeVM) that runs all NFA paths in parallel instead
+ * 		of one after another. Match boundaries and groups are the same leftmost-first ones java.util.regex reports.
+ *
+ * The price is that constructs that need backtracking or more than one pass are not supported: back-references, look-arounds,
+ * possessive quantifiers, atomic groups, plus inline flags and unicode classes. Such patterns are rejected by compile() with a
+ * PatternSyntaxException, so an unsupported pattern never silently falls back to exponential time. Other differences: the engine
+ * works on chars (UTF-16 units) rather than code points and '.', \w, \d, \s are ASCII classes as in java.util.regex by default.
+ * When a repeated part can itself match empty, like (a?)* or (x|)+, the groups and sometimes the bounds of a match may differ from
+ * java.util.regex, whose rules for stopping such loops depend on the order it backtracks in (RE2 differs from Perl the same way).
+ *
+ * The surface mirrors java.util.regex: LinearPattern.compile(regex).matcher(input).find(). Like Pattern, a LinearPattern is
+ * immutable and thread safe and a LinearMatcher is not.
+ *
+ * LinearPatternBenchmark compares both engines on pathological inputs.
+ * Reference: https://swtch.com/~rsc/regexp/regexp1.html
+ * Reference: https://github.com/google/re2/wiki/Syntax
+ */
+public final class LinearPattern {
+
+	private final String regex;
+	final Prog prog;
+	private final Map<String, Integer> groupNames;
+
+	LinearPattern(String regex, Prog prog, Map<String, Integer> groupNames) {
+		this.regex = regex;
+		this.prog = prog;
+		this.groupNames = Collections.unmodifiableMap(groupNames);
+	}
+
+	/**
+	 * Compiles the given regex.
+	 *
+	 * @throws java.util.regex.PatternSyntaxException if the regex is invalid or uses a construct this engine doesn't support
+	 */
+	public static LinearPattern compile(String regex) {
+		return Parser.parse(regex);
+	}
+
+	/**
+	 * Same as LinearPattern.compile(regex).matcher(input).matches(), like Pattern.matches(regex, input).
+	 */
+	public static boolean matches(String regex, CharSequence input) {
+		return compile(regex).matcher(input).matches();
+	}
+
+	public LinearMatcher matcher(CharSequence input) {
+		return new LinearMatcher(this, input);
+	}
+
+	public String pattern() {
+		return regex;
+	}
+
+	public int groupCount() {
+		return prog.groupCount;
+	}
+
+	/**
+	 * Group names mapped to group numbers.
+	 */
+	public Map<String, Integer> namedGroups() {
+		return groupNames;
+	}
+
+	@Override
+	public String toString() {
+		return regex;
+	}
+
+}
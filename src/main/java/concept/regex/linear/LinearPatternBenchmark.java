@@ -0,0 +1,92 @@
+package concept.regex.linear;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * java.util.regex vs LinearPattern on inputs that make a backtracking engine try (almost) every way of splitting the input between
+ * the quantifiers before it can report a failure. Each input is n repetitions of one char followed by a '!' that makes the match fail
+ * at the very end.
+ *
+ * nestedStar		"(.*a){12}"					polynomial, every one of the 12 iterations can end at any 'a'
+ * nestedPlus		"(x+x+)+y"					exponential on older JDKs, partly memoized by java.util.regex since JDK 9
+ * specialChars		"([a-z]*[%#&]+[a-z]*)+"		RegexEvalSpeedCompare's pattern against a run of '%'
+ *
+ * Average time per matches() call, the java.util.regex time grows much faster than n whereas LinearPattern grows linearly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class LinearPatternBenchmark {
+
+	@Param({"nestedStar", "nestedPlus", "specialChars"})
+	public String pathological;
+
+	@Param({"12", "16", "20"})
+	public int n;
+
+	private String input;
+	private Matcher javaMatcher;
+	private LinearMatcher linearMatcher;
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(LinearPatternBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	@Setup
+	public void setup() {
+		String regex;
+		String repeated;
+		switch(pathological) {
+		case "nestedStar":
+			regex = "(.*a){12}";
+			repeated = "a";
+			break;
+		case "nestedPlus":
+			regex = "(x+x+)+y";
+			repeated = "x";
+			break;
+		default:
+			regex = "([a-z]*[%#&]+[a-z]*)+";
+			repeated = "%";
+			break;
+		}
+		input = repeated.repeat(n) + "!";
+		javaMatcher = Pattern.compile(regex).matcher("");
+		linearMatcher = LinearPattern.compile(regex).matcher("");
+	}
+
+	@Benchmark
+	public boolean javaUtilRegex() {
+		return javaMatcher.reset(input).matches();
+	}
+
+	@Benchmark
+	public boolean linearPattern() {
+		return linearMatcher.reset(input).matches();
+	}
+
+}
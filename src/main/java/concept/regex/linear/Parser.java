@@ -0,0 +1,736 @@
+package concept.regex.linear;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parses the supported regex syntax into a tree of Nodes and compiles the tree into a Prog.
+ *
+ * Supported: literals, escaped punctuation, \t \n \r \f \a \e \xhh \\uhhhh, \Q...\E, '.', character classes with ranges and
+ * negation, \d \w \s \D \W \S, groups (...) (?:...) (?<name>...), alternation '|', greedy and lazy quantifiers * + ? {n} {n,}
+ * {n,m}, anchors ^ $ \A \z and word boundaries \b \B.
+ *
+ * Rejected with a PatternSyntaxException: back-references (\1, \k<name>), which are not regular and cannot be matched in linear
+ * time, look-arounds, which need a second scan at every position they are used, possessive quantifiers and atomic groups, which
+ * only make sense for a backtracking engine, and inline flags, unicode properties, class intersections and a few other escapes
+ * that this engine simply doesn't implement.
+ *
+ * tree() parses in a lenient mode that accepts all of java.util.regex: the constructs above become LOOK, ATOMIC and BACKREF nodes
+ * or possessive REPEATs, unicode properties and nested classes are approximated by wider char sets and there is no repetition
+ * limit. The tree is only good for analysis (see PatternAnalyzer), it is never compiled.
+ */
+final class Parser {
+
+	static final int MAX_REPEAT = 1000;			// same limits as RE2, so that a{1000}{1000} can't blow up the program
+	static final int MAX_PROG_SIZE = 100000;
+
+	private static final int[] DIGIT = {'0', '9'};
+	private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+	private static final int[] SPACE = {'\t', '\r', ' ', ' '};	// \t \n \x0B \f \r and space
+	private static final int[] ANY = {0, Character.MAX_VALUE};
+	private static final int[] DOT = negate(new int[] {'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'});
+
+	private final String regex;
+	private final boolean lenient;
+	private int pos;
+	private int groupCount;
+	private final Map<String, Integer> groupNames = new HashMap<String, Integer>();
+	private boolean caseOrComments;		// lenient mode saw an inline (?i) or (?x), which the tree doesn't reflect
+
+	private Parser(String regex, boolean lenient) {
+		this.regex = regex;
+		this.lenient = lenient;
+	}
+
+	static LinearPattern parse(String regex) {
+		Parser parser = new Parser(regex, false);
+		Node root = parser.parseAll();
+		Compiler compiler = new Compiler(regex);
+		compiler.emit(Prog.SAVE, 0, 0, null);
+		compiler.compile(root);
+		compiler.emit(Prog.SAVE, 1, 0, null);
+		compiler.emit(Prog.MATCH, 0, 0, null);
+		return new LinearPattern(regex, compiler.toProg(parser.groupCount), parser.groupNames);
+	}
+
+	/**
+	 * Syntax tree of any regex java.util.regex accepts, parsed in lenient mode.
+	 *
+	 * @throws PatternSyntaxException if the regex is not even syntactically valid
+	 */
+	static Node tree(String regex) {
+		return new Parser(regex, true).parseAll();
+	}
+
+	/**
+	 * Same as tree(regex), but null if the regex turns on case insensitive matching or comments with inline flags, as the tree then
+	 * doesn't tell which literal chars are matched.
+	 *
+	 * @throws PatternSyntaxException if the regex is not even syntactically valid
+	 */
+	static Node literalTree(String regex) {
+		Parser parser = new Parser(regex, true);
+		Node root = parser.parseAll();
+		return parser.caseOrComments ? null : root;
+	}
+
+	private Node parseAll() {
+		Node root = parseAlternation();
+		if(pos < regex.length())
+			throw error(regex.charAt(pos) == ')' ? "Unmatched closing ')'" : "Dangling meta character '" + regex.charAt(pos) + "'");
+		return root;
+	}
+
+
+	// alternation := concatenation ('|' concatenation)*
+	private Node parseAlternation() {
+		List<Node> alternatives = new ArrayList<Node>();
+		alternatives.add(parseConcatenation());
+		while(pos < regex.length() && regex.charAt(pos) == '|') {
+			pos++;
+			alternatives.add(parseConcatenation());
+		}
+		return alternatives.size() == 1 ? alternatives.get(0) : Node.of(Node.ALTERNATE, alternatives);
+	}
+
+	// concatenation := repetition*
+	private Node parseConcatenation() {
+		List<Node> items = new ArrayList<Node>();
+		while(pos < regex.length()) {
+			char c = regex.charAt(pos);
+			if(c == '|' || c == ')')
+				break;
+			if(c == '\\' && pos + 1 < regex.length() && regex.charAt(pos + 1) == 'Q') {
+				parseQuoted(items);
+				continue;
+			}
+			int start = pos;
+			Node item = parseRepetition(parseAtom());
+			item.start = start;
+			item.end = pos;
+			items.add(item);
+		}
+		return items.size() == 1 ? items.get(0) : Node.of(Node.CONCAT, items);
+	}
+
+	private void parseQuoted(List<Node> items) {
+		int start = pos + 2;
+		int end = regex.indexOf("\\E", start);
+		pos = end < 0 ? regex.length() : end + 2;
+		for(int i=start;i<(end < 0 ? regex.length() : end);i++)
+			items.add(Node.chars(new int[] {regex.charAt(i), regex.charAt(i)}));
+	}
+
+	// repetition := atom quantifier?
+	private Node parseRepetition(Node atom) {
+		if(pos >= regex.length())
+			return atom;
+		int min, max;
+		char c = regex.charAt(pos);
+		if(c == '*') {
+			min = 0; max = -1; pos++;
+		}
+		else if(c == '+') {
+			min = 1; max = -1; pos++;
+		}
+		else if(c == '?') {
+			min = 0; max = 1; pos++;
+		}
+		else if(c == '{') {
+			int start = pos++;
+			min = parseNumber();
+			max = min;
+			if(pos < regex.length() && regex.charAt(pos) == ',') {
+				pos++;
+				max = pos < regex.length() && regex.charAt(pos) == '}' ? -1 : parseNumber();
+			}
+			if(pos >= regex.length() || regex.charAt(pos) != '}')
+				throw error("Unclosed counted closure", start);
+			pos++;
+			if(max != -1 && max < min)
+				throw error("Illegal repetition range", start);
+			if(!lenient && (min > MAX_REPEAT || max > MAX_REPEAT))
+				throw error("Repetition count above " + MAX_REPEAT + " is not supported", start);
+		}
+		else {
+			return atom;
+		}
+
+		boolean greedy = true;
+		boolean possessive = false;
+		if(pos < regex.length() && regex.charAt(pos) == '?') {
+			greedy = false;
+			pos++;
+		}
+		else if(pos < regex.length() && regex.charAt(pos) == '+') {
+			if(!lenient)
+				throw error("Possessive quantifiers are not supported, they only make sense for a backtracking engine");
+			possessive = true;
+			pos++;
+		}
+		if(pos < regex.length() && "*+?{".indexOf(regex.charAt(pos)) >= 0)
+			throw error("Dangling meta character '" + regex.charAt(pos) + "'");
+
+		Node node = Node.of(Node.REPEAT, Arrays.asList(atom));
+		node.min = min;
+		node.max = max;
+		node.greedy = greedy;
+		node.possessive = possessive;
+		return node;
+	}
+
+	private int parseNumber() {
+		int start = pos;
+		while(pos < regex.length() && Character.isDigit(regex.charAt(pos)))
+			pos++;
+		if(start == pos)
+			throw error("Illegal repetition", start);
+		try {
+			return Integer.parseInt(regex.substring(start, pos));
+		}
+		catch(NumberFormatException e) {
+			throw error(lenient ? "Illegal repetition range" : "Repetition count above " + MAX_REPEAT + " is not supported", start);
+		}
+	}
+
+	private Node parseAtom() {
+		char c = regex.charAt(pos);
+		switch(c) {
+		case '(':
+			return parseGroup();
+		case '[':
+			return Node.chars(parseClass());
+		case '.':
+			pos++;
+			return Node.chars(DOT);
+		case '^':
+			pos++;
+			return Node.assertion(Prog.BEGIN_TEXT);
+		case '$':
+			pos++;
+			return Node.assertion(Prog.END_LINE);
+		case '\\':
+			return parseEscape();
+		case '*': case '+': case '?':
+			throw error("Dangling meta character '" + c + "'");
+		case '{':
+			throw error("Illegal repetition");
+		default:
+			pos++;
+			if(Character.isHighSurrogate(c) && pos < regex.length() && Character.isLowSurrogate(regex.charAt(pos))) {
+				char low = regex.charAt(pos++);		// a supplementary code point is one atom, a quantifier repeats both chars
+				return Node.of(Node.CONCAT, Arrays.asList(Node.chars(new int[] {c, c}), Node.chars(new int[] {low, low})));
+			}
+			return Node.chars(new int[] {c, c});
+		}
+	}
+
+	private Node parseGroup() {
+		int start = pos++;
+		int group = -1;
+		Node wrapper = null;
+		if(regex.startsWith("?:", pos)) {
+			pos += 2;
+		}
+		else if(regex.startsWith("?<", pos) && pos + 2 < regex.length() && Character.isLetter(regex.charAt(pos + 2))) {
+			int end = regex.indexOf('>', pos);
+			if(end < 0)
+				throw error("Named capturing group is missing trailing '>'");
+			String name = regex.substring(pos + 2, end);
+			if(groupNames.containsKey(name))
+				throw error("Named capturing group <" + name + "> is already defined");
+			group = ++groupCount;
+			groupNames.put(name, group);
+			pos = end + 1;
+		}
+		else if(regex.startsWith("?=", pos) || regex.startsWith("?!", pos) || regex.startsWith("?<=", pos)
+				|| regex.startsWith("?<!", pos)) {
+			if(!lenient)
+				throw error("Look-arounds are not supported by the linear time engine");
+			wrapper = new Node(Node.LOOK, null);
+			wrapper.behind = regex.charAt(pos + 1) == '<';
+			wrapper.negative = regex.charAt(pos + (wrapper.behind ? 2 : 1)) == '!';
+			pos += wrapper.behind ? 3 : 2;
+		}
+		else if(regex.startsWith("?>", pos)) {
+			if(!lenient)
+				throw error("Atomic groups are not supported, they only make sense for a backtracking engine");
+			wrapper = new Node(Node.ATOMIC, null);
+			pos += 2;
+		}
+		else if(regex.startsWith("?", pos)) {
+			if(!lenient)
+				throw error("Inline flags are not supported");
+			pos++;		// (?flags) or (?flags:...), the flags don't matter for the analysis
+			while(pos < regex.length() && (Character.isLetter(regex.charAt(pos)) || regex.charAt(pos) == '-')) {
+				if(regex.charAt(pos) == 'i' || regex.charAt(pos) == 'x')
+					caseOrComments = true;
+				pos++;
+			}
+			if(pos < regex.length() && regex.charAt(pos) == ')') {
+				pos++;
+				return Node.of(Node.CONCAT, new ArrayList<Node>());
+			}
+			if(pos >= regex.length() || regex.charAt(pos) != ':')
+				throw error("Unknown inline modifier");
+			pos++;
+		}
+		else {
+			group = ++groupCount;
+		}
+
+		Node body = parseAlternation();
+		if(pos >= regex.length() || regex.charAt(pos) != ')')
+			throw error("Unclosed group", start);
+		pos++;
+		if(wrapper != null)
+			return Node.of(wrapper, Arrays.asList(body));
+		if(group < 0)
+			return body;
+		Node node = Node.of(Node.GROUP, Arrays.asList(body));
+		node.group = group;
+		return node;
+	}
+
+	private Node parseEscape() {
+		int start = pos;
+		if(pos + 1 >= regex.length())
+			throw error("Unexpected internal error");
+		char c = regex.charAt(pos + 1);
+		pos += 2;
+		switch(c) {
+		case 'd': return Node.chars(DIGIT);
+		case 'D': return Node.chars(negate(DIGIT));
+		case 'w': return Node.chars(WORD);
+		case 'W': return Node.chars(negate(WORD));
+		case 's': return Node.chars(SPACE);
+		case 'S': return Node.chars(negate(SPACE));
+		case 'A': return Node.assertion(Prog.BEGIN_TEXT);
+		case 'z': return Node.assertion(Prog.END_TEXT);
+		case 'b': return Node.assertion(Prog.WORD_BOUNDARY);
+		case 'B': return Node.assertion(Prog.NOT_WORD_BOUNDARY);
+		case 'k':
+			if(!lenient)
+				throw error("Back-references are not regular and are not supported", start);
+			int end = regex.indexOf('>', pos);
+			if(!regex.startsWith("<", pos) || end < 0)
+				throw error("\\k is not followed by '<' for named capturing group", start);
+			pos = end + 1;
+			return new Node(Node.BACKREF, null);
+		default:
+			if(c >= '1' && c <= '9') {
+				if(!lenient)
+					throw error("Back-references are not regular and are not supported", start);
+				while(pos < regex.length() && Character.isDigit(regex.charAt(pos)))
+					pos++;
+				return new Node(Node.BACKREF, null);
+			}
+			if(lenient && (c == 'Z' || c == 'G'))
+				return Node.assertion(c == 'Z' ? Prog.END_LINE : Prog.BEGIN_TEXT);
+			if(lenient && Character.isLetter(c) && "tnrfaexu".indexOf(c) < 0) {
+				if(c == 'c')
+					pos++;				// \cX, control char
+				skipProperty(c);		// \p{..}, \h, \R, \X, ... approximated by any char
+				return Node.chars(ANY);
+			}
+			pos = start;
+			char literal = parseEscapedChar();
+			return Node.chars(new int[] {literal, literal});
+		}
+	}
+
+	/**
+	 * Escapes that stand for a single char, pos is at the backslash.
+	 */
+	private char parseEscapedChar() {
+		int start = pos;
+		char c = regex.charAt(pos + 1);
+		pos += 2;
+		switch(c) {
+		case 't': return '\t';
+		case 'n': return '\n';
+		case 'r': return '\r';
+		case 'f': return '\f';
+		case 'a': return '\u0007';
+		case 'e': return '\u001B';
+		case 'x': return (char) parseHex(2, start);
+		case 'u': return (char) parseHex(4, start);
+		default:
+			if(c == '0' && lenient)
+				return parseOctal(start);
+			if(!lenient && Character.isLetterOrDigit(c))
+				throw error("Escape sequence \\" + c + " is not supported", start);
+			return c;	// escaped punctuation stands for itself
+		}
+	}
+
+	/**
+	 * Skips the braces of \p{..} and \P{..}, lenient mode only. pos is after the letter.
+	 */
+	private void skipProperty(char letter) {
+		if((letter == 'p' || letter == 'P') && pos < regex.length()) {
+			int end = regex.indexOf('}', pos);
+			pos = regex.charAt(pos) == '{' && end >= 0 ? end + 1 : pos + 1;
+		}
+	}
+
+	// \0n, \0nn or \0mnn with m <= 3, lenient mode only. pos is after the 0.
+	private char parseOctal(int start) {
+		int value = 0;
+		int digits = 0;
+		while(digits < 3 && pos < regex.length() && regex.charAt(pos) >= '0' && regex.charAt(pos) <= '7'
+				&& value * 8 + regex.charAt(pos) - '0' <= 0377) {
+			value = value * 8 + regex.charAt(pos++) - '0';
+			digits++;
+		}
+		if(digits == 0)
+			throw error("Illegal octal escape sequence", start);
+		return (char) value;
+	}
+
+	private int parseHex(int digits, int start) {
+		if(pos + digits > regex.length())
+			throw error("Illegal hexadecimal escape sequence", start);
+		try {
+			int value = Integer.parseInt(regex.substring(pos, pos + digits), 16);
+			pos += digits;
+			return value;
+		}
+		catch(NumberFormatException e) {
+			throw error("Illegal hexadecimal escape sequence", start);
+		}
+	}
+
+	// class := '[' '^'? item+ ']'
+	private int[] parseClass() {
+		int start = pos++;
+		boolean negated = false;
+		if(pos < regex.length() && regex.charAt(pos) == '^') {
+			negated = true;
+			pos++;
+		}
+		List<int[]> items = new ArrayList<int[]>();
+		boolean first = true;
+		while(true) {
+			if(pos >= regex.length())
+				throw error("Unclosed character class", start);
+			char c = regex.charAt(pos);
+			if(c == ']' && !first)
+				break;
+			first = false;
+			if(c == '[' || regex.startsWith("&&", pos)) {
+				if(!lenient)
+					throw error("Nested character classes and intersections are not supported");
+				if(c == '[')
+					items.add(parseClass());
+				else
+					pos += 2;		// an intersection is approximated by the union
+				continue;
+			}
+
+			int lo;
+			if(c == '\\') {
+				char e = pos + 1 < regex.length() ? regex.charAt(pos + 1) : 0;
+				int[] predefined = e == 'd' ? DIGIT : e == 'D' ? negate(DIGIT) : e == 'w' ? WORD : e == 'W' ? negate(WORD)
+						: e == 's' ? SPACE : e == 'S' ? negate(SPACE) : null;
+				if(lenient && (e == 'p' || e == 'P')) {
+					pos += 2;
+					skipProperty(e);
+					items.add(ANY);
+					continue;
+				}
+				if(predefined != null) {
+					items.add(predefined);
+					pos += 2;
+					continue;
+				}
+				lo = parseEscapedChar();
+			}
+			else {
+				lo = c;
+				pos++;
+			}
+
+			int hi = lo;
+			if(pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+				pos++;
+				char h = regex.charAt(pos);
+				if(h == '\\') {
+					hi = parseEscapedChar();
+				}
+				else {
+					hi = h;
+					pos++;
+				}
+				if(hi < lo)
+					throw error("Illegal character range");
+			}
+			items.add(new int[] {lo, hi});
+		}
+		pos++;
+
+		int[] ranges = union(items);
+		return negated ? negate(ranges) : ranges;
+	}
+
+	/**
+	 * Sorts and merges ranges given as [lo, hi] pairs.
+	 */
+	static int[] union(List<int[]> items) {
+		List<int[]> pairs = new ArrayList<int[]>();
+		for(int[] item: items)
+			for(int i=0;i<item.length;i+=2)
+				pairs.add(new int[] {item[i], item[i + 1]});
+		pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+		int[] merged = new int[pairs.size() * 2];
+		int n = 0;
+		for(int[] pair: pairs) {
+			if(n > 0 && pair[0] <= merged[n - 1] + 1) {
+				merged[n - 1] = Math.max(merged[n - 1], pair[1]);
+			}
+			else {
+				merged[n++] = pair[0];
+				merged[n++] = pair[1];
+			}
+		}
+		return Arrays.copyOf(merged, n);
+	}
+
+	/**
+	 * Complement of sorted ranges over all chars.
+	 */
+	static int[] negate(int[] ranges) {
+		int[] negated = new int[ranges.length + 2];
+		int n = 0;
+		int next = 0;
+		for(int i=0;i<ranges.length;i+=2) {
+			if(ranges[i] > next) {
+				negated[n++] = next;
+				negated[n++] = ranges[i] - 1;
+			}
+			next = ranges[i + 1] + 1;
+		}
+		if(next <= Character.MAX_VALUE) {
+			negated[n++] = next;
+			negated[n++] = Character.MAX_VALUE;
+		}
+		return Arrays.copyOf(negated, n);
+	}
+
+	private PatternSyntaxException error(String description) {
+		return error(description, pos);
+	}
+
+	private PatternSyntaxException error(String description, int index) {
+		return new PatternSyntaxException(description, regex, index);
+	}
+
+
+	/**
+	 * Syntax tree node.
+	 */
+	static final class Node {
+		static final int CHARS = 0;
+		static final int CONCAT = 1;
+		static final int ALTERNATE = 2;
+		static final int REPEAT = 3;
+		static final int GROUP = 4;
+		static final int ASSERT = 5;
+		static final int LOOK = 6;			// lenient mode only
+		static final int ATOMIC = 7;
+		static final int BACKREF = 8;
+
+		final int type;
+		final List<Node> children;
+		int[] ranges;
+		int min, max;		// REPEAT, max -1 means unbounded
+		boolean greedy;
+		boolean possessive;
+		int group;			// GROUP
+		int kind;			// ASSERT
+		boolean behind;		// LOOK
+		boolean negative;
+		int start, end;		// position in the regex, set for the items of a concatenation
+
+		private Node(int type, List<Node> children) {
+			this.type = type;
+			this.children = children;
+		}
+
+		static Node of(int type, List<Node> children) {
+			return new Node(type, children);
+		}
+
+		static Node of(Node wrapper, List<Node> children) {
+			Node node = new Node(wrapper.type, children);
+			node.behind = wrapper.behind;
+			node.negative = wrapper.negative;
+			return node;
+		}
+
+		static Node chars(int[] ranges) {
+			Node node = new Node(CHARS, null);
+			node.ranges = ranges;
+			return node;
+		}
+
+		static Node assertion(int kind) {
+			Node node = new Node(ASSERT, null);
+			node.kind = kind;
+			return node;
+		}
+	}
+
+
+	/**
+	 * Emits the instructions for a syntax tree.
+	 */
+	static final class Compiler {
+		private final String regex;
+		private int[] op = new int[16];
+		private int[] x = new int[16];
+		private int[] y = new int[16];
+		private int[][] ranges = new int[16][];
+		private int size;
+		private boolean emptyRepeat;	// a repeated body can match empty
+
+		Compiler(String regex) {
+			this.regex = regex;
+		}
+
+		int emit(int opcode, int a, int b, int[] r) {
+			if(size == MAX_PROG_SIZE)
+				throw new PatternSyntaxException("Pattern too large, compiles to more than " + MAX_PROG_SIZE + " instructions", regex, -1);
+			if(size == op.length) {
+				op = Arrays.copyOf(op, size * 2);
+				x = Arrays.copyOf(x, size * 2);
+				y = Arrays.copyOf(y, size * 2);
+				ranges = Arrays.copyOf(ranges, size * 2);
+			}
+			op[size] = opcode;
+			x[size] = a;
+			y[size] = b;
+			ranges[size] = r;
+			return size++;
+		}
+
+		void compile(Node node) {
+			switch(node.type) {
+			case Node.CHARS:
+				emit(Prog.CLASS, 0, 0, node.ranges);
+				break;
+			case Node.ASSERT:
+				emit(Prog.ASSERT, node.kind, 0, null);
+				break;
+			case Node.CONCAT:
+				for(Node child: node.children)
+					compile(child);
+				break;
+			case Node.GROUP:
+				emit(Prog.SAVE, 2 * node.group, 0, null);
+				compile(node.children.get(0));
+				emit(Prog.SAVE, 2 * node.group + 1, 0, null);
+				break;
+			case Node.ALTERNATE:
+				compileAlternation(node.children);
+				break;
+			case Node.REPEAT:
+				emptyRepeat |= nullable(node.children.get(0));
+				compileRepetition(node.children.get(0), node.min, node.max, node.greedy);
+				break;
+			default:
+				throw new IllegalStateException("unknown node " + node.type);
+			}
+		}
+
+		// true if the node can match without consuming a char
+		private static boolean nullable(Node node) {
+			switch(node.type) {
+			case Node.CHARS:
+				return false;
+			case Node.CONCAT:
+				for(Node child: node.children)
+					if(!nullable(child))
+						return false;
+				return true;
+			case Node.ALTERNATE:
+				for(Node child: node.children)
+					if(nullable(child))
+						return true;
+				return false;
+			case Node.REPEAT:
+				return node.min == 0 || nullable(node.children.get(0));
+			default:	// GROUP, ASSERT
+				return node.type == Node.ASSERT || nullable(node.children.get(0));
+			}
+		}
+
+		//		SPLIT L1, L2
+		// L1:	first alternative
+		//		JMP end
+		// L2:	SPLIT ... (rest of the alternatives)
+		// end:
+		private void compileAlternation(List<Node> alternatives) {
+			int[] jumps = new int[alternatives.size() - 1];
+			for(int i=0;i<alternatives.size() - 1;i++) {
+				int split = emit(Prog.SPLIT, 0, 0, null);
+				x[split] = size;
+				compile(alternatives.get(i));
+				jumps[i] = emit(Prog.JMP, 0, 0, null);
+				y[split] = size;
+			}
+			compile(alternatives.get(alternatives.size() - 1));
+			for(int jump: jumps)
+				x[jump] = size;
+		}
+
+		// x{min,max} is min copies of x followed by either x* (unbounded) or (max-min) nested optional copies (x(x(x)?)?)?
+		// x* is compiled as (x+)? so that the loop ends with a LOOP instruction, see Prog.
+		private void compileRepetition(Node body, int min, int max, boolean greedy) {
+			if(max == -1) {
+				int optional = -1;
+				if(min == 0)
+					optional = emit(Prog.SPLIT, 0, 0, null);
+				for(int i=0;i<min - 1;i++)
+					compile(body);
+				int loop = size;			// L: x; SPLIT L, next
+				compile(body);
+				split(loop, size + 1, greedy);
+				if(optional >= 0)
+					setSplit(optional, optional + 1, size, greedy);
+				return;
+			}
+			for(int i=0;i<min;i++)
+				compile(body);
+			int[] splits = new int[max - min];
+			for(int i=0;i<max - min;i++) {
+				splits[i] = emit(Prog.SPLIT, 0, 0, null);
+				compile(body);
+			}
+			for(int split: splits)
+				setSplit(split, split + 1, size, greedy);
+		}
+
+		private void split(int loop, int next, boolean greedy) {
+			int split = emit(Prog.LOOP, 0, 0, null);
+			setSplit(split, loop, next, greedy);
+		}
+
+		// greedy prefers to repeat, lazy prefers to move on
+		private void setSplit(int split, int repeat, int exit, boolean greedy) {
+			x[split] = greedy ? repeat : exit;
+			y[split] = greedy ? exit : repeat;
+		}
+
+		Prog toProg(int groupCount) {
+			return new Prog(Arrays.copyOf(op, size), Arrays.copyOf(x, size), Arrays.copyOf(y, size), Arrays.copyOf(ranges, size),
+					groupCount, emptyRepeat);
+		}
+	}
+
+}
@@ -0,0 +1,642 @@
+package concept.regex.linear;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import concept.regex.linear.Parser.Node;
+
+/**
+ * Static estimate of how badly a regex can backtrack in java.util.regex, without running it.
+ *
+ * A backtracking engine is slow when the same input can be matched by the pattern in many different ways and the match fails in
+ * the end, because then it tries all of them. That happens when quantified parts overlap:
+ * 1. nested quantifiers over the same chars, (a+)+ or ([a-z]*[%#&]+[a-z]*)+: a run of n chars can be split between the iterations
+ * 		of the outer loop in 2^n ways -> EXPONENTIAL.
+ * 2. a repeated alternation whose branches overlap, (a|aa)+ or (\w|\d)+ -> EXPONENTIAL for the same reason.
+ * 3. quantifiers in sequence over the same chars, \d+\d+ or .*a.*a: n chars can be split between k such quantifiers in n^(k-1)
+ * 		ways -> POLYNOMIAL of degree k. A bounded repeat multiplies it, (.*a){12} is degree 12.
+ * 4. a look-behind with a large length range, (?<!\W.{0,100}): java.util.regex tries every length at every position, which
+ * 		makes the scan quadratic up to that bound. This is the usual workaround for the missing unbounded look-behind.
+ *
+ * The analysis works on the tree of Parser.tree(). For every char c that starts a range in some char set of the pattern it asks,
+ * for each node, which lengths of runs of c the node can match (a bitmask of lengths 0..63, 63 standing for "63 or more") and
+ * whether some length can be matched in more than one way. Ambiguity in a loop makes the pattern exponential, ambiguity in a
+ * sequence adds up to the polynomial degree. Possessive quantifiers and atomic groups never give chars back and are treated as
+ * unambiguous. Back-references are reported but not costed, the analysis treats them as matching empty.
+ *
+ * The result is an estimate: class intersections and unicode properties are approximated by wider sets and a finding can be a false
+ * positive, e.g. when a look-ahead makes the overlapping paths impossible. When there is a finding, Report.witness(n) builds an
+ * input that pumps the overlapping part n times and ends in a char that makes the match fail, which is what to feed a test or a
+ * benchmark to confirm it (LinearPatternBenchmark does that by hand for three patterns).
+ *
+ * PatternCache runs the analysis when it admits a new pattern, see PatternCache.Admission.
+ *
+ * Reference: https://www.regular-expressions.info/catastrophic.html
+ * Reference: https://arxiv.org/abs/1405.5599 (Static Detection of DoS Vulnerabilities in Programs that use Regular Expressions)
+ */
+public final class PatternAnalyzer {
+
+	/**
+	 * Patterns above this degree are reported unsafe by Report.isSafe(). Cubic still takes seconds on a 10KB input.
+	 */
+	public static final int MAX_SAFE_DEGREE = 3;
+
+	static final int EXPONENTIAL_REPEAT = 16;	// a bounded loop with more iterations than this is as bad as an unbounded one
+	static final int LARGE_LOOKBEHIND = 20;
+	static final int MAX_CANDIDATES = 256;
+
+	private static final int SAT = 63;			// length bit meaning "63 or more"
+	private static final long SAT_BIT = 1L << SAT;
+	private static final int ANY_CHAR = -1;		// candidate that every char set accepts, used to measure look-behinds
+
+	public enum Complexity {
+		LINEAR, POLYNOMIAL, EXPONENTIAL
+	}
+
+	public enum Kind {
+		/** an unbounded loop around a quantifier over the same chars, (a+)+ */
+		NESTED_QUANTIFIER,
+		/** a loop around alternatives or optional parts that match the same strings, (a|aa)+ */
+		OVERLAPPING_ALTERNATION,
+		/** quantifiers in sequence over the same chars, \d+\d+ */
+		OVERLAPPING_QUANTIFIERS,
+		/** a look-behind that java.util.regex has to try at many lengths, (?<!.{0,100}) */
+		LARGE_LOOKBEHIND,
+		/** back-references are not regular, matching them is NP-hard in general */
+		BACKREFERENCE
+	}
+
+	private final String regex;
+	private final Node root;
+	private final List<Finding> findings = new ArrayList<Finding>();
+	private final Map<Node, Node> parents = new IdentityHashMap<Node, Node>();
+
+	// worst finding so far, the witness is built for it
+	private Complexity complexity = Complexity.LINEAR;
+	private int degree;
+	private Node worstNode;
+	private int worstFrom;		// first child of worstNode the pumped run goes to, when worstNode is a CONCAT
+	private int worstChar = -1;
+
+	private PatternAnalyzer(String regex) {
+		this.regex = regex;
+		this.root = Parser.tree(regex);
+	}
+
+	/**
+	 * Analyzes a regex in java.util.regex syntax (no flags).
+	 *
+	 * @throws java.util.regex.PatternSyntaxException if the regex is not valid
+	 */
+	public static Report analyze(String regex) {
+		PatternAnalyzer analyzer = new PatternAnalyzer(regex);
+		analyzer.run();
+		return analyzer.report();
+	}
+
+	private void run() {
+		link(root);
+		for(int c: candidates())
+			summarize(root, c);
+		summarize(root, ANY_CHAR);	// look-behind lengths don't depend on the char
+	}
+
+	/**
+	 * First char of every range of every char set, printable ASCII first so that witnesses are readable. Any char in the
+	 * intersection of two sets is in a range that starts with one of these.
+	 */
+	private List<Integer> candidates() {
+		TreeSet<Integer> chars = new TreeSet<Integer>();
+		collectRangeStarts(root, chars);
+		List<Integer> printable = new ArrayList<Integer>();
+		List<Integer> other = new ArrayList<Integer>();
+		for(int c: chars)
+			(c > ' ' && c < 127 ? printable : other).add(c);
+		printable.addAll(other);
+		return printable.size() > MAX_CANDIDATES ? printable.subList(0, MAX_CANDIDATES) : printable;
+	}
+
+	private void collectRangeStarts(Node node, TreeSet<Integer> chars) {
+		if(node.type == Node.CHARS) {
+			for(int i=0;i<node.ranges.length;i+=2) {
+				int lo = node.ranges[i];
+				if(lo <= ' ' && node.ranges[i + 1] >= 'a')
+					lo = 'a';		// wide ranges like . and \S, prefer a letter
+				chars.add(lo);
+			}
+		}
+		if(node.children != null)
+			for(Node child: node.children)
+				collectRangeStarts(child, chars);
+	}
+
+	private void link(Node node) {
+		if(node.children != null) {
+			for(Node child: node.children) {
+				parents.put(child, node);
+				link(child);
+			}
+		}
+	}
+
+
+	/**
+	 * What a node can do with runs of the char c.
+	 */
+	private static final class Summary {
+		long lengths;		// bit i set: the node can match exactly i c's (bit 63: 63 or more)
+		boolean ambiguous;	// some length can be matched in more than one way
+		boolean unbounded;	// contains a loop that can consume any number of c's
+		boolean exponential;
+		int degree;			// number of unbounded loops that backtracking tries every split between
+
+		static Summary of(long lengths) {
+			Summary summary = new Summary();
+			summary.lengths = lengths;
+			return summary;
+		}
+	}
+
+	/**
+	 * Summary of node for the char c, null if the node can't match any run of c (not even an empty one). Records findings on the way.
+	 */
+	private Summary summarize(Node node, int c) {
+		Summary summary;
+		switch(node.type) {
+		case Node.CHARS:
+			summary = c == ANY_CHAR || contains(node.ranges, c) ? Summary.of(1L << 1) : null;
+			break;
+		case Node.ASSERT:
+		case Node.BACKREF:
+			summary = Summary.of(1L);
+			if(node.type == Node.BACKREF && c == ANY_CHAR)
+				addFinding(Kind.BACKREFERENCE, node, 0, "back-reference, matching with back-references is NP-hard in general");
+			break;
+		case Node.LOOK:
+			Summary body = summarize(node.children.get(0), c);
+			if(node.behind && c == ANY_CHAR && body != null)
+				checkLookBehind(node, body);
+			summary = Summary.of(1L);
+			break;
+		case Node.GROUP:
+			summary = summarize(node.children.get(0), c);
+			break;
+		case Node.ATOMIC:
+			summary = committed(summarize(node.children.get(0), c));
+			break;
+		case Node.CONCAT:
+			summary = concatenation(node, c);
+			break;
+		case Node.ALTERNATE:
+			summary = alternation(node, c);
+			break;
+		case Node.REPEAT:
+			summary = repetition(node, c);
+			break;
+		default:
+			throw new IllegalStateException("unknown node " + node.type);
+		}
+		return summary;
+	}
+
+	private Summary concatenation(Node node, int c) {
+		Summary result = Summary.of(1L);
+		Summary run = Summary.of(1L);	// the current run of children that all accept c, split by those that don't
+		int runStart = 0;
+		for(int i=0;i<node.children.size();i++) {
+			Summary child = summarize(node.children.get(i), c);
+			if(child == null) {
+				result = null;
+				run = Summary.of(1L);
+				runStart = i + 1;
+				continue;
+			}
+			int before = Math.max(run.degree, child.degree);
+			run = sequence(run, child);
+			if(run.degree > before && run.degree >= 2 && c != ANY_CHAR) {
+				addFinding(Kind.OVERLAPPING_QUANTIFIERS, node, run.degree, run.degree + " quantifiers in sequence can match the same "
+						+ describe(c) + ", backtracking tries every way to split a run of them");
+				record(Complexity.POLYNOMIAL, run.degree, node, runStart, c);
+			}
+			if(result != null)
+				result = sequence(result, child);
+		}
+		return result;
+	}
+
+	private static Summary sequence(Summary a, Summary b) {
+		Summary summary = new Summary();
+		boolean[] collision = new boolean[1];
+		summary.lengths = sum(a.lengths, b.lengths, collision);
+		summary.ambiguous = a.ambiguous || b.ambiguous || collision[0];
+		summary.unbounded = a.unbounded || b.unbounded;
+		summary.exponential = a.exponential || b.exponential;
+		summary.degree = a.degree + b.degree;
+		return summary;
+	}
+
+	private Summary alternation(Node node, int c) {
+		Summary summary = null;
+		for(Node alternative: node.children) {
+			Summary child = summarize(alternative, c);
+			if(child == null)
+				continue;
+			if(summary == null) {
+				summary = Summary.of(child.lengths);
+				summary.ambiguous = child.ambiguous;
+				summary.unbounded = child.unbounded;
+				summary.exponential = child.exponential;
+				summary.degree = child.degree;
+				continue;
+			}
+			summary.ambiguous |= child.ambiguous || (summary.lengths & child.lengths) != 0;
+			summary.lengths |= child.lengths;
+			summary.unbounded |= child.unbounded;
+			summary.exponential |= child.exponential;
+			summary.degree = Math.max(summary.degree, child.degree);
+		}
+		return summary;
+	}
+
+	private Summary repetition(Node node, int c) {
+		Summary child = summarize(node.children.get(0), c);
+		if(child == null)
+			return node.min == 0 ? Summary.of(1L) : null;
+
+		// iterations that consume nothing are cut short by java.util.regex, only the non empty ones can be split in several ways
+		long body = child.lengths & ~1L;
+		int min = (child.lengths & 1L) != 0 ? 0 : node.min;
+		int copies = node.max == -1 || node.max > SAT ? SAT : node.max;
+
+		Summary summary = new Summary();
+		summary.exponential = child.exponential;
+		summary.unbounded = child.unbounded || (node.max == -1 && body != 0);
+		long lengths = min == 0 ? 1L : 0L;
+		long exact = 1L;				// lengths of exactly k iterations
+		boolean ambiguous = false;
+		for(int k=1;k<=copies && body != 0;k++) {
+			boolean[] collision = new boolean[1];
+			exact = sum(exact, body, collision);
+			ambiguous |= collision[0];
+			if(k >= min) {
+				ambiguous |= (lengths & exact & ~SAT_BIT) != 0;		// same length with a different number of iterations
+				lengths |= exact;
+			}
+			if(exact == SAT_BIT)
+				break;
+		}
+		summary.lengths = body == 0 ? 1L : lengths;
+
+		if(node.possessive)
+			return committed(summary);
+
+		summary.ambiguous = child.ambiguous || ambiguous;
+		if(summary.ambiguous && !child.exponential && body != 0 && (node.max == -1 || node.max > EXPONENTIAL_REPEAT)
+				&& c != ANY_CHAR) {
+			summary.exponential = true;
+			boolean nested = child.unbounded;
+			addFinding(nested ? Kind.NESTED_QUANTIFIER : Kind.OVERLAPPING_ALTERNATION, node, 0, (nested
+					? "nested quantifiers" : "repeated alternatives") + " can match the same run of " + describe(c)
+					+ " in exponentially many ways");
+			record(Complexity.EXPONENTIAL, 0, node, 0, c);
+		}
+
+		if(body != 0 && child.degree > 0 && node.max != -1) {
+			summary.degree = child.degree * node.max;
+			if(node.max > 1 && summary.degree >= 2 && c != ANY_CHAR) {
+				addFinding(Kind.OVERLAPPING_QUANTIFIERS, node, summary.degree, "each of the " + node.max
+						+ " iterations can end anywhere in a run of " + describe(c));
+				record(Complexity.POLYNOMIAL, summary.degree, node, 0, c);
+			}
+		}
+		else {
+			summary.degree = summary.unbounded && body != 0 ? Math.max(child.degree, 1) : child.degree;
+		}
+		return summary;
+	}
+
+	/**
+	 * Possessive quantifiers and atomic groups take one way through and never come back for another one.
+	 */
+	private static Summary committed(Summary summary) {
+		if(summary == null)
+			return null;
+		Summary result = Summary.of(Long.highestOneBit(summary.lengths));
+		result.unbounded = summary.unbounded;
+		result.exponential = summary.exponential;
+		return result;
+	}
+
+	private void checkLookBehind(Node node, Summary body) {
+		int shortest = Long.numberOfTrailingZeros(body.lengths);
+		int longest = maxLength(node.children.get(0));
+		if(longest - shortest < LARGE_LOOKBEHIND)
+			return;
+		addFinding(Kind.LARGE_LOOKBEHIND, node, 2, "look-behind is tried at " + (longest == Integer.MAX_VALUE ? "every"
+				: "up to " + (longest - shortest + 1)) + " lengths at every position, quadratic for inputs up to that length");
+		String sample = shortest(node.children.get(0));
+		record(Complexity.POLYNOMIAL, 2, node, 0, sample.isEmpty() ? 'a' : sample.charAt(sample.length() - 1));
+	}
+
+	/**
+	 * Longest string the node matches, Integer.MAX_VALUE if unbounded.
+	 */
+	private static int maxLength(Node node) {
+		switch(node.type) {
+		case Node.CHARS:
+			return 1;
+		case Node.CONCAT:
+			long sum = 0;
+			for(Node child: node.children)
+				sum += maxLength(child);
+			return (int) Math.min(sum, Integer.MAX_VALUE);
+		case Node.ALTERNATE:
+			int max = 0;
+			for(Node child: node.children)
+				max = Math.max(max, maxLength(child));
+			return max;
+		case Node.REPEAT:
+			return node.max == -1 ? Integer.MAX_VALUE : (int) Math.min((long) node.max * maxLength(node.children.get(0)),
+					Integer.MAX_VALUE);
+		case Node.GROUP:
+		case Node.ATOMIC:
+			return maxLength(node.children.get(0));
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * Lengths of a followed by b, with collision[0] set if some length can be made up in two ways.
+	 */
+	private static long sum(long a, long b, boolean[] collision) {
+		long result = 0;
+		for(long rest=a;rest!=0;rest&=rest-1) {
+			long shifted = shift(b, Long.numberOfTrailingZeros(rest));
+			if((result & shifted & ~SAT_BIT) != 0)
+				collision[0] = true;
+			result |= shifted;
+		}
+		return result;
+	}
+
+	// lengths + n, saturating at 63
+	private static long shift(long lengths, int n) {
+		if(n == 0)
+			return lengths;
+		long saturated = (lengths >>> (SAT - n)) != 0 ? SAT_BIT : 0;
+		return (lengths << n) & ~SAT_BIT | saturated;
+	}
+
+	private static boolean contains(int[] ranges, int c) {
+		for(int i=0;i<ranges.length;i+=2)
+			if(c >= ranges[i] && c <= ranges[i + 1])
+				return true;
+		return false;
+	}
+
+	private static String describe(int c) {
+		return c >= ' ' && c < 127 ? "'" + (char) c + "'" : String.format("'\\u%04x'", c);
+	}
+
+
+	private void addFinding(Kind kind, Node node, int degree, String description) {
+		Finding finding = new Finding(kind, node.start, degree, description, node);
+		for(int i=0;i<findings.size();i++) {
+			Finding existing = findings.get(i);
+			if(existing.node == node && existing.kind == kind) {	// same place, found again for another char or a longer run
+				if(degree > existing.degree)
+					findings.set(i, finding);
+				return;
+			}
+		}
+		findings.add(finding);
+	}
+
+	private void record(Complexity complexity, int degree, Node node, int from, int c) {
+		boolean worse = complexity.compareTo(this.complexity) > 0 || (complexity == this.complexity && degree > this.degree);
+		if(!worse)
+			return;
+		this.complexity = complexity;
+		this.degree = degree;
+		this.worstNode = node;
+		this.worstFrom = from;
+		this.worstChar = c;
+	}
+
+	private Report report() {
+		if(worstNode == null)
+			return new Report(regex, complexity, 1, findings, null, null, null);
+		String prefix = prefix(worstNode) + shortest(worstNode, worstFrom);
+		String pump = String.valueOf((char) worstChar);
+		return new Report(regex, complexity, degree, findings, prefix, pump, String.valueOf(failing(worstChar)));
+	}
+
+	/**
+	 * Shortest input that leads from the start of the regex to node.
+	 */
+	private String prefix(Node node) {
+		StringBuilder prefix = new StringBuilder();
+		Node child = node;
+		for(Node parent=parents.get(node);parent!=null;child=parent,parent=parents.get(parent)) {
+			if(parent.type == Node.CONCAT) {
+				StringBuilder before = new StringBuilder();
+				for(Node sibling: parent.children) {
+					if(sibling == child)
+						break;
+					before.append(shortest(sibling));
+				}
+				prefix.insert(0, before);
+			}
+		}
+		return prefix.toString();
+	}
+
+	// shortest match of the children of a CONCAT before index to
+	private String shortest(Node node, int to) {
+		if(node.type != Node.CONCAT)
+			return "";
+		StringBuilder shortest = new StringBuilder();
+		for(int i=0;i<to;i++)
+			shortest.append(shortest(node.children.get(i)));
+		return shortest.toString();
+	}
+
+	private static String shortest(Node node) {
+		switch(node.type) {
+		case Node.CHARS:
+			int[] ranges = node.ranges;
+			for(int i=0;i<ranges.length;i+=2)
+				if(ranges[i + 1] > ' ' && ranges[i] < 127)		// printable if possible
+					return String.valueOf((char) Math.max(ranges[i], '!'));
+			return String.valueOf((char) ranges[0]);
+		case Node.CONCAT:
+			StringBuilder concat = new StringBuilder();
+			for(Node child: node.children)
+				concat.append(shortest(child));
+			return concat.toString();
+		case Node.ALTERNATE:
+			String best = null;
+			for(Node child: node.children) {
+				String s = shortest(child);
+				if(best == null || s.length() < best.length())
+					best = s;
+			}
+			return best;
+		case Node.REPEAT:
+			return shortest(node.children.get(0)).repeat(node.min);
+		case Node.GROUP:
+		case Node.ATOMIC:
+			return shortest(node.children.get(0));
+		default:
+			return "";
+		}
+	}
+
+	/**
+	 * A char other than pumped that as few char sets of the regex as possible accept, to end the witness with a failure.
+	 */
+	private char failing(int pumped) {
+		String preferred = "!~#@;=\u0000\n";
+		char best = '!';
+		int bestCount = Integer.MAX_VALUE;
+		for(int i=0;i<preferred.length() + 95;i++) {
+			char c = i < preferred.length() ? preferred.charAt(i) : (char) (' ' + i - preferred.length());
+			if(c == pumped)
+				continue;
+			int count = countSets(root, c);
+			if(count < bestCount) {
+				best = c;
+				bestCount = count;
+			}
+		}
+		return best;
+	}
+
+	private static int countSets(Node node, char c) {
+		int count = node.type == Node.CHARS && contains(node.ranges, c) ? 1 : 0;
+		if(node.children != null)
+			for(Node child: node.children)
+				count += countSets(child, c);
+		return count;
+	}
+
+
+	/**
+	 * One problem found in the regex.
+	 */
+	public static final class Finding {
+		private final Kind kind;
+		private final int index;
+		private final int degree;
+		private final String description;
+		private final Node node;
+
+		Finding(Kind kind, int index, int degree, String description, Node node) {
+			this.kind = kind;
+			this.index = index;
+			this.degree = degree;
+			this.description = description;
+			this.node = node;
+		}
+
+		public Kind kind() {
+			return kind;
+		}
+
+		/**
+		 * Index in the regex where the offending part starts.
+		 */
+		public int index() {
+			return index;
+		}
+
+		/**
+		 * Polynomial degree this finding contributes, 0 for exponential and informational findings.
+		 */
+		public int degree() {
+			return degree;
+		}
+
+		public String description() {
+			return description;
+		}
+
+		@Override
+		public String toString() {
+			return kind + " at " + index + ": " + description;
+		}
+	}
+
+	/**
+	 * Result of analyze().
+	 */
+	public static final class Report {
+		private final String regex;
+		private final Complexity complexity;
+		private final int degree;
+		private final List<Finding> findings;
+		private final String prefix;
+		private final String pump;
+		private final String suffix;
+
+		Report(String regex, Complexity complexity, int degree, List<Finding> findings, String prefix, String pump, String suffix) {
+			this.regex = regex;
+			this.complexity = complexity;
+			this.degree = degree;
+			this.findings = Collections.unmodifiableList(findings);
+			this.prefix = prefix;
+			this.pump = pump;
+			this.suffix = suffix;
+		}
+
+		public String regex() {
+			return regex;
+		}
+
+		/**
+		 * Worst case growth of the time of a failing matches() with the input length.
+		 */
+		public Complexity complexity() {
+			return complexity;
+		}
+
+		/**
+		 * Exponent of the input length for POLYNOMIAL, 1 for LINEAR. find() on an input without a match adds 1 as it retries at
+		 * every position.
+		 */
+		public int degree() {
+			return degree;
+		}
+
+		public List<Finding> findings() {
+			return findings;
+		}
+
+		/**
+		 * false if the regex is EXPONENTIAL or POLYNOMIAL above MAX_SAFE_DEGREE.
+		 */
+		public boolean isSafe() {
+			return complexity != Complexity.EXPONENTIAL && degree <= MAX_SAFE_DEGREE;
+		}
+
+		/**
+		 * An input for which matching should take time growing with pumps as complexity() says, null if the regex is LINEAR.
+		 */
+		public String witness(int pumps) {
+			return pump == null ? null : prefix + pump.repeat(pumps) + suffix;
+		}
+
+		@Override
+		public String toString() {
+			String growth = complexity == Complexity.POLYNOMIAL ? "POLYNOMIAL(n^" + degree + ")" : complexity.toString();
+			return "PatternAnalyzer.Report[" + regex + ": " + growth + (pump == null ? "" : ", pump '" + pump + "'") + ", findings="
+					+ findings + "]";
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+package concept.regex.linear;
+
+import java.util.Arrays;
+
+/**
+ * Pike VM: simulates the NFA of a Prog by running all its threads in lock step over the input, one char at a time.
+ *
+ * A thread is a program counter plus its capture slots. Before every char the VM holds a list of threads that all wait on a CLASS
+ * instruction. Each thread that accepts the char moves to the next list, following SPLIT/JMP/SAVE/ASSERT instructions right away.
+ * A pc can appear only once in a list, the first (highest priority) thread to reach it wins, so a list never holds more than
+ * prog.size() threads. That's what makes the running time O(input length * program size) no matter how the pattern is written,
+ * where a backtracking engine can take exponential time.
+ *
+ * Threads are kept in priority order (the order a backtracking engine would try them), so when a thread reaches MATCH all threads
+ * after it can be dropped and the match found is the same leftmost-first match java.util.regex would report.
+ *
+ * A PikeVM instance keeps its thread lists between runs so it is not thread safe, each LinearMatcher owns one.
+ *
+ * Reference: https://swtch.com/~rsc/regexp/regexp2.html
+ */
+final class PikeVM {
+
+	private final Prog prog;
+	private final int slots;
+	private Threads current;
+	private Threads next;
+	private int[] stack;			// work list of addThread, pc or ~slot followed by the value to restore
+	private final int[] working;	// capture slots of the thread being added
+
+	PikeVM(Prog prog) {
+		this.prog = prog;
+		this.slots = 2 * (prog.groupCount + 1);
+		this.current = new Threads(prog.size(), slots);
+		this.next = new Threads(prog.size(), slots);
+		this.stack = new int[3 * prog.size() + 4];
+		this.working = new int[slots];
+	}
+
+	/**
+	 * Looks for a match in input starting at from.
+	 *
+	 * @param anchored	match must start at from
+	 * @param fullMatch	match must end at the end of input
+	 * @param groups	filled with the capture slots of the match, 2 per group
+	 * @return true if there is a match
+	 */
+	boolean run(CharSequence input, int from, boolean anchored, boolean fullMatch, int[] groups) {
+		int length = input.length();
+		boolean matched = false;
+		current.clear();
+
+		for(int pos=from;;pos++) {
+			if(!matched && (!anchored || pos == from)) {	// start a new thread here, with the lowest priority
+				Arrays.fill(working, -1);
+				addThread(current, 0, input, pos);
+			}
+			if(current.size == 0)
+				break;
+
+			next.clear();
+			char c = pos < length ? input.charAt(pos) : 0;
+			for(int i=0;i<current.size;i++) {
+				int pc = current.dense[i];
+				if(prog.op[pc] == Prog.MATCH) {
+					if(fullMatch && pos != length)
+						continue;
+					System.arraycopy(current.caps, pc * slots, groups, 0, slots);
+					matched = true;
+					break;		// threads after this one have lower priority
+				}
+				if(prog.op[pc] == Prog.CLASS && pos < length && prog.matches(pc, c)) {
+					System.arraycopy(current.caps, pc * slots, working, 0, slots);
+					addThread(next, pc + 1, input, pos + 1);
+				}
+			}
+
+			Threads swap = current;
+			current = next;
+			next = swap;
+			if(pos >= length)
+				break;
+		}
+		return matched;
+	}
+
+	/**
+	 * Adds the thread (pc, working) to the list, following the non consuming instructions. The working slots are restored on the way
+	 * back so that a SPLIT's second branch sees the slots as they were at the SPLIT.
+	 */
+	private void addThread(Threads list, int start, CharSequence input, int pos) {
+		int top = 0;
+		stack[top++] = start;
+		while(top > 0) {
+			int pc = stack[--top];
+			if(pc < 0) {				// restore entry: ~slot, value
+				working[~pc] = stack[--top];
+				continue;
+			}
+			if(top + 3 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			if(list.contains(pc)) {
+				if(prog.op[pc] == Prog.LOOP)
+					stack[top++] = pc + 1;	// empty iteration, leave the loop
+				continue;
+			}
+			list.add(pc);
+			switch(prog.op[pc]) {
+			case Prog.JMP:
+				stack[top++] = prog.x[pc];
+				break;
+			case Prog.SPLIT:
+			case Prog.LOOP:
+				stack[top++] = prog.y[pc];	// pushed first so that x is followed first
+				stack[top++] = prog.x[pc];
+				break;
+			case Prog.SAVE:
+				int slot = prog.x[pc];
+				if(slot < slots) {
+					stack[top++] = working[slot];
+					stack[top++] = ~slot;
+					working[slot] = pos;
+				}
+				stack[top++] = pc + 1;
+				break;
+			case Prog.ASSERT:
+				if(Prog.assertion(prog.x[pc], input, pos))
+					stack[top++] = pc + 1;
+				break;
+			default:					// CLASS and MATCH wait for the next char
+				System.arraycopy(working, 0, list.caps, pc * slots, slots);
+				break;
+			}
+		}
+	}
+
+
+	/**
+	 * Sparse set of pcs in insertion order with the capture slots of each thread. Clearing is O(1).
+	 * Reference: https://research.swtch.com/sparse
+	 */
+	private static final class Threads {
+		final int[] dense;
+		final int[] sparse;
+		final int[] caps;
+		int size;
+
+		Threads(int n, int slots) {
+			dense = new int[n];
+			sparse = new int[n];
+			caps = new int[n * slots];
+		}
+
+		boolean contains(int pc) {
+			int i = sparse[pc];
+			return i < size && dense[i] == pc;
+		}
+
+		void add(int pc) {
+			sparse[pc] = size;
+			dense[size++] = pc;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	}
+
+}
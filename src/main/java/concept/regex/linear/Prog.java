@@ -0,0 +1,131 @@
+package concept.regex.linear;
+
+/**
+ * Compiled program of a LinearPattern, i.e. the Thompson NFA written as a list of instructions (Russ Cox's notation):
+ *
+ * CLASS ranges		consume one char if it lies in one of the ranges, then continue at pc+1
+ * SPLIT x, y		continue at both x and y, x has priority (greedy) over y
+ * LOOP x, y		SPLIT at the end of a loop body, one target goes back to the body and the other (pc+1) leaves the loop. When a
+ * 					thread comes back to it without having consumed a char (the iteration matched empty) it leaves the loop, which
+ * 					is how java.util.regex stops repeating an empty iteration
+ * JMP x			continue at x
+ * SAVE n			record the current position in capture slot n, then continue at pc+1
+ * ASSERT kind		continue at pc+1 only if the zero-width assertion holds at the current position
+ * MATCH			a match ends here
+ *
+ * Instructions are stored in parallel arrays so that the matchers don't chase pointers.
+ */
+final class Prog {
+
+	static final int CLASS = 0;
+	static final int SPLIT = 1;
+	static final int JMP = 2;
+	static final int SAVE = 3;
+	static final int ASSERT = 4;
+	static final int MATCH = 5;
+	static final int LOOP = 6;
+
+	// ASSERT kinds
+	static final int BEGIN_TEXT = 0;			// ^ and \A
+	static final int END_TEXT = 1;				// \z
+	static final int END_LINE = 2;				// $, end of input or before a line terminator at the very end
+	static final int WORD_BOUNDARY = 3;			// \b
+	static final int NOT_WORD_BOUNDARY = 4;		// \B
+
+	final int[] op;
+	final int[] x;			// SPLIT/JMP target, SAVE slot, ASSERT kind
+	final int[] y;			// second SPLIT target
+	final int[][] ranges;	// CLASS: sorted, non-overlapping [lo, hi] pairs
+	final long[][] ascii;	// CLASS: 128 bit map of the ranges below 128
+	final int groupCount;
+	/**
+	 * true when the program uses $, \b or \B. The lazy DFA doesn't know what follows or precedes a position, so it treats those as
+	 * always true and its answer is then only an upper bound that the Pike VM has to confirm. Also true when a repeated body can
+	 * match empty, where the Pike VM (like java.util.regex) stops repeating and so may accept less than the DFA.
+	 */
+	final boolean dfaInexact;
+
+	Prog(int[] op, int[] x, int[] y, int[][] ranges, int groupCount, boolean emptyRepeat) {
+		this.op = op;
+		this.x = x;
+		this.y = y;
+		this.ranges = ranges;
+		this.groupCount = groupCount;
+
+		boolean inexact = emptyRepeat;
+		ascii = new long[op.length][];
+		for(int pc=0;pc<op.length;pc++) {
+			if(op[pc] == CLASS) {
+				long[] bits = new long[2];
+				int[] r = ranges[pc];
+				for(int i=0;i<r.length;i+=2)
+					for(int c=r[i];c<=r[i + 1] && c<128;c++)
+						bits[c >>> 6] |= 1L << c;
+				ascii[pc] = bits;
+			}
+			else if(op[pc] == ASSERT && x[pc] >= END_LINE) {
+				inexact = true;
+			}
+		}
+		dfaInexact = inexact;
+	}
+
+	int size() {
+		return op.length;
+	}
+
+	boolean matches(int pc, char c) {
+		if(c < 128)
+			return (ascii[pc][c >>> 6] & (1L << c)) != 0;
+		int[] r = ranges[pc];
+		int lo = 0, hi = r.length / 2 - 1;	// binary search over the range pairs
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if(c < r[2 * mid])
+				hi = mid - 1;
+			else if(c > r[2 * mid + 1])
+				lo = mid + 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Checks a zero-width assertion at position pos of input.
+	 */
+	static boolean assertion(int kind, CharSequence input, int pos) {
+		int length = input.length();
+		switch(kind) {
+		case BEGIN_TEXT:
+			return pos == 0;
+		case END_TEXT:
+			return pos == length;
+		case END_LINE:
+			if(pos == length)
+				return true;
+			if(pos == length - 1)		// not between the \r and \n of a final \r\n
+				return isLineTerminator(input.charAt(pos))
+						&& !(input.charAt(pos) == '\n' && pos > 0 && input.charAt(pos - 1) == '\r');
+			return pos == length - 2 && input.charAt(pos) == '\r' && input.charAt(pos + 1) == '\n';
+		case WORD_BOUNDARY:
+			return isWord(input, pos - 1) != isWord(input, pos);
+		case NOT_WORD_BOUNDARY:
+			return isWord(input, pos - 1) == isWord(input, pos);
+		default:
+			throw new IllegalStateException("unknown assertion " + kind);
+		}
+	}
+
+	private static boolean isWord(CharSequence input, int i) {
+		if(i < 0 || i >= input.length())
+			return false;
+		char c = input.charAt(i);
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+
+	static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+}
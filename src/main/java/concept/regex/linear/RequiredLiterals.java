@@ -0,0 +1,203 @@
+package concept.regex.linear;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import concept.regex.linear.Parser.Node;
+
+/**
+ * Literal text that every match of a regex must contain, found statically on the tree of Parser: "cosco" for "cosco", "@" for the
+ * email regex of StringMethodsRegex, "." for "\\.[a-z0-9]{3,4}$". A search can look for that text with String.indexOf(), which the
+ * JIT compiles to a vectorized scan, and only run the regex where it occurs: an input without it can't match at all.
+ *
+ * For every node of the tree the analysis keeps four facts, in the manner of grep's "must" strings:
+ * 1. exact: the one string the node matches, if it matches only one (a literal, a group of literals, a look-around matches "")
+ * 2. prefix: a string every match of the node starts with
+ * 3. suffix: a string every match of the node ends with
+ * 4. required: a string every match of the node contains
+ * A concatenation joins them: the suffix of one item followed by the prefix of the next is required too, which is how "@" followed
+ * by "gmail" becomes "@gmail" in "\\w+@gmail\\.com". An alternation keeps the common prefix and suffix of its alternatives, a
+ * repetition keeps its body's facts when it repeats at least once and none otherwise. Anything else (char sets, back-references)
+ * matches an unknown string. Strings are capped at MAX_LENGTH chars.
+ *
+ * The tree of lenient mode may match more than the regex (a class intersection is read as a union, a unicode property as any char),
+ * which only makes the literals shorter, never wrong. Flags that change which chars a literal matches (CASE_INSENSITIVE, COMMENTS,
+ * CANON_EQ and the inline (?i) and (?x)) leave nothing to extract, and neither does \G, as a search for a literal would move the
+ * position \G refers to. LITERAL makes the whole regex the literal.
+ */
+public final class RequiredLiterals {
+
+	public static final int MAX_LENGTH = 256;
+
+	private static final RequiredLiterals NONE = new RequiredLiterals(null, "", "", "");
+	private static final int IGNORED_FLAGS = Pattern.UNIX_LINES | Pattern.MULTILINE | Pattern.DOTALL | Pattern.UNICODE_CASE
+			| Pattern.UNICODE_CHARACTER_CLASS;
+
+	private final String exact;
+	private final String prefix;
+	private final String suffix;
+	private final String required;
+
+	private RequiredLiterals(String exact, String prefix, String suffix, String required) {
+		this.exact = exact;
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.required = required;
+	}
+
+	/**
+	 * Literals of pattern.
+	 */
+	public static RequiredLiterals of(Pattern pattern) {
+		return of(pattern.pattern(), pattern.flags());
+	}
+
+	/**
+	 * Literals of regex compiled with flags. Nothing is required (all literals empty) when the regex can't be analyzed.
+	 */
+	public static RequiredLiterals of(String regex, int flags) {
+		if((flags & Pattern.LITERAL) != 0 && (flags & ~(Pattern.LITERAL | IGNORED_FLAGS)) == 0) {
+			String literal = cap(regex);
+			return new RequiredLiterals(regex.length() <= MAX_LENGTH ? regex : null, literal, regex.substring(regex.length()
+					- literal.length()), literal);
+		}
+		if((flags & ~IGNORED_FLAGS) != 0 || regex.contains("\\G"))
+			return NONE;
+		Node root;
+		try {
+			root = Parser.literalTree(regex);
+		}
+		catch(PatternSyntaxException e) {
+			return NONE;		// valid for java.util.regex but beyond what the parser reads
+		}
+		return root == null ? NONE : analyze(root);
+	}
+
+	/**
+	 * The only string the regex matches, null unless the regex is a literal (or a group of literals and look-arounds).
+	 */
+	public String exact() {
+		return exact;
+	}
+
+	/**
+	 * A string every match starts with, "" if there is none.
+	 */
+	public String prefix() {
+		return prefix;
+	}
+
+	/**
+	 * A string every match ends with, "" if there is none.
+	 */
+	public String suffix() {
+		return suffix;
+	}
+
+	/**
+	 * The longest string found that every match contains, "" if there is none. At least as long as prefix() and suffix().
+	 */
+	public String required() {
+		return required;
+	}
+
+	@Override
+	public String toString() {
+		return "RequiredLiterals[prefix=" + prefix + ", required=" + required + ", suffix=" + suffix
+				+ (exact != null ? ", exact=" + exact : "") + "]";
+	}
+
+
+	private static RequiredLiterals analyze(Node node) {
+		switch(node.type) {
+		case Node.CHARS:
+			if(node.ranges.length == 2 && node.ranges[0] == node.ranges[1]) {
+				String c = String.valueOf((char) node.ranges[0]);
+				return new RequiredLiterals(c, c, c, c);
+			}
+			return NONE;
+		case Node.ASSERT:
+		case Node.LOOK:
+			return new RequiredLiterals("", "", "", "");		// zero width
+		case Node.GROUP:
+		case Node.ATOMIC:
+			return analyze(node.children.get(0));
+		case Node.CONCAT:
+			RequiredLiterals result = new RequiredLiterals("", "", "", "");
+			for(Node child: node.children)
+				result = concat(result, analyze(child));
+			return result;
+		case Node.ALTERNATE:
+			return alternate(node);
+		case Node.REPEAT:
+			return repeat(node);
+		default:
+			return NONE;		// BACKREF
+		}
+	}
+
+	private static RequiredLiterals concat(RequiredLiterals a, RequiredLiterals b) {
+		String exact = a.exact != null && b.exact != null && a.exact.length() + b.exact.length() <= MAX_LENGTH ? a.exact + b.exact : null;
+		String prefix = a.exact != null ? cap(a.exact + b.prefix) : a.prefix;
+		String suffix = b.exact != null ? capEnd(a.suffix + b.exact) : b.suffix;
+		String required = longest(a.required, b.required, cap(a.suffix + b.prefix));
+		return new RequiredLiterals(exact, prefix, suffix, longest(required, prefix, suffix));
+	}
+
+	private static RequiredLiterals alternate(Node node) {
+		RequiredLiterals first = analyze(node.children.get(0));
+		String exact = first.exact;
+		String prefix = first.prefix;
+		String suffix = first.suffix;
+		for(int i=1;i<node.children.size();i++) {
+			RequiredLiterals next = analyze(node.children.get(i));
+			if(exact != null && !exact.equals(next.exact))
+				exact = null;
+			prefix = commonPrefix(prefix, next.prefix);
+			suffix = commonSuffix(suffix, next.suffix);
+		}
+		return new RequiredLiterals(exact, prefix, suffix, longest(prefix, suffix, exact == null ? "" : exact));
+	}
+
+	private static RequiredLiterals repeat(Node node) {
+		if(node.max == 0)
+			return new RequiredLiterals("", "", "", "");
+		if(node.min == 0)
+			return NONE;
+		RequiredLiterals body = analyze(node.children.get(0));
+		String exact = null;
+		if(body.exact != null && node.min == node.max && (long) body.exact.length() * node.min <= MAX_LENGTH)
+			exact = body.exact.repeat(node.min);
+		if(exact != null)
+			return new RequiredLiterals(exact, exact, exact, exact);
+		return new RequiredLiterals(null, body.prefix, body.suffix, body.required);
+	}
+
+	private static String cap(String s) {
+		return s.length() <= MAX_LENGTH ? s : s.substring(0, MAX_LENGTH);
+	}
+
+	private static String capEnd(String s) {
+		return s.length() <= MAX_LENGTH ? s : s.substring(s.length() - MAX_LENGTH);
+	}
+
+	private static String longest(String a, String b, String c) {
+		String longest = a.length() >= b.length() ? a : b;
+		return longest.length() >= c.length() ? longest : c;
+	}
+
+	private static String commonPrefix(String a, String b) {
+		int n = 0;
+		while(n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n))
+			n++;
+		return a.substring(0, n);
+	}
+
+	private static String commonSuffix(String a, String b) {
+		int n = 0;
+		while(n < a.length() && n < b.length() && a.charAt(a.length() - 1 - n) == b.charAt(b.length() - 1 - n))
+			n++;
+		return a.substring(a.length() - n);
+	}
+
+}